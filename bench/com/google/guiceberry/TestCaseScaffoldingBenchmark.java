@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.guiceberry;
+
+import com.google.common.testing.TearDownAccepter;
+import com.google.guiceberry.GuiceBerryUniverse.TestCaseScaffolding;
+import com.google.inject.AbstractModule;
+import com.google.inject.Inject;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the per-test overhead of GuiceBerry, i.e.
+ * {@link TestCaseScaffolding#runBeforeTest()} followed by
+ * {@link TestCaseScaffolding#runAfterTest()}, on an Env whose injector has
+ * already been built.
+ *
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+@State(Scope.Thread)
+public class TestCaseScaffoldingBenchmark {
+
+  private final GuiceBerryEnvSelector selector = DefaultEnvSelector.of(Env.class);
+  private final MyTest test = new MyTest();
+  private TestDescription testDescription;
+
+  @Setup
+  public void warmUp() {
+    testDescription = new TestDescription(test, TestCaseScaffoldingBenchmark.class.getName() + ".test");
+    runOneTest();
+  }
+
+  @Benchmark
+  public Object runBeforeAndAfterTest() {
+    runOneTest();
+    return test.testId;
+  }
+
+  private void runOneTest() {
+    TestCaseScaffolding scaffolding =
+      new TestCaseScaffolding(testDescription, selector, GuiceBerryUniverse.INSTANCE);
+    scaffolding.runBeforeTest();
+    scaffolding.runAfterTest();
+  }
+
+  static final class MyTest {
+    @Inject TestId testId;
+    @Inject TearDownAccepter tearDownAccepter;
+    @Inject ScopedThing scopedThing;
+  }
+
+  @TestScoped
+  static final class ScopedThing {
+    @Inject ScopedThing() {}
+  }
+
+  public static final class Env extends AbstractModule {
+    @Override
+    protected void configure() {
+      install(new GuiceBerryModule());
+      bind(ScopedThing.class);
+    }
+  }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.guiceberry;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Provider;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Measures provisioning {@link TestScoped} instances, both when the instance
+ * already exists for the current test (a "hit") and when it has to be created
+ * (a "miss"), at 1, 8 and 64 threads. Each thread runs its own test.
+ *
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public class TestScopeBenchmark {
+
+  @State(Scope.Benchmark)
+  public static class EnvState {
+    Injector injector;
+    TestScope testScope;
+    Provider<ScopedThing> scopedThingProvider;
+
+    @Setup
+    public void setUp() {
+      injector = Guice.createInjector(new Env());
+      testScope = injector.getInstance(TestScope.class);
+      scopedThingProvider = injector.getProvider(ScopedThing.class);
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class TestState {
+    TestDescription testDescription;
+
+    @Setup
+    public void startTest() {
+      testDescription = new TestDescription(this,
+          TestScopeBenchmark.class.getName() + "." + Thread.currentThread().getName());
+      GuiceBerryUniverse.INSTANCE.currentTestDescriptionThreadLocal.set(testDescription);
+    }
+
+    @TearDown
+    public void finishTest() {
+      GuiceBerryUniverse.INSTANCE.currentTestDescriptionThreadLocal.remove();
+    }
+  }
+
+  @Benchmark @Threads(1)
+  public Object hit_1(EnvState env, TestState test) {
+    return env.scopedThingProvider.get();
+  }
+
+  @Benchmark @Threads(8)
+  public Object hit_8(EnvState env, TestState test) {
+    return env.scopedThingProvider.get();
+  }
+
+  @Benchmark @Threads(64)
+  public Object hit_64(EnvState env, TestState test) {
+    return env.scopedThingProvider.get();
+  }
+
+  @Benchmark @Threads(1)
+  public Object miss_1(EnvState env, TestState test) {
+    return miss(env, test);
+  }
+
+  @Benchmark @Threads(8)
+  public Object miss_8(EnvState env, TestState test) {
+    return miss(env, test);
+  }
+
+  @Benchmark @Threads(64)
+  public Object miss_64(EnvState env, TestState test) {
+    return miss(env, test);
+  }
+
+  private static Object miss(EnvState env, TestState test) {
+    env.testScope.finishScope(test.testDescription);
+    return env.scopedThingProvider.get();
+  }
+
+  @TestScoped
+  static final class ScopedThing {
+    @Inject ScopedThing() {}
+  }
+
+  static final class Env extends AbstractModule {
+    @Override
+    protected void configure() {
+      install(new GuiceBerryModule());
+      bind(ScopedThing.class);
+    }
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.guiceberry.controllable;
+
+import com.google.common.testing.TearDownAccepter;
+import com.google.common.testing.TearDownStack;
+import com.google.guiceberry.TestId;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.Module;
+import com.google.inject.Provider;
+import com.google.inject.TypeLiteral;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import javax.servlet.http.Cookie;
+
+/**
+ * Measures provisioning a controlled key in a server injector built through
+ * {@link IcMaster#buildServerModule} (and thus
+ * {@link ControllableInjectionServerModule}), with the canonical
+ * {@link StaticMapInjectionController} strategy, both when the test has
+ * overridden that key and when it has not.
+ *
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public class ControllableInjectionBenchmark {
+
+  private static final IcMaster IC_MASTER = new IcMaster()
+    .thatControls(StaticMapInjectionController.strategy(), Key.get(Service.class));
+
+  /** A server serving a test that has not overridden anything. */
+  @State(Scope.Benchmark)
+  public static class NotOverridden {
+    Provider<Service> serviceProvider;
+
+    @Setup
+    public void setUp() {
+      serviceProvider = serverInjector(new TestId(new Cookie(TestId.COOKIE_NAME, "notOverridden:1")))
+        .getProvider(Service.class);
+    }
+  }
+
+  /** A server serving a test that has overridden the controlled key. */
+  @State(Scope.Benchmark)
+  public static class Overridden {
+    Provider<Service> serviceProvider;
+    InjectionController<Service> injectionController;
+
+    @Setup
+    public void setUp() {
+      TestId testId = new TestId(new Cookie(TestId.COOKIE_NAME, "overridden:1"));
+      serviceProvider = serverInjector(testId).getProvider(Service.class);
+      injectionController = clientInjector(testId).getInstance(
+          Key.get(new TypeLiteral<InjectionController<Service>>() {}));
+      injectionController.setOverride(new Service());
+    }
+
+    @TearDown
+    public void tearDown() {
+      injectionController.resetOverride();
+    }
+  }
+
+  @Benchmark
+  public Service notOverridden(NotOverridden state) {
+    return state.serviceProvider.get();
+  }
+
+  @Benchmark
+  public Service overridden(Overridden state) {
+    return state.serviceProvider.get();
+  }
+
+  private static Injector serverInjector(final TestId testId) {
+    return Guice.createInjector(IC_MASTER.buildServerModule(new AbstractModule() {
+      @Override
+      protected void configure() {
+        bind(Service.class).toInstance(new Service());
+        bind(TestId.class).toInstance(testId);
+      }
+    }));
+  }
+
+  private static Injector clientInjector(final TestId testId) {
+    Module module = new AbstractModule() {
+      @Override
+      protected void configure() {
+        install(IC_MASTER.buildClientModule());
+        bind(TestId.class).toInstance(testId);
+        bind(TearDownAccepter.class).toInstance(new TearDownStack());
+      }
+    };
+    return Guice.createInjector(module);
+  }
+
+  static class Service {}
+}
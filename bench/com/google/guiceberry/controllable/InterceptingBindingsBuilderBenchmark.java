@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.guiceberry.controllable;
+
+import com.google.common.collect.Lists;
+import com.google.inject.AbstractModule;
+import com.google.inject.Key;
+import com.google.inject.Module;
+import com.google.inject.name.Names;
+import com.google.inject.spi.Element;
+import com.google.inject.spi.Elements;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+/**
+ * Measures {@link InterceptingBindingsBuilder#build()}, including the
+ * rewriting of the resulting module, for modules with thousands of bindings,
+ * one in ten of which is intercepted.
+ *
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+@State(Scope.Benchmark)
+public class InterceptingBindingsBuilderBenchmark {
+
+  @Param({"1000", "5000"})
+  public int bindingCount;
+
+  private Module module;
+  private List<Key<?>> keysToIntercept;
+
+  @Setup
+  public void setUp() {
+    keysToIntercept = Lists.newArrayList();
+    for (int i = 0; i < bindingCount; i += 10) {
+      keysToIntercept.add(key(i));
+    }
+    module = new AbstractModule() {
+      @Override
+      protected void configure() {
+        for (int i = 0; i < bindingCount; i++) {
+          bind(key(i)).toInstance("value" + i);
+        }
+      }
+    };
+  }
+
+  @Benchmark
+  public List<Element> build() {
+    Module built = new InterceptingBindingsBuilder()
+      .install(module)
+      .intercept(keysToIntercept)
+      .build();
+    return Elements.getElements(built);
+  }
+
+  private static Key<String> key(int i) {
+    return Key.get(String.class, Names.named("binding" + i));
+  }
+}
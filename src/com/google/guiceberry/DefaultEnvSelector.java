@@ -16,9 +16,15 @@
 package com.google.guiceberry;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
 import com.google.inject.Module;
 import com.google.inject.testing.guiceberry.junit3.GuiceBerryEnvRemapper;
 
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentMap;
+
 /**
  * See {@link GuiceBerryEnvSelector}.
  * 
@@ -26,6 +32,10 @@ import com.google.inject.testing.guiceberry.junit3.GuiceBerryEnvRemapper;
  * to use is the class (or its name) given as a parameter to one the {@link #of}
  * static factory methods, except when the {@link #override} feature is used.
  *
+ * <p>Since the same GuiceBerry Env is used by many tests, its resolution is
+ * cached, and only redone after {@link #override} or {@link #clearOverride}
+ * is called.
+ *
  * @author Luiz-Otavio "Z" Zorzella
  */
 public class DefaultEnvSelector implements GuiceBerryEnvSelector {
@@ -34,6 +44,14 @@ public class DefaultEnvSelector implements GuiceBerryEnvSelector {
     "For more details, see https://docs.google.com/document/d/1IanQDC2-IEVtSViVirniEpdhTGZ8V6bTeo0DiBxjQts";
 
   private static final String OVERRIDE_SYSTEM_PROPERY_NAME = "GuiceBerryEnvSelectorOverride";
+
+  /**
+   * The overrides in effect. This is replaced as a whole (by {@link #override}
+   * and {@link #clearOverride}), so that selecting a GuiceBerry Env takes no
+   * lock and reads no {@link System} property.
+   */
+  private static volatile OverrideSnapshot overrideSnapshot =
+    OverrideSnapshot.fromSystemProperties();
   
   private final String clazzName;
 
@@ -58,7 +76,7 @@ public class DefaultEnvSelector implements GuiceBerryEnvSelector {
    *
    * @see #of(Class)
    */
-  public synchronized static GuiceBerryEnvSelector of(String guiceBerryEnvClazzName) {
+  public static GuiceBerryEnvSelector of(String guiceBerryEnvClazzName) {
     Class<? extends Module> override = getOverride(guiceBerryEnvClazzName);
 
     if (System.getProperty(GuiceBerryEnvRemapper.GUICE_BERRY_ENV_REMAPPER_PROPERTY_NAME) != null) {
@@ -78,18 +96,45 @@ public class DefaultEnvSelector implements GuiceBerryEnvSelector {
   }
   
   public Class<? extends Module> guiceBerryEnvToUse(TestDescription testDescription) {
-    Class<? extends Module> result = getGbeFromClazzName();
-    Class<? extends Module> override = getOverride(result.getName());
-    if (override != null) {
-      result = override;
+    return resolve();
+  }
+
+  /**
+   * Returns the GuiceBerry Env to use in place of the one named
+   * {@code declaredGuiceBerryEnvName}, i.e. its {@link #override} or, if it
+   * has none, that Env itself. This is what {@link #guiceBerryEnvToUse} returns
+   * for the selector {@link #of} that name, for when there is no test to
+   * describe yet.
+   */
+  public static Class<? extends Module> envToUse(String declaredGuiceBerryEnvName) {
+    return new DefaultEnvSelector(declaredGuiceBerryEnvName).resolve();
+  }
+
+  private Class<? extends Module> resolve() {
+    OverrideSnapshot snapshot = overrideSnapshot;
+    Class<? extends Module> result = snapshot.declaredNameToEnvMap.get(clazzName);
+    if (result == null) {
+      result = getGbeFromClazzName();
+      Class<? extends Module> override = getOverride(snapshot, result.getName());
+      if (override != null) {
+        result = override;
+      }
+      // If the overrides have changed meanwhile, this goes to the stale
+      // snapshot, which nobody reads anymore.
+      snapshot.declaredNameToEnvMap.putIfAbsent(clazzName, result);
     }
     return result;
   }
   
   @VisibleForTesting
-  @SuppressWarnings("unchecked")
   static Class<? extends Module> getOverride(String guiceBerryEnvName) {
-    String overrideName = getOverrideName(guiceBerryEnvName);
+    return getOverride(overrideSnapshot, guiceBerryEnvName);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Class<? extends Module> getOverride(
+      OverrideSnapshot snapshot, String guiceBerryEnvName) {
+    String overrideName = snapshot.overrides.get(guiceBerryEnvName);
     if (overrideName != null) {
       
       if (System.getProperty(GuiceBerryEnvRemapper.GUICE_BERRY_ENV_REMAPPER_PROPERTY_NAME) != null) {
@@ -169,6 +214,11 @@ public class DefaultEnvSelector implements GuiceBerryEnvSelector {
    * <p>Note that this override is honored by code inside the {@link #of}
    * methods, so this {@link #override} method must be called <em>before</em>
    * calling those.
+   *
+   * <p>Override {@link System} properties are read once, when this class is
+   * initialized (so, e.g., -D properties are honored), but from then on,
+   * overrides must be set through this method, rather than by setting the
+   * property directly.
    * 
    * @throws IllegalArgumentException if you have either already called this
    *   method before, or otherwise set the {@link #OVERRIDE_SYSTEM_PROPERY_NAME}
@@ -186,6 +236,8 @@ public class DefaultEnvSelector implements GuiceBerryEnvSelector {
     }
     System.setProperty(buildSystemPropertyName(declaredGuiceBerryEnv.getName()),
         guiceBerryEnvOverride.getName());
+    overrideSnapshot = overrideSnapshot.with(
+        declaredGuiceBerryEnv.getName(), guiceBerryEnvOverride.getName());
   }
 
   /**
@@ -195,12 +247,13 @@ public class DefaultEnvSelector implements GuiceBerryEnvSelector {
   public static synchronized void clearOverride(
       Class<? extends Module> declaredGuiceBerryEnv) {
     System.clearProperty(buildSystemPropertyName(declaredGuiceBerryEnv.getName()));
+    overrideSnapshot = overrideSnapshot.with(declaredGuiceBerryEnv.getName(), null);
   }
 
   /**
    * Returns true if the {@code declaredGuiceBerryEnv} is being overridden.
    */
-  public static synchronized boolean isOverridden(
+  public static boolean isOverridden(
       Class<? extends Module> declaredGuiceBerryEnvClass) {
     return isOverridden(declaredGuiceBerryEnvClass.getName());
   }
@@ -208,7 +261,7 @@ public class DefaultEnvSelector implements GuiceBerryEnvSelector {
   /**
    * Returns true if the {@code declaredGuiceBerryEnv} is being overridden.
    */
-  public static synchronized boolean isOverridden(String declaredGuiceBerryEnvName) {
+  public static boolean isOverridden(String declaredGuiceBerryEnvName) {
     return getOverrideName(declaredGuiceBerryEnvName) != null;
   }
 
@@ -217,7 +270,7 @@ public class DefaultEnvSelector implements GuiceBerryEnvSelector {
    * {@code declaredGuiceBerryEnvName}, or {@code null} if there is no override.
    */
   private static String getOverrideName(String declaredGuiceBerryEnvName) {
-    return System.getProperty(buildSystemPropertyName(declaredGuiceBerryEnvName));
+    return overrideSnapshot.overrides.get(declaredGuiceBerryEnvName);
   }
 
   /**
@@ -228,4 +281,47 @@ public class DefaultEnvSelector implements GuiceBerryEnvSelector {
   public static String buildSystemPropertyName(String declaredGuiceBerryEnvName) {
     return OVERRIDE_SYSTEM_PROPERY_NAME + "_" + declaredGuiceBerryEnvName;
   }
+
+  /**
+   * An immutable view of the overrides, keyed by the name of the declared
+   * GuiceBerry Env, together with the GuiceBerry Envs resolved under them.
+   */
+  private static final class OverrideSnapshot {
+    
+    final ImmutableMap<String, String> overrides;
+    final ConcurrentMap<String, Class<? extends Module>> declaredNameToEnvMap =
+      Maps.newConcurrentMap();
+
+    private OverrideSnapshot(ImmutableMap<String, String> overrides) {
+      this.overrides = overrides;
+    }
+
+    static OverrideSnapshot fromSystemProperties() {
+      String prefix = buildSystemPropertyName("");
+      ImmutableMap.Builder<String, String> overrides = ImmutableMap.builder();
+      Properties properties = System.getProperties();
+      for (String propertyName : properties.stringPropertyNames()) {
+        String overrideName = properties.getProperty(propertyName);
+        if (propertyName.startsWith(prefix) && (overrideName != null)) {
+          overrides.put(propertyName.substring(prefix.length()), overrideName);
+        }
+      }
+      return new OverrideSnapshot(overrides.build());
+    }
+
+    /**
+     * Returns a copy of this snapshot in which {@code declaredGuiceBerryEnvName}
+     * is overridden by {@code overrideName}, or not at all, if that is
+     * {@code null}. Nothing resolved under this snapshot is carried over.
+     */
+    OverrideSnapshot with(String declaredGuiceBerryEnvName, String overrideName) {
+      Map<String, String> result = Maps.newHashMap(overrides);
+      if (overrideName == null) {
+        result.remove(declaredGuiceBerryEnvName);
+      } else {
+        result.put(declaredGuiceBerryEnvName, overrideName);
+      }
+      return new OverrideSnapshot(ImmutableMap.copyOf(result));
+    }
+  }
 }
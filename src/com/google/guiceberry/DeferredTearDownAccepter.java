@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.guiceberry;
+
+import com.google.common.testing.TearDown;
+import com.google.common.testing.TearDownAccepter;
+
+/**
+ * A {@link TearDownAccepter} that also accepts {@link TearDown}s nobody needs
+ * to wait for, e.g. purging the rows a test wrote under its {@link TestId},
+ * or quitting a browser.
+ *
+ * <p>{@link #addDeferredTearDown Deferred} {@link TearDown}s are handed to a
+ * background cleaner once the test's other {@link TearDown}s have run, so the
+ * next test can start right away. A test's own deferred {@link TearDown}s run
+ * one at a time, most recently added first, but may overlap with those of
+ * other tests. If too many tests have deferred {@link TearDown}s still
+ * pending, the next test to finish waits until some have run.
+ *
+ * <p>Failures of deferred {@link TearDown}s are reported by
+ * {@link GuiceBerry#finishSuite}, which first waits for all of them to have
+ * run (as does the JVM, if the suite is not finished before it exits).
+ *
+ * <p>See {@link GuiceBerryModule} for how it is bound.
+ *
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public interface DeferredTearDownAccepter extends TearDownAccepter {
+
+  /**
+   * Registers a {@link TearDown} to run in the background after the test is
+   * over, when there is no currently-running test anymore. It should
+   * therefore hold on to whatever it needs, rather than get it from
+   * {@link TestScoped} {@link com.google.inject.Provider}s.
+   */
+  void addDeferredTearDown(TearDown tearDown);
+}
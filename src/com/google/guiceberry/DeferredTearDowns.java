@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.guiceberry;
+
+import com.google.common.collect.Lists;
+import com.google.common.testing.TearDown;
+import com.google.common.testing.TearDownStack;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The background cleaner running the {@link DeferredTearDownAccepter
+ * deferred} {@link TearDown}s of the tests of a {@link GuiceBerryUniverse}.
+ *
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+final class DeferredTearDowns {
+
+  /**
+   * How many tests may have deferred {@link TearDown}s pending before the
+   * next one to {@link #defer} waits, unless overridden by the
+   * {@link GuiceBerry#MAX_PENDING_DEFERRED_TEAR_DOWNS_PROPERTY_NAME} System
+   * property.
+   */
+  static final int DEFAULT_MAX_PENDING = 64;
+
+  private static final Runnable NOTHING = new Runnable() {
+    public void run() {}
+  };
+
+  private final int maxPending;
+  private final Semaphore pending;
+  private final ThreadPoolExecutor executor;
+
+  // Guarded by itself
+  private final List<Throwable> failures = Lists.newArrayList();
+
+  DeferredTearDowns(int maxPending) {
+    if (maxPending <= 0) {
+      throw new IllegalArgumentException(String.format(
+          "The maximum number of tests with pending deferred tear downs must "
+          + "be positive, but it's %s.", maxPending));
+    }
+    this.maxPending = maxPending;
+    this.pending = new Semaphore(maxPending);
+    this.executor = new ThreadPoolExecutor(
+        ParallelTearDownStack.MAX_THREADS, ParallelTearDownStack.MAX_THREADS,
+        10, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(),
+        new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat("GuiceBerry-deferred-teardown-%d")
+            .build());
+    this.executor.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Queues the given {@code tearDowns} of the given {@code testDescription} to
+   * run in the background, in the given order, first waiting for a slot if
+   * {@link #maxPending} tests already have some pending.
+   */
+  void defer(TestDescription testDescription, List<TearDown> tearDowns) {
+    defer(testDescription, tearDowns, NOTHING);
+  }
+
+  /**
+   * Like {@link #defer(TestDescription, List)}, then runs {@code afterwards}
+   * once the {@code tearDowns} have run (or right away, if there are none, or
+   * if they could not be queued), e.g. to let go of what they use.
+   */
+  void defer(final TestDescription testDescription, final List<TearDown> tearDowns,
+      final Runnable afterwards) {
+    if (tearDowns.isEmpty()) {
+      afterwards.run();
+      return;
+    }
+    pending.acquireUninterruptibly();
+    try {
+      executor.execute(new Runnable() {
+        public void run() {
+          try {
+            for (TearDown tearDown : tearDowns) {
+              try {
+                tearDown.tearDown();
+              } catch (Throwable t) {
+                addFailure(new RuntimeException(String.format(
+                    "A deferred tear down of '%s' failed.",
+                    testDescription.getName()), t));
+              }
+            }
+            try {
+              afterwards.run();
+            } catch (Throwable t) {
+              addFailure(t);
+            }
+          } finally {
+            pending.release();
+          }
+        }
+      });
+    } catch (RuntimeException e) {
+      pending.release();
+      afterwards.run();
+      throw e;
+    }
+  }
+
+  private void addFailure(Throwable failure) {
+    synchronized (failures) {
+      failures.add(failure);
+    }
+  }
+
+  /**
+   * Waits for every deferred {@link TearDown} queued so far to have run, and
+   * then throws their failures (if any) as a {@link TearDownStack} would.
+   */
+  void drain() {
+    pending.acquireUninterruptibly(maxPending);
+    pending.release(maxPending);
+    List<Throwable> toThrow;
+    synchronized (failures) {
+      toThrow = Lists.newArrayList(failures);
+      failures.clear();
+    }
+    ParallelTearDownStack.rethrow(toThrow);
+  }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.guiceberry;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.guiceberry.GuiceBerryUniverse.TestCaseScaffolding;
+import com.google.inject.Injector;
+import com.google.inject.Module;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the number of booted GuiceBerry Envs of a {@link GuiceBerryUniverse}
+ * within {@link GuiceBerryUniverse#maxBootedEnvs}, by evicting the least
+ * recently used ones. See {@link GuiceBerry#setMaxBootedEnvs}.
+ *
+ * <p>An Env is never evicted while a test is using it, nor while it is the
+ * base of another booted Env (see {@link GuiceBerryEnvVariant}), so there
+ * may temporarily be more booted Envs than allowed. Evicted Envs are shut
+ * down after leaving this class' lock, since their
+ * {@link GuiceBerryEnvShutdown} may take a while, or use GuiceBerry itself.
+ *
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+final class EnvCache {
+
+  private final GuiceBerryUniverse universe;
+
+  /**
+   * How many tests are using each Env that was booted or used since it was
+   * last evicted, least recently used first.
+   */
+  // Guarded by this
+  private final Map<Class<? extends Module>, Integer> gbeClassToUsesMap =
+    new LinkedHashMap<Class<? extends Module>, Integer>(16, 0.75f, true);
+
+  // Guarded by this
+  private final List<Throwable> failures = Lists.newArrayList();
+
+  EnvCache(GuiceBerryUniverse universe) {
+    this.universe = universe;
+  }
+
+  private static boolean isBounded(GuiceBerryUniverse universe) {
+    return universe.maxBootedEnvs > 0;
+  }
+
+  /**
+   * Marks {@code gbeClass} as being used by a test, which keeps it from being
+   * evicted until {@link #release}d. Returns whether that was needed, i.e.
+   * whether {@link #release} must be called.
+   */
+  boolean acquire(Class<? extends Module> gbeClass) {
+    if (!isBounded(universe)) {
+      return false;
+    }
+    synchronized (this) {
+      Integer uses = gbeClassToUsesMap.get(gbeClass);
+      gbeClassToUsesMap.put(gbeClass, (uses == null) ? 1 : uses + 1);
+    }
+    return true;
+  }
+
+  /**
+   * Undoes an {@link #acquire} of {@code gbeClass}, which may now be evicted.
+   */
+  void release(Class<? extends Module> gbeClass) {
+    List<EvictedInjector> toShutDown = Lists.newArrayList();
+    synchronized (this) {
+      Integer uses = gbeClassToUsesMap.get(gbeClass);
+      if (uses != null) {
+        gbeClassToUsesMap.put(gbeClass, uses - 1);
+      }
+      evictIfNeeded(toShutDown);
+    }
+    shutDown(toShutDown);
+  }
+
+  /**
+   * Records that {@code gbeClass} has just been booted, evicting other Envs
+   * if there are now too many.
+   */
+  void booted(Class<? extends Module> gbeClass) {
+    if (!isBounded(universe)) {
+      return;
+    }
+    List<EvictedInjector> toShutDown = Lists.newArrayList();
+    synchronized (this) {
+      if (!gbeClassToUsesMap.containsKey(gbeClass)) {
+        gbeClassToUsesMap.put(gbeClass, 0);
+      }
+      evictIfNeeded(toShutDown);
+    }
+    shutDown(toShutDown);
+  }
+
+  /**
+   * An {@link Injector} of an evicted Env, to be shut down.
+   */
+  private static final class EvictedInjector {
+    final Class<? extends Module> gbeClass;
+    final Injector injector;
+
+    EvictedInjector(Class<? extends Module> gbeClass, Injector injector) {
+      this.gbeClass = gbeClass;
+      this.injector = injector;
+    }
+  }
+
+  /**
+   * Evicts the least recently used Envs that are over the limit (and can be
+   * evicted), adding the {@link Injector}s to shut down to {@code toShutDown}.
+   */
+  // Guarded by this
+  private void evictIfNeeded(List<EvictedInjector> toShutDown) {
+    int max = universe.maxBootedEnvs;
+    if (max <= 0) {
+      return;
+    }
+    List<Class<? extends Module>> booted = Lists.newArrayList();
+    for (Class<? extends Module> gbeClass : gbeClassToUsesMap.keySet()) {
+      if (universe.gbeClassToPlanMap.containsKey(gbeClass)) {
+        booted.add(gbeClass);
+      }
+    }
+    int excess = booted.size() - max;
+    for (Class<? extends Module> gbeClass : booted) {
+      if (excess <= 0) {
+        return;
+      }
+      if ((gbeClassToUsesMap.get(gbeClass) == 0) && !isBaseOfAnotherEnv(gbeClass)) {
+        evict(gbeClass, toShutDown);
+        excess--;
+      }
+    }
+  }
+
+  private boolean isBaseOfAnotherEnv(Class<? extends Module> gbeClass) {
+    Injector injector = universe.gbeClassToInjectorMap.get(gbeClass);
+    for (Injector other : universe.gbeClassToInjectorMap.values()) {
+      for (Injector ancestor = other.getParent(); ancestor != null;
+          ancestor = ancestor.getParent()) {
+        if (ancestor == injector) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Forgets everything about {@code gbeClass}, so that the next test to need
+   * it boots it again, and adds its {@link Injector} and the ancestors
+   * thereof, unless still used by another Env, to {@code toShutDown}.
+   */
+  // Guarded by this
+  private void evict(Class<? extends Module> gbeClass, List<EvictedInjector> toShutDown) {
+    gbeClassToUsesMap.remove(gbeClass);
+    Injector injector = universe.gbeClassToInjectorMap.remove(gbeClass);
+    universe.gbeClassToInjectorFutureMap.remove(gbeClass);
+    universe.gbeClassToPlanMap.remove(gbeClass);
+    universe.gbeClassToTimingListenerMap.remove(gbeClass);
+    universe.gbeClassToSnapshotsMap.remove(gbeClass);
+
+    Set<Injector> stillUsed = Sets.newIdentityHashSet();
+    for (Injector other : universe.gbeClassToInjectorMap.values()) {
+      for (Injector current = other; current != null; current = current.getParent()) {
+        stillUsed.add(current);
+      }
+    }
+    // Children are shut down before their parents
+    for (Injector current = injector;
+        (current != null) && !stillUsed.contains(current);
+        current = current.getParent()) {
+      universe.envSharing.forget(current);
+      if (universe.bootedInjectorMap.remove(current) != null) {
+        toShutDown.add(new EvictedInjector(gbeClass, current));
+      }
+    }
+  }
+
+  /**
+   * Runs the {@link GuiceBerryEnvShutdown} (if any) of each of the given
+   * {@link Injector}s, in order. Must not be called while holding this lock.
+   */
+  private void shutDown(List<EvictedInjector> toShutDown) {
+    for (EvictedInjector evicted : toShutDown) {
+      try {
+        GuiceBerryEnvShutdown shutdown = TestCaseScaffolding.getInstanceIfHasOwnBinding(
+            evicted.injector, GuiceBerryEnvShutdown.class);
+        if (shutdown != null) {
+          shutdown.shutDown();
+        }
+      } catch (Throwable t) {
+        synchronized (this) {
+          failures.add(new RuntimeException(String.format(
+              "Failed to shut down the evicted GuiceBerry Env '%s'.",
+              evicted.gbeClass.getName()), t));
+        }
+      }
+    }
+  }
+
+  /**
+   * Throws the failures (if any) to shut down evicted Envs so far, as a
+   * {@link com.google.common.testing.TearDownStack} would.
+   */
+  void reportFailures() {
+    List<Throwable> toThrow;
+    synchronized (this) {
+      toThrow = Lists.newArrayList(failures);
+      failures.clear();
+    }
+    ParallelTearDownStack.rethrow(toThrow);
+  }
+}
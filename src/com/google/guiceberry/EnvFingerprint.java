@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.guiceberry;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMultiset;
+import com.google.inject.Binding;
+import com.google.inject.Scope;
+import com.google.inject.spi.ConstructorBinding;
+import com.google.inject.spi.DefaultBindingScopingVisitor;
+import com.google.inject.spi.DefaultBindingTargetVisitor;
+import com.google.inject.spi.DefaultElementVisitor;
+import com.google.inject.spi.Element;
+import com.google.inject.spi.InstanceBinding;
+import com.google.inject.spi.LinkedKeyBinding;
+import com.google.inject.spi.ProviderInstanceBinding;
+import com.google.inject.spi.ProviderKeyBinding;
+import com.google.inject.spi.ScopeBinding;
+import com.google.inject.spi.UntargettedBinding;
+
+import java.lang.annotation.Annotation;
+
+/**
+ * A value that is equal for two lists of Guice {@link Element}s (see
+ * {@link com.google.inject.spi.Elements#getElements}) that would build
+ * {@link com.google.inject.Injector}s that behave the same.
+ *
+ * <p>Two {@link Binding}s are the same if they bind the same key, in the same
+ * scope, to the same target (as per the target's {@code equals}: e.g.
+ * {@code @Provides} methods are the same if they are the same method of equal
+ * modules). The {@link TestScope}s each {@link GuiceBerryModule} builds are
+ * all considered the same. Any other {@link Element} is only the same as
+ * itself, which errs on the side of not sharing.
+ *
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+final class EnvFingerprint {
+
+  private final ImmutableMultiset<Object> elements;
+  private final int hashCode;
+
+  private EnvFingerprint(ImmutableMultiset<Object> elements) {
+    this.elements = elements;
+    this.hashCode = elements.hashCode();
+  }
+
+  static EnvFingerprint of(Iterable<? extends Element> elements) {
+    ImmutableMultiset.Builder<Object> result = ImmutableMultiset.builder();
+    for (Element element : elements) {
+      result.add(element.acceptVisitor(ELEMENT_VISITOR));
+    }
+    return new EnvFingerprint(result.build());
+  }
+
+  private static final DefaultElementVisitor<Object> ELEMENT_VISITOR =
+    new DefaultElementVisitor<Object>() {
+      @Override
+      public <T> Object visit(Binding<T> binding) {
+        return ImmutableList.of(
+            binding.getKey(),
+            binding.acceptScopingVisitor(SCOPING_VISITOR),
+            binding.acceptTargetVisitor(TARGET_VISITOR));
+      }
+
+      @Override
+      public Object visit(ScopeBinding scopeBinding) {
+        return ImmutableList.of(
+            scopeBinding.getAnnotationType(), TestScope.fingerprintOf(scopeBinding.getScope()));
+      }
+
+      @Override
+      protected Object visitOther(Element element) {
+        return element;
+      }
+    };
+
+  private static final DefaultBindingScopingVisitor<Object> SCOPING_VISITOR =
+    new DefaultBindingScopingVisitor<Object>() {
+      @Override
+      public Object visitEagerSingleton() {
+        return "eager singleton";
+      }
+
+      @Override
+      public Object visitScope(Scope scope) {
+        return TestScope.fingerprintOf(scope);
+      }
+
+      @Override
+      public Object visitScopeAnnotation(Class<? extends Annotation> scopeAnnotation) {
+        return scopeAnnotation;
+      }
+
+      @Override
+      public Object visitNoScoping() {
+        return "no scoping";
+      }
+    };
+
+  private static final DefaultBindingTargetVisitor<Object, Object> TARGET_VISITOR =
+    new DefaultBindingTargetVisitor<Object, Object>() {
+      @Override
+      public Object visit(InstanceBinding<?> binding) {
+        return ImmutableList.of("instance", TestScope.fingerprintOf(binding.getInstance()));
+      }
+
+      @Override
+      public Object visit(ProviderInstanceBinding<?> binding) {
+        return ImmutableList.of("provider instance", binding.getUserSuppliedProvider());
+      }
+
+      @Override
+      public Object visit(ProviderKeyBinding<?> binding) {
+        return ImmutableList.of("provider key", binding.getProviderKey());
+      }
+
+      @Override
+      public Object visit(LinkedKeyBinding<?> binding) {
+        return ImmutableList.of("linked key", binding.getLinkedKey());
+      }
+
+      @Override
+      public Object visit(UntargettedBinding<?> binding) {
+        return "untargetted";
+      }
+
+      @Override
+      public Object visit(ConstructorBinding<?> binding) {
+        return ImmutableList.of("constructor", binding.getConstructor());
+      }
+
+      @Override
+      protected Object visitOther(Binding<?> binding) {
+        return binding;
+      }
+    };
+
+  @Override
+  public boolean equals(Object obj) {
+    if (obj == this) {
+      return true;
+    }
+    if (!(obj instanceof EnvFingerprint)) {
+      return false;
+    }
+    EnvFingerprint that = (EnvFingerprint) obj;
+    return (this.hashCode == that.hashCode) && this.elements.equals(that.elements);
+  }
+
+  @Override
+  public int hashCode() {
+    return hashCode;
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.guiceberry;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.inject.CreationException;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Module;
+import com.google.inject.spi.Element;
+import com.google.inject.spi.ElementSource;
+import com.google.inject.spi.Elements;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Builds the {@link Injector}s of GuiceBerry Envs so that Envs with the same
+ * {@link EnvFingerprint} share a single {@link Injector}, and Envs that only
+ * differ in their {@link OverridableBindings} share a parent {@link Injector}
+ * for everything else. See {@link GuiceBerry#setShareIdenticalEnvs}.
+ *
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+final class EnvSharing {
+
+  /**
+   * The (possibly still being built) {@link Injector} of each distinct set of
+   * elements.
+   */
+  private final ConcurrentMap<EnvFingerprint, FutureTask<Injector>> fingerprintToInjectorFutureMap =
+    Maps.newConcurrentMap();
+
+  /**
+   * Returns the {@link Injector} for the GuiceBerry Env {@code gbeInstance},
+   * which may be shared by other Envs, or be a child of one that is.
+   */
+  Injector getOrCreateInjector(Module gbeInstance) {
+    List<Element> elements = Elements.getElements(gbeInstance);
+    List<Element> common = Lists.newArrayList();
+    List<Element> overridable = Lists.newArrayList();
+    for (Element element : elements) {
+      (isOverridable(element) ? overridable : common).add(element);
+    }
+    if (overridable.isEmpty()) {
+      return getOrCreateSharedInjector(common);
+    }
+    Injector parent;
+    try {
+      parent = getOrCreateSharedInjector(common);
+    } catch (CreationException e) {
+      // Most likely, the common bindings depend on overridable ones. If that
+      // is not it, this reports the actual problem.
+      return Guice.createInjector(Elements.getModule(elements));
+    }
+    return parent.createChildInjector(Elements.getModule(overridable));
+  }
+
+  /**
+   * Forgets {@code injector}, if it is a shared one, so that the Envs that
+   * shared it get a new one next time.
+   */
+  void forget(Injector injector) {
+    for (Map.Entry<EnvFingerprint, FutureTask<Injector>> e
+        : fingerprintToInjectorFutureMap.entrySet()) {
+      FutureTask<Injector> future = e.getValue();
+      if (future.isDone() && (getQuietly(future) == injector)) {
+        fingerprintToInjectorFutureMap.remove(e.getKey(), future);
+      }
+    }
+  }
+
+  private static Injector getQuietly(FutureTask<Injector> done) {
+    try {
+      return done.get();
+    } catch (InterruptedException e) {
+      // Can't happen, it's done
+      Thread.currentThread().interrupt();
+      return null;
+    } catch (ExecutionException e) {
+      return null;
+    }
+  }
+
+  private static boolean isOverridable(Element element) {
+    Object source = element.getSource();
+    return (source instanceof ElementSource)
+        && ((ElementSource) source).getModuleClassNames().contains(
+            OverridableBindings.class.getName());
+  }
+
+  private Injector getOrCreateSharedInjector(final List<Element> elements) {
+    FutureTask<Injector> newFuture = new FutureTask<Injector>(new Callable<Injector>() {
+      public Injector call() {
+        return Guice.createInjector(Elements.getModule(elements));
+      }
+    });
+    FutureTask<Injector> future =
+      fingerprintToInjectorFutureMap.putIfAbsent(EnvFingerprint.of(elements), newFuture);
+    if (future == null) {
+      future = newFuture;
+      future.run();
+    }
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          return future.get();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        } catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+          }
+          if (cause instanceof Error) {
+            throw (Error) cause;
+          }
+          throw new RuntimeException(cause);
+        }
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
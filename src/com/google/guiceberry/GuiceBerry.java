@@ -16,11 +16,17 @@
 package com.google.guiceberry;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
 import com.google.guiceberry.GuiceBerryUniverse.TestCaseScaffolding;
 import com.google.guiceberry.junit3.AutoTearDownGuiceBerry;
 import com.google.guiceberry.junit3.ManualTearDownGuiceBerry;
 import com.google.guiceberry.junit4.GuiceBerryRule;
 import com.google.guiceberry.testng.TestNgGuiceBerry;
+import com.google.inject.Injector;
+import com.google.inject.Module;
+
+import java.util.Collection;
+import java.util.Map;
 
 /**
  * You won't have to deal with this class directly unless you are writing a test
@@ -35,11 +41,41 @@ import com.google.guiceberry.testng.TestNgGuiceBerry;
  *   <li>For TestNG, {@link TestNgGuiceBerry}
  * </ul>
  *
+ * <p>Tests may run in parallel, each in its own thread, against the same
+ * GuiceBerry Env. Each test still gets its own {@link TestId},
+ * {@link TestScoped} instances and tear downs, as well as its own overrides
+ * when using
+ * {@link com.google.guiceberry.controllable.StaticMapInjectionController}.
+ * To use any of these from threads the test did not create, see
+ * {@link TestContext}.
+ *
+ * <p>Besides {@link TestScoped}, GuiceBerry offers {@link TestClassScoped}
+ * and {@link SuiteScoped}, for instances that outlive a test. Adapters end
+ * these scopes through {@link #finishTestClass} and {@link #finishSuite}.
+ *
  * @author Luiz-Otavio "Z" Zorzella
  */
 @VisibleForTesting
 public class GuiceBerry {
 
+  /**
+   * See {@link #setShareIdenticalEnvs}.
+   */
+  public static final String SHARE_IDENTICAL_ENVS_PROPERTY_NAME = "GuiceBerryShareIdenticalEnvs";
+
+  /**
+   * The System property holding how many tests may have
+   * {@link DeferredTearDownAccepter deferred} tear downs pending before the
+   * next test to finish waits for some to run. Defaults to 64.
+   */
+  public static final String MAX_PENDING_DEFERRED_TEAR_DOWNS_PROPERTY_NAME =
+      "GuiceBerryMaxPendingDeferredTearDowns";
+
+  /**
+   * See {@link #setMaxBootedEnvs}.
+   */
+  public static final String MAX_BOOTED_ENVS_PROPERTY_NAME = "GuiceBerryMaxBootedEnvs";
+
   public static final GuiceBerry INSTANCE = new GuiceBerry(GuiceBerryUniverse.INSTANCE);
   
   private final GuiceBerryUniverse universe;
@@ -50,12 +86,117 @@ public class GuiceBerry {
   }
 
   /**
+   * Builds the {@link GuiceBerryWrapper} of the test {@code testDescription}
+   * describes. That {@link TestDescription} instance (rather than any equal
+   * one) then holds the test's state, e.g. its {@link TestScoped} instances,
+   * until {@link GuiceBerryWrapper#runAfterTest} is called.
+   *
    * @see GuiceBerryWrapper
    */
   public GuiceBerryWrapper buildWrapper(TestDescription testDescription, GuiceBerryEnvSelector guiceBerryEnvSelector) {
     return new TestCaseScaffolding(testDescription, guiceBerryEnvSelector, universe);
   }
+
+  /**
+   * Builds the {@link Injector} of each of the given GuiceBerry Envs (and
+   * runs its {@link GuiceBerryEnvMain}, if bound) ahead of time, using at most
+   * {@code maxThreads} threads, so that the first test using each Env does not
+   * pay for its boot. Envs that have already been booted are not booted again.
+   *
+   * <p>Returns, for each Env, the time in milliseconds this method spent
+   * booting (or waiting for) it, in the order the Envs were given.
+   *
+   * <p>Since there is no test running yet, a {@link GuiceBerryEnvMain} must
+   * not provision anything that is {@link TestScoped}.
+   *
+   * @throws RuntimeException if any Env fails to boot. All the other Envs are
+   *   still booted, and tests using the failed Env(s) will be skipped just
+   *   as if it had failed to boot for the first test using it.
+   *
+   * @see com.google.guiceberry.junit4.GuiceBerryWarmUpRule
+   */
+  public Map<Class<? extends Module>, Long> warmUp(
+      Collection<? extends Class<? extends Module>> guiceBerryEnvClasses, int maxThreads) {
+    return universe.warmUp(guiceBerryEnvClasses, maxThreads);
+  }
   
+  /**
+   * Makes GuiceBerry Envs share their {@link Injector}s, as far as their
+   * bindings allow, rather than each building (and booting, through its
+   * {@link GuiceBerryEnvMain}) one of its own. This must be called before the
+   * Envs to share are booted; it can also be turned on by setting the
+   * {@link #SHARE_IDENTICAL_ENVS_PROPERTY_NAME} System property to
+   * {@code true}.
+   *
+   * <p>Envs whose bindings are all the same (see
+   * {@link com.google.inject.spi.Elements#getElements}; e.g. Envs that only
+   * differ in their name, to be used with
+   * {@link DefaultEnvSelector#override}) get the same {@link Injector}.
+   * Envs that only differ in their {@link OverridableBindings} get a child
+   * {@link Injector} each, of a parent {@link Injector} they all share.
+   * A {@link GuiceBerryEnvMain} or {@link GuiceBerryEnvSnapshot} runs once
+   * per {@link Injector} that binds it.
+   *
+   * <p>Bindings are compared by their key, scope and target, the latter by
+   * its {@code equals}: two Envs that, e.g., bind the same key to distinct
+   * but equal instances will share that instance.
+   */
+  public void setShareIdenticalEnvs(boolean shareIdenticalEnvs) {
+    universe.shareIdenticalEnvs = shareIdenticalEnvs;
+  }
+
+  /**
+   * Limits how many GuiceBerry Envs are kept booted at once to
+   * {@code maxBootedEnvs}, or lifts that limit if it is {@code 0} (the
+   * default). This must be called before the Envs to limit are booted; it can
+   * also be set through the {@link #MAX_BOOTED_ENVS_PROPERTY_NAME} System
+   * property.
+   *
+   * <p>Once booting an Env makes for too many, the least recently used ones
+   * are evicted: their {@link GuiceBerryEnvShutdown} (if bound) is called,
+   * and they are forgotten, to be booted again from scratch (running their
+   * {@link GuiceBerryEnvMain} once more) if a later test needs them. An Env
+   * is not evicted while a test is using it, or while another booted Env is
+   * a {@link GuiceBerryEnvVariant} of it, so the limit can be exceeded for a
+   * while. Failures to shut an Env down are reported by {@link #finishSuite}.
+   */
+  public void setMaxBootedEnvs(int maxBootedEnvs) {
+    Preconditions.checkArgument(maxBootedEnvs >= 0, "maxBootedEnvs must not be negative");
+    universe.maxBootedEnvs = maxBootedEnvs;
+  }
+
+  /**
+   * Ends the {@link TestClassScoped} scope of the given {@code testClass}:
+   * runs the tear downs added to its {@link ForTestClass}
+   * {@link com.google.common.testing.TearDownAccepter}, and forgets its
+   * instances, so that later tests of that class (if any) get new ones.
+   *
+   * <p>Test framework adapters should call this once all tests of a class
+   * have run, e.g. from a JUnit4 {@link org.junit.ClassRule} or a TestNG
+   * {@code @AfterClass}. Test classes that are never finished this way are
+   * finished by {@link #finishSuite}.
+   */
+  public void finishTestClass(Class<?> testClass) {
+    universe.finishTestClass(testClass);
+  }
+
+  /**
+   * Finishes every test class that has not been finished yet (see
+   * {@link #finishTestClass}), and then ends the {@link SuiteScoped} scope,
+   * running the tear downs added to its {@link ForSuite}
+   * {@link com.google.common.testing.TearDownAccepter}.
+   *
+   * <p>Before any of that, this waits for all
+   * {@link DeferredTearDownAccepter deferred} tear downs to have run, and
+   * their failures are reported along with those of the tear downs above.
+   *
+   * <p>Test framework adapters should call this once all tests have run. If
+   * none does, this is called when the JVM exits.
+   */
+  public void finishSuite() {
+    universe.finishSuite();
+  }
+
   /**
    * You won't need to deal with this interface unless you are writing an
    * adapter to a test framework. See {@link GuiceBerry}.
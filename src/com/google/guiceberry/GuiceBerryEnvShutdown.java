@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.guiceberry;
+
+/**
+ * If a GuiceBerry Env binds this interface, the implementing class's
+ * {@link #shutDown()} method will be called when that Env is evicted, i.e.
+ * when GuiceBerry drops its {@link com.google.inject.Injector} to keep the
+ * number of booted Envs within bounds (see {@link GuiceBerry#setMaxBootedEnvs}).
+ *
+ * <p>This is the counterpart of {@link GuiceBerryEnvMain}: use it to stop
+ * whatever servers that started, so that the Env can be booted again, from
+ * scratch, if a later test needs it. It is called on the
+ * {@link com.google.inject.Injector} that binds it, once no test is using
+ * that {@link com.google.inject.Injector} anymore, and never for an Env that
+ * is not evicted.
+ *
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public interface GuiceBerryEnvShutdown {
+
+  /** @see GuiceBerryEnvShutdown */
+  void shutDown();
+}
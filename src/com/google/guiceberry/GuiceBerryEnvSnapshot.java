@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.guiceberry;
+
+/**
+ * If a GuiceBerry Env binds this interface, GuiceBerry calls {@link #take()}
+ * once, right after the Env's {@link GuiceBerryEnvMain} runs, and
+ * {@link #restore()} after each test that uses the Env is torn down.
+ *
+ * <p>Use this to bring state that is expensive to set up, but that tests
+ * change, back to where the {@link GuiceBerryEnvMain} left it -- e.g. a test
+ * database it seeds -- in less time than setting it up again would take:
+ * say, by cloning its files (copy-on-write, where the file system supports
+ * it) or by checkpointing it in memory.
+ *
+ * <p>{@link #restore()} is called after the tear downs added to the test's
+ * {@link com.google.common.testing.TearDownAccepter} have run, but while the
+ * test's {@link TestScoped} instances are still around. If tests using the
+ * Env run in parallel, restoring it after one test affects all the others, so
+ * only bind this in Envs whose tests don't.
+ *
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public interface GuiceBerryEnvSnapshot {
+
+  /**
+   * Takes the snapshot that {@link #restore()} will restore. If this throws,
+   * the Env fails to boot, just as if its {@link GuiceBerryEnvMain} had
+   * thrown.
+   */
+  void take();
+
+  /**
+   * Brings the Env back to the state it was in when {@link #take()} was
+   * called.
+   */
+  void restore();
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.guiceberry;
+
+import com.google.common.collect.ImmutableList;
+import com.google.inject.AbstractModule;
+import com.google.inject.Injector;
+import com.google.inject.Module;
+
+import java.util.List;
+
+/**
+ * A GuiceBerry Env that is another ("base") Env plus a few more bindings.
+ * Rather than building an {@link Injector} of its own, a variant gets a child
+ * {@link Injector} of the base Env's, which is booted first if needed, so
+ * that everything the base Env has already built (e.g. a server started by
+ * its {@link GuiceBerryEnvMain}) is reused, and only the variant's own
+ * bindings are created. E.g.:
+ *
+ * <pre>
+ *   public final class PetStoreEnvWithFakeClock extends GuiceBerryEnvVariant {
+ *     public PetStoreEnvWithFakeClock() {
+ *       super(PetStoreEnv.class, new FakeClockModule());
+ *     }
+ *   }
+ * </pre>
+ *
+ * <p>Guice does not let a child {@link Injector} bind anything its parent
+ * already binds, so a variant can only add bindings the base Env leaves
+ * unbound; a typical base Env leaves out the few bindings its variants
+ * differ in. A {@link GuiceBerryEnvMain} or {@link GuiceBerryEnvSnapshot}
+ * bound by the variant itself runs (after the base Env's) for the variant.
+ *
+ * <p>Like any other GuiceBerry Env, a variant must have a public no-argument
+ * constructor.
+ *
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public abstract class GuiceBerryEnvVariant extends AbstractModule {
+
+  private final Class<? extends Module> baseGbeClass;
+  private final List<Module> modules;
+
+  protected GuiceBerryEnvVariant(Class<? extends Module> baseGbeClass, Module... modules) {
+    this.baseGbeClass = baseGbeClass;
+    this.modules = ImmutableList.copyOf(modules);
+  }
+
+  /**
+   * Returns the GuiceBerry Env this is a variant of.
+   */
+  public final Class<? extends Module> getBaseGbeClass() {
+    return baseGbeClass;
+  }
+
+  /**
+   * Installs the bindings this variant adds to its base Env. Subclasses may
+   * override this to add bindings of their own, but must call
+   * {@code super.configure()}.
+   */
+  @Override
+  protected void configure() {
+    for (Module module : modules) {
+      install(module);
+    }
+  }
+}
@@ -18,16 +18,25 @@ package com.google.guiceberry;
 
 import com.google.common.testing.TearDown;
 import com.google.common.testing.TearDownAccepter;
-import com.google.common.testing.TearDownStack;
 import com.google.guiceberry.GuiceBerryUniverse;
 import com.google.guiceberry.TestScope;
 import com.google.inject.AbstractModule;
 import com.google.inject.Provides;
 import com.google.inject.Scope;
 
+import java.util.List;
+
 /**
  * This Module provides the basic bindings required by GuiceBerry, namely
- * {@link TestId}, {@link TearDownAccepter} and the {@link TestScoped} scope.
+ * {@link TestId}, {@link TearDownAccepter} (as well as its {@link ForTestClass}
+ * and {@link ForSuite} versions), {@link ParallelTearDownAccepter},
+ * {@link DeferredTearDownAccepter} and the {@link TestScoped},
+ * {@link PooledTestScoped}, {@link TestClassScoped} and {@link SuiteScoped}
+ * scopes.
+ * {@link TearDownAccepter}, {@link ParallelTearDownAccepter} and
+ * {@link DeferredTearDownAccepter} are all bound to the same {@link TestScoped}
+ * instance, so opting in to independent or deferred tear downs is a matter of
+ * injecting the corresponding accepter instead of {@link TearDownAccepter}.
  * Without these bindings, GuiceBerry will fail to set up. Therefore, this
  * module is required to be installed by all GuiceBerry Envs (see
  * {@link GuiceBerryEnvSelector}).
@@ -62,33 +71,51 @@ public class GuiceBerryModule extends AbstractModule {
     TestScope testScope = new TestScope(universe);
     bind(TestScope.class).toInstance(testScope);
     bindScope(TestScoped.class, testScope);
+    bindScope(PooledTestScoped.class, testScope.pooled());
+    bindScope(TestClassScoped.class, new TestScope(universe, TestScope.Lifetime.TEST_CLASS));
+    bindScope(SuiteScoped.class, new TestScope(universe, TestScope.Lifetime.SUITE));
     bind(TearDownAccepter.class).to(ToTearDown.class);
+    bind(ParallelTearDownAccepter.class).to(ToTearDown.class);
+    bind(DeferredTearDownAccepter.class).to(ToTearDown.class);
   }
 
   @Provides
   @TestScoped
   ToTearDown getToTearDown() {
-    return new ToTearDown() {
-      TearDownStack delegate = new TearDownStack();
-      
-      public void addTearDown(TearDown tearDown) {
-        delegate.addTearDown(tearDown);
-      }
-    
-      public void runTearDown() {
-        delegate.runTearDown();
-      }
-    };
+    return new ParallelTearDownStack(universe);
   }
   
+  @Provides
+  @ForTestClass
+  TearDownAccepter getTestClassTearDownAccepter() {
+    return universe.testClassLifetime(
+        TestScope.currentTest(universe).getTestCaseClass()).tearDowns;
+  }
+
+  @Provides
+  @ForSuite
+  TearDownAccepter getSuiteTearDownAccepter() {
+    return universe.suiteLifetime().tearDowns;
+  }
+
   @Provides
   @TestScoped
   TestId getTestId() {
     return universe.currentTestDescriptionThreadLocal.get().getTestId();
   }
   
-  interface ToTearDown extends TearDownAccepter {
+  /**
+   * The {@link TestScoped} instance that every tear down accepter of a test is
+   * bound to.
+   */
+  interface ToTearDown extends ParallelTearDownAccepter, DeferredTearDownAccepter {
     void runTearDown();
+
+    /**
+     * Returns the {@link DeferredTearDownAccepter deferred} tear downs, in
+     * the order they should run, and forgets about them.
+     */
+    List<TearDown> takeDeferredTearDowns();
   }
   
   @Override
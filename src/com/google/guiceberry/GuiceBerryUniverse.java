@@ -15,24 +15,46 @@
  */
 package com.google.guiceberry;
 
+import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.testing.TearDown;
 import com.google.common.testing.TearDownAccepter;
 import com.google.common.testing.TearDownStack;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.guiceberry.GuiceBerry.GuiceBerryWrapper;
 import com.google.guiceberry.GuiceBerryModule.ToTearDown;
+import com.google.guiceberry.TestTimingListener.Phase;
 import com.google.inject.AbstractModule;
 import com.google.inject.ConfigurationException;
 import com.google.inject.CreationException;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 import com.google.inject.Key;
+import com.google.inject.MembersInjector;
 import com.google.inject.Module;
+import com.google.inject.Provider;
 import com.google.inject.testing.guiceberry.GuiceBerryEnv;
 import com.google.inject.testing.guiceberry.junit3.GuiceBerryJunit3;
+import com.google.inject.util.Providers;
 
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * @author Luiz-Otavio "Z" Zorzella
@@ -41,10 +63,104 @@ class GuiceBerryUniverse {
 
   static final GuiceBerryUniverse INSTANCE = new GuiceBerryUniverse();
   
-  final Map<Class<? extends Module>, Injector> gbeClassToInjectorMap = Maps.newHashMap();
+  /**
+   * The {@link Injector} of every GuiceBerry Env that has finished booting
+   * (or {@link #BOGUS_INJECTOR}, if that failed). Lookups in this map take no
+   * lock.
+   */
+  final ConcurrentMap<Class<? extends Module>, Injector> gbeClassToInjectorMap =
+    Maps.newConcurrentMap();
+
+  /**
+   * Per-GuiceBerry Env creation futures. The first test to find a GuiceBerry
+   * Env creates and runs its future, while any other test that needs the same
+   * Env concurrently waits on it. Tests that need different Envs never wait on
+   * each other.
+   */
+  final ConcurrentMap<Class<? extends Module>, FutureTask<Injector>> gbeClassToInjectorFutureMap =
+    Maps.newConcurrentMap();
+
+  /**
+   * Whether GuiceBerry Envs with the same bindings share their Injectors. See
+   * {@link GuiceBerry#setShareIdenticalEnvs}.
+   */
+  volatile boolean shareIdenticalEnvs =
+    Boolean.getBoolean(GuiceBerry.SHARE_IDENTICAL_ENVS_PROPERTY_NAME);
+
+  final EnvSharing envSharing = new EnvSharing();
+
+  /**
+   * How many GuiceBerry Envs may be booted at once, or {@code 0} for no limit.
+   * See {@link GuiceBerry#setMaxBootedEnvs}.
+   */
+  volatile int maxBootedEnvs = Integer.getInteger(GuiceBerry.MAX_BOOTED_ENVS_PROPERTY_NAME, 0);
+
+  final EnvCache envCache = new EnvCache(this);
+
+  /**
+   * Runs the {@link DeferredTearDownAccepter deferred} tear downs of all tests.
+   */
+  final DeferredTearDowns deferredTearDowns = new DeferredTearDowns(Integer.getInteger(
+      GuiceBerry.MAX_PENDING_DEFERRED_TEAR_DOWNS_PROPERTY_NAME,
+      DeferredTearDowns.DEFAULT_MAX_PENDING));
+
+  /**
+   * The Injectors whose {@link GuiceBerryEnvMain} (if any) has run, with the
+   * {@link GuiceBerryEnvSnapshot} taken right after it (if any). An Injector
+   * shared by many GuiceBerry Envs, or that is the parent of theirs, is only
+   * booted once.
+   */
+  final ConcurrentMap<Injector, Optional<GuiceBerryEnvSnapshot>> bootedInjectorMap =
+    Maps.newConcurrentMap();
+
+  /**
+   * The {@link EnvPlan} of every GuiceBerry Env that has booted successfully.
+   */
+  final ConcurrentMap<Class<? extends Module>, EnvPlan> gbeClassToPlanMap =
+    Maps.newConcurrentMap();
+
+  /**
+   * The {@link TestTimingListener} of each GuiceBerry Env, or
+   * {@link #NO_OP_TIMING_LISTENER} if it has none.
+   */
+  final ConcurrentMap<Class<? extends Module>, TestTimingListener> gbeClassToTimingListenerMap =
+    Maps.newConcurrentMap();
   
+  /**
+   * The {@link GuiceBerryEnvSnapshot}s of each GuiceBerry Env whose Injector
+   * (or any of its ancestors) binds one, i.e. the instances whose snapshots
+   * were taken, in the order they were taken.
+   */
+  final ConcurrentMap<Class<? extends Module>, List<GuiceBerryEnvSnapshot>> gbeClassToSnapshotsMap =
+    Maps.newConcurrentMap();
+  
+  /**
+   * The {@link TestClassScoped} instances and tear downs of each test class
+   * that has not yet been finished (see {@link #finishTestClass}).
+   */
+  private final ConcurrentMap<Class<?>, ScopeLifetime> testClassLifetimes =
+    Maps.newConcurrentMap();
+
+  /**
+   * The {@link SuiteScoped} instances and tear downs, or {@code null} if the
+   * suite has not started (or has been finished).
+   */
+  private final AtomicReference<ScopeLifetime> suiteLifetime =
+    new AtomicReference<ScopeLifetime>();
+
+  private final AtomicBoolean finishSuiteAtExit = new AtomicBoolean();
+
   public final InheritableThreadLocal<TestDescription> currentTestDescriptionThreadLocal =
     new InheritableThreadLocal<TestDescription>();
+
+  /**
+   * The test that was set up, and not yet torn down, by each thread. Unlike
+   * {@link #currentTestDescriptionThreadLocal}, this is not inherited, so that
+   * a thread created while some test ran (e.g. by a pool shared by tests
+   * running in parallel) can go on to set up tests of its own.
+   */
+  final ThreadLocal<TestDescription> testSetUpInThisThreadLocal =
+    new ThreadLocal<TestDescription>();
   
   /**
    * If something goes wrong trying to get an Injector instance for some 
@@ -60,10 +176,229 @@ class GuiceBerryUniverse {
   private static final Class<?>[] REQUIRED_BINDINGS = {
       TestScope.class,
       TearDownAccepter.class,
+      ParallelTearDownAccepter.class,
+      DeferredTearDownAccepter.class,
       ToTearDown.class,
       TestId.class
   };
   
+  /**
+   * See {@link GuiceBerry#warmUp(Collection, int)}.
+   */
+  Map<Class<? extends Module>, Long> warmUp(
+      Collection<? extends Class<? extends Module>> gbeClasses, int maxThreads) {
+    Preconditions.checkArgument(maxThreads > 0, "maxThreads must be positive");
+    // Dedupe, but keep the order in which the Envs were given
+    List<Class<? extends Module>> toBoot =
+      Lists.newArrayList(new LinkedHashSet<Class<? extends Module>>(gbeClasses));
+    if (toBoot.isEmpty()) {
+      return ImmutableMap.of();
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(
+        Math.min(maxThreads, toBoot.size()),
+        new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat("GuiceBerry-warm-up-%d")
+            .build());
+    try {
+      Map<Class<? extends Module>, Future<Long>> futures = Maps.newLinkedHashMap();
+      for (final Class<? extends Module> gbeClass : toBoot) {
+        futures.put(gbeClass, executor.submit(new Callable<Long>() {
+          public Long call() {
+            long start = System.nanoTime();
+            TestCaseScaffolding.getAndSetInjector(GuiceBerryUniverse.this, gbeClass, null);
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+          }
+        }));
+      }
+      
+      ImmutableMap.Builder<Class<? extends Module>, Long> result = ImmutableMap.builder();
+      List<String> failedGbeNames = Lists.newArrayList();
+      Throwable firstFailure = null;
+      for (Map.Entry<Class<? extends Module>, Future<Long>> e : futures.entrySet()) {
+        try {
+          result.put(e.getKey(), e.getValue().get());
+        } catch (ExecutionException failure) {
+          failedGbeNames.add(e.getKey().getName());
+          if (firstFailure == null) {
+            firstFailure = failure.getCause();
+          }
+        } catch (InterruptedException interrupted) {
+          Thread.currentThread().interrupt();
+          throw new RuntimeException("Interrupted while warming up GuiceBerry Envs.", interrupted);
+        }
+      }
+      if (firstFailure != null) {
+        throw new RuntimeException(String.format(
+            "Failed to warm up the GuiceBerry Env(s) %s. The first failure is the cause.",
+            failedGbeNames), firstFailure);
+      }
+      return result.build();
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Returns the {@link ScopeLifetime} of the given {@code testClass}, starting
+   * it if needed.
+   */
+  ScopeLifetime testClassLifetime(Class<?> testClass) {
+    ScopeLifetime result = testClassLifetimes.get(testClass);
+    if (result == null) {
+      finishSuiteAtExit();
+      ScopeLifetime created = new ScopeLifetime();
+      result = testClassLifetimes.putIfAbsent(testClass, created);
+      if (result == null) {
+        result = created;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the {@link ScopeLifetime} of the suite, starting it if needed.
+   */
+  ScopeLifetime suiteLifetime() {
+    ScopeLifetime result = suiteLifetime.get();
+    while (result == null) {
+      finishSuiteAtExit();
+      suiteLifetime.compareAndSet(null, new ScopeLifetime());
+      result = suiteLifetime.get();
+    }
+    return result;
+  }
+
+  /**
+   * See {@link GuiceBerry#finishTestClass}.
+   */
+  void finishTestClass(Class<?> testClass) {
+    ScopeLifetime lifetime = testClassLifetimes.remove(testClass);
+    if (lifetime != null) {
+      lifetime.tearDowns.runTearDown();
+    }
+  }
+
+  /**
+   * See {@link GuiceBerry#finishSuite}.
+   */
+  void finishSuite() {
+    // The suite is torn down last, and every tear down runs even if some fail
+    TearDownStack stack = new TearDownStack();
+    final ScopeLifetime suite = suiteLifetime.getAndSet(null);
+    if (suite != null) {
+      stack.addTearDown(new TearDown() {
+        public void tearDown() {
+          suite.tearDowns.runTearDown();
+        }
+      });
+    }
+    for (final Class<?> testClass : testClassLifetimes.keySet()) {
+      stack.addTearDown(new TearDown() {
+        public void tearDown() {
+          finishTestClass(testClass);
+        }
+      });
+    }
+    stack.addTearDown(new TearDown() {
+      public void tearDown() {
+        envCache.reportFailures();
+      }
+    });
+    // Deferred tear downs may still be using what's torn down above
+    stack.addTearDown(new TearDown() {
+      public void tearDown() {
+        deferredTearDowns.drain();
+      }
+    });
+    stack.runTearDown();
+  }
+
+  /**
+   * Makes sure the test classes and the suite that are still unfinished when
+   * the JVM exits (as well as pending deferred tear downs) are finished then,
+   * e.g. for test framework adapters that have no hook for the end of a test
+   * class.
+   */
+  void finishSuiteAtExit() {
+    if (!finishSuiteAtExit.compareAndSet(false, true)) {
+      return;
+    }
+    Runtime.getRuntime().addShutdownHook(new Thread("GuiceBerry suite tear down") {
+      @Override
+      public void run() {
+        try {
+          finishSuite();
+        } catch (RuntimeException e) {
+          e.printStackTrace();
+        }
+      }
+    });
+  }
+
+  /**
+   * The instances and the tear downs of a scope that outlives a single test,
+   * i.e. of one test class (see {@link TestClassScoped}) or of the suite (see
+   * {@link SuiteScoped}).
+   */
+  static final class ScopeLifetime {
+    final TestScope.TestSlots slots = new TestScope.TestSlots();
+    final TearDownStack tearDowns = new TearDownStack();
+  }
+
+  /**
+   * Everything setting up and tearing down a test against a GuiceBerry Env
+   * needs from its {@link Injector}, resolved once, when the Env boots,
+   * rather than for every test: the {@link Provider}s of the per-test
+   * bindings, the {@link TestWrapper} (or the lack thereof) and the
+   * {@link MembersInjector} of each test class seen so far.
+   */
+  static final class EnvPlan {
+
+    private final Class<? extends Module> gbeClass;
+    private final Injector injector;
+
+    final TestScope testScope;
+    final Provider<ToTearDown> toTearDownProvider;
+    final Provider<TearDownAccepter> tearDownAccepterProvider;
+    final Provider<? extends TestWrapper> testWrapperProvider;
+
+    private final ConcurrentMap<Class<?>, MembersInjector<?>> testCaseClassToMembersInjectorMap =
+      Maps.newConcurrentMap();
+
+    EnvPlan(Class<? extends Module> gbeClass, Injector injector) {
+      this.gbeClass = gbeClass;
+      this.injector = injector;
+      try {
+        this.testScope = injector.getInstance(TestScope.class);
+        this.toTearDownProvider = injector.getProvider(ToTearDown.class);
+        this.tearDownAccepterProvider = injector.getProvider(TearDownAccepter.class);
+      } catch (ConfigurationException e) {
+        throw TestCaseScaffolding.bindingError(gbeClass, e);
+      }
+      this.testWrapperProvider = TestCaseScaffolding.buildTestWrapperProvider(injector);
+    }
+
+    /**
+     * Returns the {@link MembersInjector} for {@code testCaseClass}, which is
+     * looked up in the {@link Injector} only the first time.
+     */
+    @SuppressWarnings("unchecked")
+    MembersInjector<Object> membersInjector(Class<?> testCaseClass) {
+      MembersInjector<?> result = testCaseClassToMembersInjectorMap.get(testCaseClass);
+      if (result == null) {
+        try {
+          result = injector.getMembersInjector(testCaseClass);
+        } catch (ConfigurationException e) {
+          throw TestCaseScaffolding.bindingError(gbeClass, e);
+        }
+        // Racing threads get equivalent instances, so it does not matter which wins
+        testCaseClassToMembersInjectorMap.putIfAbsent(testCaseClass, result);
+      }
+      return (MembersInjector<Object>) result;
+    }
+  }
+
   static class TestCaseScaffolding implements GuiceBerryWrapper {
 
     private final TestDescription testDescription;
@@ -71,8 +406,15 @@ class GuiceBerryUniverse {
     private final GuiceBerryUniverse universe;
 
     private Injector injector;
+    private EnvPlan plan;
+    private Class<? extends Module> gbeClass;
+    private TestTimingListener timingListener = NO_OP_TIMING_LISTENER;
     
     private final TearDownStack stack = new TearDownStack();
+
+    private List<TearDown> deferredTearDowns = ImmutableList.of();
+
+    private boolean envAcquired;
     
     public TestCaseScaffolding(
         TestDescription testDescription,
@@ -92,11 +434,22 @@ class GuiceBerryUniverse {
 
       checkPreviousTestCalledTearDown(testDescription);
       
-      final Class<? extends Module> gbeClass =
-        guiceBerryEnvSelector.guiceBerryEnvToUse(testDescription);
+      gbeClass = guiceBerryEnvSelector.guiceBerryEnvToUse(testDescription);
       
+      universe.testSetUpInThisThreadLocal.set(testDescription);
       universe.currentTestDescriptionThreadLocal.set(testDescription);
-      injector = getAndSetInjector(gbeClass);
+      long start = System.nanoTime();
+      envAcquired = universe.envCache.acquire(gbeClass);
+      try {
+        injector = getAndSetInjector(universe, gbeClass, testDescription.getTestCaseClass());
+      } finally {
+        if (injector == BOGUS_INJECTOR) {
+          releaseEnv();
+        }
+      }
+      long injectorLookupNanos = System.nanoTime() - start;
+      plan = universe.gbeClassToPlanMap.get(gbeClass);
+      testDescription.envInjector = injector;
 
       stack.addTearDown(new TearDown() {
         public void tearDown() throws Exception {
@@ -104,17 +457,84 @@ class GuiceBerryUniverse {
         }
       });
       
+      final List<GuiceBerryEnvSnapshot> snapshots =
+        universe.gbeClassToSnapshotsMap.get(gbeClass);
+      if (snapshots != null) {
+        stack.addTearDown(new TearDown() {
+          public void tearDown() throws Exception {
+            long start = System.nanoTime();
+            try {
+              // In the opposite order they were taken, each even if another fails
+              TearDownStack restores = new TearDownStack();
+              for (final GuiceBerryEnvSnapshot snapshot : snapshots) {
+                restores.addTearDown(new TearDown() {
+                  public void tearDown() {
+                    snapshot.restore();
+                  }
+                });
+              }
+              restores.runTearDown();
+            } finally {
+              phaseFinished(Phase.RESTORE_SNAPSHOT, start);
+            }
+          }
+        });
+      }
+      
       stack.addTearDown(new TearDown() {
         public void tearDown() throws Exception {
-          ToTearDown toTearDown = injector.getInstance(ToTearDown.class);
-          toTearDown.runTearDown();
+          long start = System.nanoTime();
+          try {
+            ToTearDown toTearDown = plan.toTearDownProvider.get();
+            deferredTearDowns = toTearDown.takeDeferredTearDowns();
+            toTearDown.runTearDown();
+          } finally {
+            phaseFinished(Phase.TEAR_DOWN, start);
+          }
         }
       });
       
-      TearDownAccepter accepter = wrappedGetInstance(injector, TearDownAccepter.class, gbeClass);
-      buildTestWrapperInstance(injector).toRunBeforeTest();
+      timingListener = getTimingListener(universe, gbeClass, injector);
+      timingListener.phaseFinished(
+          gbeClass, testDescription, Phase.INJECTOR_LOOKUP, injectorLookupNanos);
+      
+      plan.tearDownAccepterProvider.get();
+      start = System.nanoTime();
+      try {
+        plan.testWrapperProvider.get().toRunBeforeTest();
+      } finally {
+        phaseFinished(Phase.TEST_WRAPPER, start);
+      }
       
-      injectMembersIntoTest(gbeClass, injector); 
+      start = System.nanoTime();
+      try {
+        plan.membersInjector(testDescription.getTestCaseClass())
+            .injectMembers(testDescription.getTestCase());
+      } finally {
+        phaseFinished(Phase.INJECT_MEMBERS, start);
+      }
+    }
+
+    private void phaseFinished(Phase phase, long startNanos) {
+      timingListener.phaseFinished(
+          gbeClass, testDescription, phase, System.nanoTime() - startNanos);
+    }
+
+    private static TestTimingListener getTimingListener(GuiceBerryUniverse universe,
+        Class<? extends Module> gbeClass, Injector injector) {
+      TestTimingListener result = universe.gbeClassToTimingListenerMap.get(gbeClass);
+      if (result == null) {
+        result = getInstanceIfHasBinding(injector, TestTimingListener.class);
+        if (result == null) {
+          result = NO_OP_TIMING_LISTENER;
+        }
+        TestTimingListener previous =
+          universe.gbeClassToTimingListenerMap.putIfAbsent(gbeClass, result);
+        if (previous != null) {
+          result = previous;
+        }
+      }
+      return result;
     }
 
     /**
@@ -164,58 +584,25 @@ class GuiceBerryUniverse {
       }
     }
     
-    private void getMembersInjectorForTest(
-        final Class<? extends Module> gbeClass, Injector injector) {
-
-      try {
-        injector.getMembersInjector(testDescription.getTestCase().getClass());
-      } catch (ConfigurationException e) {
-        String msg = String.format("Binding error in the GuiceBerry Env '%s': '%s'.",
-            gbeClass.getName(), e.getMessage());
-        throw new RuntimeException(msg, e);
-      }
-    }
-
-    private void injectMembersIntoTest(
-        final Class<? extends Module> gbeClass, Injector injector) {
-    
-      try {
-        injector.injectMembers(testDescription.getTestCase());
-      } catch (ConfigurationException e) {
-        String msg = String.format("Binding error in the GuiceBerry Env '%s': '%s'.",
-            gbeClass.getName(), e.getMessage());
-        throw new RuntimeException(msg, e);
-      }
-    }
-
-    private static <T> T wrappedGetInstance(
-        final Injector injector, 
-        final Class<T> clazz,
-        final Class<? extends Module> gbeClass
-        ) {
-      
-      try {
-        return injector.getInstance(clazz);
-      } catch (ConfigurationException e) {
-        String msg = String.format("Binding error in the GuiceBerry Env '%s': '%s'.",
-            gbeClass.getName(), e.getMessage());
-        throw new RuntimeException(msg, e);
-      }
-    }
     
     /**
      * Returns the {@link Injector} for the given {@code gbeClass}. If this
      * GuiceBerry env has never been seen before, add it to the 
      * {@link #gbeClassToInjectorMap}.
+     *
+     * <p>Only tests that need the same GuiceBerry Env as one that is currently
+     * being created block, and only until that creation finishes.
+     *
+     * <p>If {@code testCaseClass} is not {@code null} and the Env is created
+     * here, its members injector is checked before the Env's
+     * {@link GuiceBerryEnvMain} runs, so that missing bindings fail fast.
      */
-    private Injector getAndSetInjector(final Class<? extends Module> gbeClass) {
-      synchronized (universe.gbeClassToInjectorMap) {
-        if (!universe.gbeClassToInjectorMap.containsKey(gbeClass)) {
-          foundGbeForTheFirstTime(gbeClass);  
-        }
-      }
-      
+    static Injector getAndSetInjector(final GuiceBerryUniverse universe,
+        final Class<? extends Module> gbeClass, final Class<?> testCaseClass) {
       Injector result = universe.gbeClassToInjectorMap.get(gbeClass);
+      if (result == null) {
+        result = awaitInjectorCreation(universe, gbeClass, testCaseClass);
+      }
       if (result == BOGUS_INJECTOR) {
         throw new RuntimeException(String.format(
             "Skipping '%s' GuiceBerryEnv which failed previously during injector creation.",
@@ -224,8 +611,57 @@ class GuiceBerryUniverse {
       return result; 
     }
 
+    private static Injector awaitInjectorCreation(final GuiceBerryUniverse universe,
+        final Class<? extends Module> gbeClass, final Class<?> testCaseClass) {
+      FutureTask<Injector> newFuture = new FutureTask<Injector>(new Callable<Injector>() {
+        public Injector call() {
+          foundGbeForTheFirstTime(universe, gbeClass, testCaseClass);
+          Injector result = universe.gbeClassToInjectorMap.get(gbeClass);
+          if (result != BOGUS_INJECTOR) {
+            universe.envCache.booted(gbeClass);
+          }
+          return result;
+        }
+      });
+      FutureTask<Injector> future =
+        universe.gbeClassToInjectorFutureMap.putIfAbsent(gbeClass, newFuture);
+      boolean createdHere = (future == null);
+      if (createdHere) {
+        future = newFuture;
+        future.run();
+      }
+      
+      boolean interrupted = false;
+      try {
+        while (true) {
+          try {
+            return future.get();
+          } catch (InterruptedException e) {
+            interrupted = true;
+          } catch (ExecutionException e) {
+            if (!createdHere) {
+              // Some other test already got the actual exception.
+              return BOGUS_INJECTOR;
+            }
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+              throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+              throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+          }
+        }
+      } finally {
+        if (interrupted) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+
     private void checkPreviousTestCalledTearDown(TestDescription testCase) {
-      TestDescription previousTestCase = universe.currentTestDescriptionThreadLocal.get();
+      TestDescription previousTestCase = universe.testSetUpInThisThreadLocal.get();
       
       if (previousTestCase != null) {  
         String msg = String.format(
@@ -238,19 +674,43 @@ class GuiceBerryUniverse {
       }
     }
     
-    private void foundGbeForTheFirstTime(final Class<? extends Module> gbeClass) {
+    private static void foundGbeForTheFirstTime(final GuiceBerryUniverse universe,
+        final Class<? extends Module> gbeClass, final Class<?> testCaseClass) {
       Injector result = BOGUS_INJECTOR;
+      Class<? extends Module> baseGbeClass = null;
+      boolean baseAcquired = false;
       try {
         Module gbeInstance = createGbeInstanceFromClass(gbeClass);
-        Injector injector = Guice.createInjector(gbeInstance);
+        Injector injector;
+        if (gbeInstance instanceof GuiceBerryEnvVariant) {
+          baseGbeClass = ((GuiceBerryEnvVariant) gbeInstance).getBaseGbeClass();
+          // The base must not be evicted before its variant is in the map
+          baseAcquired = universe.envCache.acquire(baseGbeClass);
+          Injector baseInjector = getAndSetInjector(universe, baseGbeClass, testCaseClass);
+          injector = baseInjector.createChildInjector(gbeInstance);
+        } else if (universe.shareIdenticalEnvs) {
+          injector = universe.envSharing.getOrCreateInjector(gbeInstance);
+        } else {
+          injector = Guice.createInjector(gbeInstance);
+        }
         ensureBasicBindingsExist(injector, gbeClass);
+        EnvPlan plan = new EnvPlan(gbeClass, injector);
         // Get a members injector for the test class first so that we fail fast if there are missing
         // bindings instead of running the main
-        getMembersInjectorForTest(gbeClass, injector);
-        callGbeMainIfBound(injector);
-        // We don't actually use the test wrapper here, but we make sure we can
-        // get an instance (i.e. we fail fast).
-        buildTestWrapperInstance(injector);
+        if (testCaseClass != null) {
+          plan.membersInjector(testCaseClass);
+        }
+        bootInjectorAndItsAncestors(universe, gbeClass, injector);
+        if (testCaseClass != null) {
+          // We don't actually use the test wrapper here, but we make sure we can
+          // get an instance (i.e. we fail fast).
+          plan.testWrapperProvider.get();
+        } else if (hasTestScopeListenerBinding(injector)) {
+          // Warming up: no test is running, so a test wrapper that depends on
+          // TestScoped bindings can't be instantiated. Just check it is bound.
+          injector.getBinding(TestWrapper.class);
+        }
+        universe.gbeClassToPlanMap.put(gbeClass, plan);
         result = injector;
       } catch (CreationException e) {
         if (e.getMessage().contains("No scope is bound to " + TestScoped.class.getName())) {
@@ -262,11 +722,19 @@ class GuiceBerryUniverse {
         // This is in the finally block to ensure that BOGUS_INJECTOR
         // is put in the map if things go bad.
         universe.gbeClassToInjectorMap.put(gbeClass, result);
+        if (baseAcquired) {
+          universe.envCache.release(baseGbeClass);
+        }
       }
     }
 
-    private static TestWrapper buildTestWrapperInstance(Injector injector) {
-      TestWrapper result = NoOpTestScopeListener.NO_OP_INSTANCE;
+    /**
+     * Returns the {@link Provider} of the {@link TestWrapper} to run before
+     * each test, which may be the no-op one, or one adapting the deprecated
+     * {@link com.google.inject.testing.guiceberry.TestScopeListener}.
+     */
+    private static Provider<? extends TestWrapper> buildTestWrapperProvider(
+        final Injector injector) {
       try {
         boolean hasTestScopeListenerBinding = hasTestScopeListenerBinding(injector);
         boolean hasDeprecatedTestScopeListenerBinding = hasDeprecatedTestScopeListenerBinding(injector);
@@ -274,18 +742,47 @@ class GuiceBerryUniverse {
           throw new RuntimeException(
             "Your GuiceBerry Env has bindings for both the new TestScopeListener and the deprecated one. Please fix.");
         } else if (hasTestScopeListenerBinding) {
-          result = injector.getInstance(TestWrapper.class);
+          return wrapErrors(injector.getProvider(TestWrapper.class));
         } else if (hasDeprecatedTestScopeListenerBinding) {
-          result = adapt(
-              injector.getInstance(com.google.inject.testing.guiceberry.TestScopeListener.class),
-              injector.getInstance(TearDownAccepter.class));
+          final Provider<com.google.inject.testing.guiceberry.TestScopeListener> listenerProvider =
+            injector.getProvider(com.google.inject.testing.guiceberry.TestScopeListener.class);
+          final Provider<TearDownAccepter> tearDownAccepterProvider =
+            injector.getProvider(TearDownAccepter.class);
+          return wrapErrors(new Provider<TestWrapper>() {
+            public TestWrapper get() {
+              return adapt(listenerProvider.get(), tearDownAccepterProvider.get());
+            }
+          });
         }
       } catch (ConfigurationException e) {
-        String msg = String.format("Error while creating a TestWrapper: '%s'.",
-          e.getMessage());
-        throw new RuntimeException(msg, e); 
+        throw testWrapperError(e);
       }
-      return result;
+      return Providers.of(NoOpTestScopeListener.NO_OP_INSTANCE);
+    }
+
+    private static Provider<TestWrapper> wrapErrors(final Provider<TestWrapper> provider) {
+      return new Provider<TestWrapper>() {
+        public TestWrapper get() {
+          try {
+            return provider.get();
+          } catch (ConfigurationException e) {
+            throw testWrapperError(e);
+          }
+        }
+      };
+    }
+
+    private static RuntimeException testWrapperError(ConfigurationException e) {
+      String msg = String.format("Error while creating a TestWrapper: '%s'.",
+        e.getMessage());
+      return new RuntimeException(msg, e); 
+    }
+
+    private static RuntimeException bindingError(
+        Class<? extends Module> gbeClass, ConfigurationException e) {
+      String msg = String.format("Binding error in the GuiceBerry Env '%s': '%s'.",
+          gbeClass.getName(), e.getMessage());
+      return new RuntimeException(msg, e);
     }
 
     private static TestWrapper adapt(
@@ -304,10 +801,34 @@ class GuiceBerryUniverse {
       };
     }
 
+    /**
+     * Returns whether {@code clazz} is explicitly bound in {@code injector} or
+     * in any of its ancestors.
+     */
     private static boolean hasBinding(Injector injector, Class<?> clazz) {
+      for (Injector current = injector; current != null; current = current.getParent()) {
+        if (hasOwnBinding(current, clazz)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /**
+     * Returns whether {@code clazz} is explicitly bound in {@code injector}
+     * itself, rather than in any of its ancestors.
+     */
+    private static boolean hasOwnBinding(Injector injector, Class<?> clazz) {
       return injector.getBindings().get(Key.get(clazz)) != null;
     }
 
+    static <T> T getInstanceIfHasOwnBinding(Injector injector, Class<T> clazz) {
+      if (hasOwnBinding(injector, clazz)) {
+        return injector.getInstance(clazz);
+      }
+      return null;
+    }
+
     private static <T> T getInstanceIfHasBinding(Injector injector, Class<T> clazz) {
       if (hasBinding(injector, clazz)) {
         return injector.getInstance(clazz);
@@ -324,12 +845,59 @@ class GuiceBerryUniverse {
       return hasBinding(injector, TestWrapper.class);
     }
 
+    /**
+     * Boots {@code injector}, and each of its ancestors, that has not been
+     * booted yet (see {@link #bootedInjectorMap}), from the root down, and
+     * records the {@link GuiceBerryEnvSnapshot}s of all of them as the one of
+     * {@code gbeClass}.
+     */
+    private static void bootInjectorAndItsAncestors(GuiceBerryUniverse universe,
+        Class<? extends Module> gbeClass, Injector injector) {
+      List<Injector> lineage = Lists.newArrayList();
+      for (Injector current = injector; current != null; current = current.getParent()) {
+        lineage.add(current);
+      }
+      ImmutableList.Builder<GuiceBerryEnvSnapshot> snapshots = ImmutableList.builder();
+      for (Injector current : Lists.reverse(lineage)) {
+        GuiceBerryEnvSnapshot snapshot = bootOnce(universe, current);
+        if (snapshot != null) {
+          snapshots.add(snapshot);
+        }
+      }
+      List<GuiceBerryEnvSnapshot> taken = snapshots.build();
+      if (!taken.isEmpty()) {
+        universe.gbeClassToSnapshotsMap.put(gbeClass, taken);
+      }
+    }
+
+    /**
+     * Runs the {@link GuiceBerryEnvMain} and takes the
+     * {@link GuiceBerryEnvSnapshot} bound in {@code injector} itself, unless
+     * that was already done, and returns that snapshot (or {@code null}).
+     */
+    private static GuiceBerryEnvSnapshot bootOnce(GuiceBerryUniverse universe, Injector injector) {
+      synchronized (injector) {
+        Optional<GuiceBerryEnvSnapshot> result = universe.bootedInjectorMap.get(injector);
+        if (result == null) {
+          callGbeMainIfBound(injector);
+          GuiceBerryEnvSnapshot snapshot =
+            getInstanceIfHasOwnBinding(injector, GuiceBerryEnvSnapshot.class);
+          if (snapshot != null) {
+            snapshot.take();
+          }
+          result = Optional.fromNullable(snapshot);
+          universe.bootedInjectorMap.put(injector, result);
+        }
+        return result.orNull();
+      }
+    }
+
     private static void callGbeMainIfBound(Injector injector) {
       com.google.inject.testing.guiceberry.GuiceBerryEnvMain deprecatedGuiceBerryEnvMain = 
-        getInstanceIfHasBinding(injector, com.google.inject.testing.guiceberry.GuiceBerryEnvMain.class);
+        getInstanceIfHasOwnBinding(injector, com.google.inject.testing.guiceberry.GuiceBerryEnvMain.class);
 
       GuiceBerryEnvMain guiceBerryEnvMain = 
-        getInstanceIfHasBinding(injector, GuiceBerryEnvMain.class);
+        getInstanceIfHasOwnBinding(injector, GuiceBerryEnvMain.class);
       
       if ((deprecatedGuiceBerryEnvMain != null) && (guiceBerryEnvMain != null)) {
         throw new RuntimeException(String.format(
@@ -373,10 +941,39 @@ class GuiceBerryUniverse {
         // We failed to get a valid injector for this module in the setUp method,
         // so we just gracefully return, after cleaning up the threadlocal (which
         // normally would happen in the doTearDown method).
+        universe.testSetUpInThisThreadLocal.remove();
         universe.currentTestDescriptionThreadLocal.remove();
         return;
       }
-      stack.runTearDown();
+      try {
+        stack.runTearDown();
+      } finally {
+        if (deferredTearDowns.isEmpty()) {
+          releaseEnv();
+        } else {
+          universe.finishSuiteAtExit();
+          // The Env must not be evicted (and shut down) while the deferred
+          // tear downs may still be using it
+          universe.deferredTearDowns.defer(testDescription, deferredTearDowns,
+              new Runnable() {
+                public void run() {
+                  releaseEnv();
+                }
+              });
+        }
+      }
+    }
+
+    /**
+     * Lets the {@link EnvCache} evict this test's Env again, if it was kept
+     * from doing so. This may be called from the thread running the test's
+     * deferred tear downs.
+     */
+    private synchronized void releaseEnv() {
+      if (envAcquired) {
+        envAcquired = false;
+        universe.envCache.release(gbeClass);
+      }
     }
     
     private void doTearDown() {
@@ -389,11 +986,22 @@ class GuiceBerryUniverse {
             + ".setUp()"); 
         throw new RuntimeException(msg); 
       }
+      universe.testSetUpInThisThreadLocal.remove();
       universe.currentTestDescriptionThreadLocal.remove();
-      injector.getInstance(TestScope.class).finishScope(testDescription);    
+      long start = System.nanoTime();
+      try {
+        plan.testScope.finishScope(testDescription);    
+      } finally {
+        phaseFinished(Phase.FINISH_SCOPE, start);
+      }
     }
   }
 
+  private static final TestTimingListener NO_OP_TIMING_LISTENER = new TestTimingListener() {
+    public void phaseFinished(Class<? extends Module> gbeClass, TestDescription testDescription,
+        Phase phase, long elapsedNanos) {}
+  };
+
   private static final class NoOpTestScopeListener implements TestWrapper {
     
     private static final TestWrapper NO_OP_INSTANCE = new NoOpTestScopeListener();
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.guiceberry;
+
+import com.google.common.collect.ImmutableList;
+import com.google.inject.AbstractModule;
+import com.google.inject.Module;
+
+import java.util.List;
+
+/**
+ * Installs the given {@link Module}s, marking their bindings as the ones that
+ * set a GuiceBerry Env apart from other, otherwise identical, Envs.
+ *
+ * <p>This only matters when Envs are shared (see
+ * {@link GuiceBerry#setShareIdenticalEnvs}): Envs whose other bindings are
+ * all the same get a single parent {@link com.google.inject.Injector} for
+ * those, and each gets a child {@link com.google.inject.Injector} for its own
+ * overridable bindings. E.g.:
+ *
+ * <pre>
+ *   public final class PetStoreEnvWithFakeClock extends AbstractModule {
+ *     {@literal @}Override
+ *     protected void configure() {
+ *       install(new PetStoreCommonModule());
+ *       install(new OverridableBindings(new FakeClockModule()));
+ *     }
+ *   }
+ * </pre>
+ *
+ * <p>Nothing in the other bindings may depend on the overridable ones, since
+ * the parent {@link com.google.inject.Injector} can not see them; if
+ * something does, the Env gets an {@link com.google.inject.Injector} of its
+ * own, as if it were not shared.
+ *
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public final class OverridableBindings extends AbstractModule {
+
+  private final List<Module> modules;
+
+  public OverridableBindings(Module... modules) {
+    this.modules = ImmutableList.copyOf(modules);
+  }
+
+  @Override
+  protected void configure() {
+    for (Module module : modules) {
+      install(module);
+    }
+  }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.guiceberry;
+
+import com.google.common.testing.TearDown;
+import com.google.common.testing.TearDownAccepter;
+
+/**
+ * A {@link TearDownAccepter} that also accepts {@link TearDown}s that do not
+ * depend on any other, and that can therefore be run concurrently with each
+ * other.
+ *
+ * <p>{@link #addTearDown} keeps its usual meaning: its {@link TearDown} is run
+ * after every one added later, and before every one added earlier. Adjacent
+ * {@link #addIndependentTearDown independent} {@link TearDown}s (i.e. ones
+ * with no plain {@link #addTearDown} in between) are run together on a bounded
+ * pool of threads, still after every {@link TearDown} added later than all of
+ * them, and before every one added earlier. If any {@link TearDown} fails, the
+ * remaining ones are still run, and all failures are reported together, just
+ * like {@link com.google.common.testing.TearDownStack} does.
+ *
+ * <p>See {@link GuiceBerryModule} for how it is bound.
+ *
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public interface ParallelTearDownAccepter extends TearDownAccepter {
+
+  /**
+   * Registers a {@link TearDown} that does not depend on, and is not depended
+   * on by, any other {@link TearDown} registered next to it, so it may run
+   * concurrently with them, in any order, in a thread other than the test's.
+   */
+  void addIndependentTearDown(TearDown tearDown);
+}
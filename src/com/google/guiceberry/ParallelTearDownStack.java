@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.guiceberry;
+
+import com.google.common.collect.Lists;
+import com.google.common.testing.TearDown;
+import com.google.common.testing.TearDownStack;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.guiceberry.GuiceBerryModule.ToTearDown;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@link ToTearDown} behind {@link ParallelTearDownAccepter} and
+ * {@link DeferredTearDownAccepter}: a stack of {@link TearDown}s, where each
+ * run of adjacent independent ones is handed to a shared, bounded pool of
+ * threads, plus the deferred ones, which are left for
+ * {@link DeferredTearDowns}. The independent ones run with the
+ * {@link TestContext} of the thread that tears the test down, so they see
+ * the same {@link TestScoped} instances it does.
+ *
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+final class ParallelTearDownStack implements ToTearDown {
+
+  static final int MAX_THREADS =
+      Math.max(2, Runtime.getRuntime().availableProcessors());
+
+  private static final Executor EXECUTOR = buildExecutor();
+
+  private static Executor buildExecutor() {
+    ThreadPoolExecutor result = new ThreadPoolExecutor(
+        MAX_THREADS, MAX_THREADS, 10, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(),
+        new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat("GuiceBerry-parallel-teardown-%d")
+            .build());
+    result.allowCoreThreadTimeOut(true);
+    return result;
+  }
+
+  private static final class Entry {
+    final TearDown tearDown;
+    final boolean independent;
+
+    Entry(TearDown tearDown, boolean independent) {
+      if (tearDown == null) {
+        throw new NullPointerException();
+      }
+      this.tearDown = tearDown;
+      this.independent = independent;
+    }
+  }
+
+  private final GuiceBerryUniverse universe;
+
+  // Most recently added first, like TearDownStack
+  private final LinkedList<Entry> stack = new LinkedList<Entry>();
+  private final LinkedList<TearDown> deferred = new LinkedList<TearDown>();
+
+  ParallelTearDownStack(GuiceBerryUniverse universe) {
+    this.universe = universe;
+  }
+
+  public synchronized void addTearDown(TearDown tearDown) {
+    stack.addFirst(new Entry(tearDown, false));
+  }
+
+  public synchronized void addIndependentTearDown(TearDown tearDown) {
+    stack.addFirst(new Entry(tearDown, true));
+  }
+
+  public synchronized void addDeferredTearDown(TearDown tearDown) {
+    if (tearDown == null) {
+      throw new NullPointerException();
+    }
+    deferred.addFirst(tearDown);
+  }
+
+  public synchronized List<TearDown> takeDeferredTearDowns() {
+    List<TearDown> result = Lists.newArrayList(deferred);
+    deferred.clear();
+    return result;
+  }
+
+  public void runTearDown() {
+    List<Entry> entries;
+    synchronized (this) {
+      entries = Lists.newArrayList(stack);
+      stack.clear();
+    }
+    TestContext context = TestContext.captureCurrent(universe);
+    List<Throwable> failures = Lists.newArrayList();
+    List<TearDown> independents = Lists.newArrayList();
+    for (Entry entry : entries) {
+      if (entry.independent) {
+        independents.add(entry.tearDown);
+        continue;
+      }
+      runConcurrently(independents, context, failures);
+      independents.clear();
+      try {
+        entry.tearDown.tearDown();
+      } catch (Throwable t) {
+        failures.add(t);
+      }
+    }
+    runConcurrently(independents, context, failures);
+    rethrow(failures);
+  }
+
+  /**
+   * Runs all the given {@link TearDown}s with the given {@code context}, the
+   * first one in this thread and the others in the pool, and adds their
+   * failures to {@code failures}, in the order of {@code tearDowns}.
+   *
+   * <p>Once done with its own, this thread also runs whatever the pool has
+   * not yet picked up, so that a busy (or exhausted) pool never stalls, let
+   * alone deadlocks, a teardown.
+   */
+  private static void runConcurrently(
+      List<TearDown> tearDowns, TestContext context, List<Throwable> failures) {
+    if (tearDowns.isEmpty()) {
+      return;
+    }
+    List<FutureTask<Void>> tasks = Lists.newArrayList();
+    for (final TearDown tearDown : tearDowns) {
+      tasks.add(new FutureTask<Void>(context.wrap(new Callable<Void>() {
+        public Void call() throws Exception {
+          tearDown.tearDown();
+          return null;
+        }
+      })));
+    }
+    for (FutureTask<Void> task : tasks.subList(1, tasks.size())) {
+      EXECUTOR.execute(task);
+    }
+    boolean interrupted = false;
+    for (FutureTask<Void> task : tasks) {
+      // A no-op if the pool has already started it
+      task.run();
+      while (true) {
+        try {
+          task.get();
+          break;
+        } catch (InterruptedException e) {
+          interrupted = true;
+        } catch (ExecutionException e) {
+          failures.add(e.getCause());
+          break;
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Throws {@code failures} (if any) exactly as {@link TearDownStack} would
+   * had they been thrown by its own {@link TearDown}s.
+   */
+  static void rethrow(List<Throwable> failures) {
+    if (failures.isEmpty()) {
+      return;
+    }
+    TearDownStack replay = new TearDownStack();
+    for (final Throwable failure : Lists.reverse(failures)) {
+      replay.addTearDown(new TearDown() {
+        public void tearDown() throws Exception {
+          if (failure instanceof Error) {
+            throw (Error) failure;
+          }
+          if (failure instanceof Exception) {
+            throw (Exception) failure;
+          }
+          throw new RuntimeException(failure);
+        }
+      });
+    }
+    replay.runTearDown();
+  }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.guiceberry;
+
+/**
+ * Resets the instances of a {@link PooledTestScoped} key of type {@code T}
+ * before a test reuses them, and disposes of those that are not going to be
+ * reused.
+ *
+ * <p>Instances are released to the pool after the test that used them has
+ * finished, so {@link #discard} may be called when there is no currently
+ * running test, and an implementation should not depend on anything
+ * {@link TestScoped}. Both methods may be called concurrently, on different
+ * instances, when tests run in parallel.
+ *
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public interface PooledInstanceResetter<T> {
+
+  /**
+   * Brings {@code instance}, which was used by a test that has finished, back
+   * to the state a freshly-built instance would be in. Returns {@code false}
+   * if that is not possible, in which case {@code instance} is
+   * {@link #discard discarded} and another one is used.
+   */
+  boolean reset(T instance);
+
+  /**
+   * Disposes of {@code instance}, which is not going to be used again, either
+   * because it could not be {@link #reset} or because the pool is full.
+   */
+  void discard(T instance);
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.guiceberry;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import com.google.inject.Scope;
+import com.google.inject.ScopeAnnotation;
+
+/**
+ * Like {@link TestScoped}, this defines a {@link Scope} that begins during
+ * test "set up" and ends during test "tear down", but the instances of a test
+ * are not thrown away when it ends: they go to a small per-key pool, and a
+ * later test that needs one takes it from there, rather than building a new
+ * one. This is meant for instances that are expensive to build but cheap to
+ * bring back to a pristine state, like a browser driver or a database
+ * connection.
+ *
+ * <p>Every key in this scope requires a binding to a
+ * {@link PooledInstanceResetter} of its type, with the same binding
+ * annotation (if any), which gets to reset each instance before a test
+ * reuses it, and to dispose of the instances the pool does not keep. E.g.:
+ *
+ * <pre>
+ *   &#64;Provides &#64;PooledTestScoped
+ *   WebDriver getWebDriver() {
+ *     return new HtmlUnitDriver();
+ *   }
+ *
+ *   &#64;Provides &#64;Singleton
+ *   PooledInstanceResetter&lt;WebDriver&gt; getWebDriverResetter() {
+ *     return new PooledInstanceResetter&lt;WebDriver&gt;() {
+ *       public boolean reset(WebDriver driver) {
+ *         driver.manage().deleteAllCookies();
+ *         return true;
+ *       }
+ *
+ *       public void discard(WebDriver driver) {
+ *         driver.quit();
+ *       }
+ *     };
+ *   }
+ * </pre>
+ *
+ * <p>Note that instances still in the pool when the JVM exits are not
+ * discarded.
+ *
+ * @see TestScope implementation details
+ * 
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@ScopeAnnotation
+public @interface PooledTestScoped {}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.guiceberry;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import com.google.inject.Scope;
+import com.google.inject.ScopeAnnotation;
+
+/**
+ * This defines a {@link Scope} whose instances are shared by all tests of a
+ * suite. Unlike {@link com.google.inject.Singleton}, it ends -- running the
+ * {@link com.google.common.testing.TearDown}s added to the {@link ForSuite}
+ * {@link com.google.common.testing.TearDownAccepter} -- when the test
+ * framework adapter tells GuiceBerry the suite is done (see
+ * {@link GuiceBerry#finishSuite}), or when the JVM exits, and a later test
+ * gets new instances.
+ *
+ * @see TestClassScoped
+ * @see TestScope implementation details
+ * 
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@ScopeAnnotation
+public @interface SuiteScoped {}
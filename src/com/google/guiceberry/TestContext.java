@@ -0,0 +1,264 @@
+/*
+ * Copyright (C) 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.guiceberry;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ForwardingExecutorService;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The currently-running test, as seen by GuiceBerry, captured so that it can
+ * be carried over to other threads.
+ *
+ * <p>GuiceBerry needs to know which test is running to provide
+ * {@link TestScoped} bindings and the {@link TestId}. Threads created by the
+ * test thread know it, but threads that were not -- say, the threads of a
+ * shared pool, or of a pool created before the test started -- do not (or,
+ * worse, know of a previous test). To fan out work to such threads, either
+ * capture the context and run the work with it:
+ *
+ * <pre>
+ * final TestContext context = TestContext.capture();
+ * pool.execute(new Runnable() {
+ *   public void run() {
+ *     context.runWith(work);
+ *   }
+ * });
+ * </pre>
+ *
+ * or, more simply, wrap the {@link Executor} with {@link #propagating(Executor)}
+ * or {@link #propagating(ExecutorService)}, which capture the context of the
+ * submitting thread for each task. This works with any executor, including
+ * ones that run each task in a new (say, virtual) thread.
+ *
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public final class TestContext {
+
+  private final GuiceBerryUniverse universe;
+  private final TestDescription testDescription;
+
+  private TestContext(GuiceBerryUniverse universe, TestDescription testDescription) {
+    this.universe = universe;
+    this.testDescription = testDescription;
+  }
+
+  /**
+   * Captures the currently-running test.
+   *
+   * @throws IllegalStateException if there is no currently-running test in
+   *   this thread.
+   */
+  public static TestContext capture() {
+    return capture(GuiceBerryUniverse.INSTANCE);
+  }
+
+  static TestContext capture(GuiceBerryUniverse universe) {
+    TestContext result = captureCurrent(universe);
+    if (result.testDescription == null) {
+      throw new IllegalStateException(
+          "There is no currently-running GuiceBerry test in this thread to capture.");
+    }
+    return result;
+  }
+
+  /**
+   * Like {@link #capture(GuiceBerryUniverse)}, but the result may hold no
+   * test, in which case it runs tasks with no currently-running test.
+   */
+  static TestContext captureCurrent(GuiceBerryUniverse universe) {
+    return new TestContext(universe, universe.currentTestDescriptionThreadLocal.get());
+  }
+
+  /**
+   * Runs {@code runnable} in the current thread, as if it were the thread of
+   * the captured test. The current thread's previous test (if any) is
+   * restored afterwards.
+   */
+  public void runWith(Runnable runnable) {
+    TestDescription previous = enter();
+    try {
+      runnable.run();
+    } finally {
+      exit(previous);
+    }
+  }
+
+  /**
+   * Like {@link #runWith(Runnable)}, for a {@link Callable}.
+   */
+  public <V> V callWith(Callable<V> callable) throws Exception {
+    TestDescription previous = enter();
+    try {
+      return callable.call();
+    } finally {
+      exit(previous);
+    }
+  }
+
+  /**
+   * Returns a {@link Runnable} that {@link #runWith runs} {@code runnable}
+   * with this context, in whatever thread it is run.
+   */
+  public Runnable wrap(final Runnable runnable) {
+    Preconditions.checkNotNull(runnable);
+    return new Runnable() {
+      public void run() {
+        runWith(runnable);
+      }
+    };
+  }
+
+  /**
+   * Like {@link #wrap(Runnable)}, for a {@link Callable}.
+   */
+  public <V> Callable<V> wrap(final Callable<V> callable) {
+    Preconditions.checkNotNull(callable);
+    return new Callable<V>() {
+      public V call() throws Exception {
+        return callWith(callable);
+      }
+    };
+  }
+
+  private TestDescription enter() {
+    TestDescription previous = universe.currentTestDescriptionThreadLocal.get();
+    if (testDescription == null) {
+      universe.currentTestDescriptionThreadLocal.remove();
+    } else {
+      universe.currentTestDescriptionThreadLocal.set(testDescription);
+    }
+    return previous;
+  }
+
+  private void exit(TestDescription previous) {
+    if (previous == null) {
+      universe.currentTestDescriptionThreadLocal.remove();
+    } else {
+      universe.currentTestDescriptionThreadLocal.set(previous);
+    }
+  }
+
+  /**
+   * Returns an {@link Executor} that runs each task, through {@code delegate},
+   * with the {@link TestContext} of the thread that submitted it.
+   */
+  public static Executor propagating(Executor delegate) {
+    return propagating(delegate, GuiceBerryUniverse.INSTANCE);
+  }
+
+  static Executor propagating(final Executor delegate, final GuiceBerryUniverse universe) {
+    Preconditions.checkNotNull(delegate);
+    return new Executor() {
+      public void execute(Runnable command) {
+        delegate.execute(captureCurrent(universe).wrap(command));
+      }
+    };
+  }
+
+  /**
+   * Returns an {@link ExecutorService} that runs each task, through
+   * {@code delegate}, with the {@link TestContext} of the thread that
+   * submitted it.
+   */
+  public static ExecutorService propagating(ExecutorService delegate) {
+    return new PropagatingExecutorService(delegate, GuiceBerryUniverse.INSTANCE);
+  }
+
+  static ExecutorService propagating(ExecutorService delegate, GuiceBerryUniverse universe) {
+    return new PropagatingExecutorService(delegate, universe);
+  }
+
+  private static final class PropagatingExecutorService extends ForwardingExecutorService {
+
+    private final ExecutorService delegate;
+    private final GuiceBerryUniverse universe;
+
+    PropagatingExecutorService(ExecutorService delegate, GuiceBerryUniverse universe) {
+      this.delegate = Preconditions.checkNotNull(delegate);
+      this.universe = universe;
+    }
+
+    @Override
+    protected ExecutorService delegate() {
+      return delegate;
+    }
+
+    private <T> List<Callable<T>> wrap(Collection<? extends Callable<T>> tasks) {
+      TestContext context = captureCurrent(universe);
+      List<Callable<T>> result = Lists.newArrayListWithCapacity(tasks.size());
+      for (Callable<T> task : tasks) {
+        result.add(context.wrap(task));
+      }
+      return result;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+      delegate.execute(captureCurrent(universe).wrap(command));
+    }
+
+    @Override
+    public <T> Future<T> submit(Callable<T> task) {
+      return delegate.submit(captureCurrent(universe).wrap(task));
+    }
+
+    @Override
+    public Future<?> submit(Runnable task) {
+      return delegate.submit(captureCurrent(universe).wrap(task));
+    }
+
+    @Override
+    public <T> Future<T> submit(Runnable task, T result) {
+      return delegate.submit(captureCurrent(universe).wrap(task), result);
+    }
+
+    @Override
+    public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks)
+        throws InterruptedException {
+      return delegate.invokeAll(wrap(tasks));
+    }
+
+    @Override
+    public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks,
+        long timeout, TimeUnit unit) throws InterruptedException {
+      return delegate.invokeAll(wrap(tasks), timeout, unit);
+    }
+
+    @Override
+    public <T> T invokeAny(Collection<? extends Callable<T>> tasks)
+        throws InterruptedException, ExecutionException {
+      return delegate.invokeAny(wrap(tasks));
+    }
+
+    @Override
+    public <T> T invokeAny(Collection<? extends Callable<T>> tasks,
+        long timeout, TimeUnit unit)
+        throws InterruptedException, ExecutionException, TimeoutException {
+      return delegate.invokeAny(wrap(tasks), timeout, unit);
+    }
+  }
+}
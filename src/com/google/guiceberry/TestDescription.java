@@ -17,6 +17,7 @@ package com.google.guiceberry;
 
 import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
+import com.google.inject.Injector;
 
 import java.util.regex.Pattern;
 
@@ -25,6 +26,13 @@ import java.util.regex.Pattern;
  * 
  * <p>See {@link #getName()} and {@link #getTestCaseClass()}.
  *
+ * <p>Though two instances describing the same test are {@link #equals equal},
+ * GuiceBerry keeps the state of a running test (e.g. its {@link TestScoped}
+ * instances) in the very instance given to {@link GuiceBerry#buildWrapper}.
+ * A test framework adapter must therefore use that same instance for the
+ * whole test, and not, say, build an equal one to tear it down with: it
+ * would see none of the test's {@link TestScoped} instances.
+ *
  * @author Luiz-Otavio "Z" Zorzella
  */
 public final class TestDescription {
@@ -39,6 +47,19 @@ public final class TestDescription {
   private final String name;
   private final TestId testId;
 
+  /**
+   * The {@link TestScoped} instances of this test. See {@link TestScope}.
+   * This is per instance, and not part of the value {@link #equals} compares.
+   */
+  final TestScope.TestSlots testScopeSlots = new TestScope.TestSlots();
+
+  /**
+   * The {@link Injector} of this test's GuiceBerry Env, once
+   * it is known, so that {@link TestScope} can find the bindings of keys that
+   * were scoped after that Injector was created (e.g. just-in-time ones).
+   */
+  volatile Injector envInjector;
+
   /**
    * You won't have to create an instance of this class unless you are writing a
    * test framework adapter.
@@ -19,6 +19,7 @@ package com.google.guiceberry;
 import com.google.common.base.Preconditions;
 
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.servlet.http.Cookie;
 
@@ -36,16 +37,22 @@ public final class TestId implements Comparable<TestId> {
 
   public static final String COOKIE_NAME = "testid";
   
-  private final String name;
+  /**
+   * Makes every {@link TestId} of this JVM unique, even for tests of the same
+   * name that run at the same time. Starts at a random number so that the
+   * {@link TestId}s of different JVMs (e.g. of forked test runs) are unlikely
+   * to collide.
+   */
+  private static final AtomicLong nextRandom = new AtomicLong(new Random().nextInt(1000));
+
   private final long random;
   private final String asString;
 
   TestId(String name) {
-    this(name, new Random().nextInt(1000));
+    this(name, nextRandom.getAndIncrement());
   }
 
   private TestId(String name, long random) {
-    this.name = name;
     this.random = random;
     this.asString = getAsString(name, random);
   }
@@ -54,12 +61,63 @@ public final class TestId implements Comparable<TestId> {
     return name + ":" + random;
   }
 
+  /**
+   * Builds the {@link TestId} whose {@link #toString()} is the value of the
+   * given {@code cookie}.
+   *
+   * <p>This is called for every request a server gets from a test, so, for
+   * the values GuiceBerry itself produces, it allocates nothing but this
+   * instance.
+   */
   public TestId(Cookie cookie) {
-    String[] parts = cookie.getValue().split(":");
-    Preconditions.checkState(parts.length == 2);
-    this.name = parts[0];
-    this.random = Long.parseLong(parts[1]);
-    this.asString = getAsString(name, random);
+    String value = cookie.getValue();
+    int colonIndex = value.indexOf(':');
+    Preconditions.checkState(
+        (colonIndex >= 0)
+        && (colonIndex == value.lastIndexOf(':'))
+        && (colonIndex < value.length() - 1));
+    this.random = parseRandom(value, colonIndex + 1);
+    this.asString = isCanonicalRandom(value, colonIndex + 1)
+        ? value
+        : getAsString(value.substring(0, colonIndex), random);
+  }
+
+  /**
+   * Same as {@code Long.parseLong(value.substring(start))}, without
+   * allocating the substring.
+   */
+  private static long parseRandom(String value, int start) {
+    int digitsStart = (value.charAt(start) == '-') ? start + 1 : start;
+    int digitCount = value.length() - digitsStart;
+    if ((digitCount == 0) || (digitCount > 18)) {
+      return Long.parseLong(value.substring(start));
+    }
+    long result = 0;
+    for (int i = digitsStart; i < value.length(); i++) {
+      int digit = Character.digit(value.charAt(i), 10);
+      if (digit < 0) {
+        return Long.parseLong(value.substring(start));
+      }
+      result = result * 10 + digit;
+    }
+    return (digitsStart == start) ? result : -result;
+  }
+
+  /**
+   * Whether the {@code random} part of the given {@code value}, which starts
+   * at {@code start}, is written just as {@link #getAsString} writes it.
+   */
+  private static boolean isCanonicalRandom(String value, int start) {
+    char first = value.charAt(start);
+    if (first == '+') {
+      return false;
+    }
+    int digitsStart = (first == '-') ? start + 1 : start;
+    if (value.charAt(digitsStart) != '0') {
+      return true;
+    }
+    // Only a lone, unsigned zero can start with a zero
+    return (digitsStart == start) && (value.length() == start + 1);
   }
 
   @Override
@@ -85,6 +143,7 @@ public final class TestId implements Comparable<TestId> {
   }
 
   public com.google.inject.testing.guiceberry.TestId toDeprecatedTestId() {
+    String name = asString.substring(0, asString.lastIndexOf(':'));
     int dotIndex = name.lastIndexOf('.');
     String testCaseName = name.substring(0, dotIndex);
     String testMethodName = name.substring(dotIndex + 1);
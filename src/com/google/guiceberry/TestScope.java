@@ -15,18 +15,52 @@
  */
 package com.google.guiceberry;
 
+import com.google.common.base.Preconditions;
+import com.google.inject.Binding;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
 import com.google.inject.Key;
 import com.google.inject.Provider;
 import com.google.inject.Scope;
 import com.google.inject.Singleton;
+import com.google.inject.util.Types;
 
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.lang.reflect.Type;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * Implementation of the {@link TestScoped} annotation.
  * 
+ * <p>Each key scoped by this scope is given a slot index when the
+ * {@link com.google.inject.Injector} is built. The instances of each test
+ * are kept in an array (see {@link TestSlots}) that hangs off the test's own
+ * {@link TestDescription}, so that getting an instance that was already
+ * created for the current test is a single array load, with no hashing and no
+ * locking.
+ *
+ * <p>The same instance also implements {@link PooledTestScoped} (see
+ * {@link #pooled()}): the keys scoped that way share the slots of the
+ * {@link TestScoped} ones, but, at {@link #finishScope}, their instances are
+ * handed to a bounded per-key pool rather than dropped, and are taken back
+ * from it (after being reset by the key's {@link PooledInstanceResetter}) by a
+ * later test. That resetter is looked up in the {@link Injector} that bound
+ * the key: the one this scope is installed in, for the keys it binds, or,
+ * for keys scoped later (just-in-time bindings, or the bindings of a child
+ * {@link Injector}, e.g. a {@link GuiceBerryEnvVariant}'s), the first
+ * {@link Injector} in the lineage of the test's Env that has the key's
+ * binding, the first time a test gets an instance of it.
+ *
+ * <p>The {@link TestClassScoped} and {@link SuiteScoped} scopes are also
+ * implemented by this class, with a different {@link Lifetime}: their slots
+ * hang off a {@link GuiceBerryUniverse.ScopeLifetime} shared by all the tests
+ * of a test class, or by all tests, respectively, which ends when the
+ * adapter calls {@link GuiceBerry#finishTestClass} or
+ * {@link GuiceBerry#finishSuite} (or when the JVM exits).
+ *
  * @see Scope 
  *
  * @author Luiz-Otavio "Z" Zorzella
@@ -34,54 +68,444 @@ import java.util.concurrent.ConcurrentMap;
 @Singleton
 class TestScope implements Scope {
 
+  /**
+   * The most instances of a single {@link PooledTestScoped} key that are kept
+   * around for later tests. Instances released when the pool is full are
+   * {@link PooledInstanceResetter#discard discarded}.
+   */
+  static final int MAX_POOLED_INSTANCES_PER_KEY = 8;
+
+  /**
+   * Where the instances of a {@link TestScope} are kept, which determines how
+   * long they live.
+   */
+  enum Lifetime {
+    /** {@link TestScoped}: the instances live as long as a single test. */
+    TEST {
+      @Override
+      TestSlots slotsOf(GuiceBerryUniverse universe) {
+        return currentTest(universe).testScopeSlots;
+      }
+    },
+
+    /** {@link TestClassScoped}: the instances are shared by a test class. */
+    TEST_CLASS {
+      @Override
+      TestSlots slotsOf(GuiceBerryUniverse universe) {
+        return universe.testClassLifetime(currentTest(universe).getTestCaseClass()).slots;
+      }
+    },
+
+    /**
+     * {@link SuiteScoped}: the instances are shared by all tests. Since this
+     * does not depend on the currently-running test, the instances can also
+     * be provisioned while there is none, e.g. by a {@link GuiceBerryEnvMain}.
+     */
+    SUITE {
+      @Override
+      TestSlots slotsOf(GuiceBerryUniverse universe) {
+        return universe.suiteLifetime().slots;
+      }
+    };
+
+    abstract TestSlots slotsOf(GuiceBerryUniverse universe);
+  }
+
   private final GuiceBerryUniverse universe;
 
-  private final ConcurrentMap<TestDescription, Map<Key<?>, Object>> testMap =
-      new ConcurrentHashMap<TestDescription, Map <Key<?>, Object>>();
+  private final Lifetime lifetime;
+
+  private final AtomicInteger slotCount = new AtomicInteger();
+
+  /**
+   * The pool of each {@link PooledTestScoped} slot, indexed by slot, and
+   * {@code null} for the {@link TestScoped} ones. Only ever replaced by a
+   * bigger copy, while holding this lock.
+   */
+  private volatile InstancePool<?>[] pools = new InstancePool<?>[0];
+
+  private final Scope pooledScope = new PooledScope();
+
+  private final class PooledScope implements Scope {
+    public <T> Provider<T> scope(Key<T> key, Provider<T> creator) {
+      return TestScope.this.scope(key, creator, new InstancePool<T>(key));
+    }
+
+    @Override
+    public String toString() {
+      return PooledTestScoped.class.getSimpleName();
+    }
+  }
 
   TestScope(GuiceBerryUniverse universe) {
+    this(universe, Lifetime.TEST);
+  }
+
+  TestScope(GuiceBerryUniverse universe, Lifetime lifetime) {
     this.universe = universe;
+    this.lifetime = lifetime;
+  }
+
+  /**
+   * Returns, for an {@link EnvFingerprint}, a value that is the same for the
+   * {@link TestScope}s (and their {@link #pooled} views) that different
+   * {@link GuiceBerryModule}s build, since those behave the same. Anything
+   * else is returned as it is.
+   */
+  static Object fingerprintOf(Object object) {
+    if (object instanceof TestScope) {
+      return ((TestScope) object).lifetime;
+    }
+    if (object instanceof TestScope.PooledScope) {
+      return PooledTestScoped.class;
+    }
+    return object;
+  }
+
+  /**
+   * Returns the currently-running test, or throws if there is none.
+   */
+  static TestDescription currentTest(GuiceBerryUniverse universe) {
+    TestDescription result = universe.currentTestDescriptionThreadLocal.get();
+    if (result == null) {
+      throw new IllegalStateException(
+          "GuiceBerry can't find out what is the currently-running test. " +
+          "There are a few reasons why this can happen, but a likely one " +
+          "is that a GuiceBerry Injector is being asked to instantiate a " +
+          "class in a thread not created by your test case. To carry the " +
+          "test over to such threads, see " + TestContext.class.getName() + ".");
+    }
+    return result;
+  }
+
+  /**
+   * Returns the {@link Scope} that implements {@link PooledTestScoped}. Only
+   * meaningful for a {@link Lifetime#TEST} scope.
+   */
+  Scope pooled() {
+    Preconditions.checkState(lifetime == Lifetime.TEST, 
+        "Only per-test instances can be pooled, not %s ones", lifetime);
+    return pooledScope;
+  }
+
+  /**
+   * Finds the {@link PooledInstanceResetter} of every {@link PooledTestScoped}
+   * key {@code injector} binds, so that a missing one fails the creation of
+   * the {@link Injector} rather than the first test that gets an instance.
+   */
+  @Inject
+  void resolveResetters(Injector injector) {
+    for (InstancePool<?> pool : pools) {
+      if ((pool != null) && !pool.isResolved()
+          && (injector.getExistingBinding(pool.key) != null)) {
+        pool.resolveResetter(injector);
+      }
+    }
   }
 
   void finishScope(TestDescription testCase) {
-    testMap.remove(testCase);
+    AtomicReferenceArray<Object> instances = testCase.testScopeSlots.remove(this);
+    InstancePool<?>[] pools = this.pools;
+    if ((instances == null) || (pools.length == 0)) {
+      return;
+    }
+    RuntimeException firstFailure = null;
+    int length = Math.min(instances.length(), pools.length);
+    for (int slot = 0; slot < length; slot++) {
+      InstancePool<?> pool = pools[slot];
+      Object instance = instances.get(slot);
+      if ((pool == null) || (instance == null)) {
+        continue;
+      }
+      try {
+        pool.release(instance);
+      } catch (RuntimeException e) {
+        // Keep releasing the other instances
+        if (firstFailure == null) {
+          firstFailure = e;
+        }
+      }
+    }
+    if (firstFailure != null) {
+      throw firstFailure;
+    }
   }
   
-  @SuppressWarnings("unchecked")  
-  public synchronized <T> Provider<T> scope(final Key<T> key, 
+  public <T> Provider<T> scope(final Key<T> key, 
       final Provider<T> creator) {
+    return scope(key, creator, null);
+  }
 
+  private <T> Provider<T> scope(final Key<T> key, 
+      final Provider<T> creator, final InstancePool<T> pool) {
+
+    final int slot = slotCount.getAndIncrement();
+    if (pool != null) {
+      registerPool(slot, pool);
+    }
     return new Provider<T>() {
+      @SuppressWarnings("unchecked")  
       public T get() {
 
-        TestDescription actualTestCase = universe.currentTestDescriptionThreadLocal.get();
-        if (actualTestCase == null) {
-          throw new IllegalStateException(
-              "GuiceBerry can't find out what is the currently-running test. " +
-              "There are a few reasons why this can happen, but a likely one " +
-              "is that a GuiceBerry Injector is being asked to instantiate a " +
-              "class in a thread not created by your test case.");
-        }
-        Map<Key<?>, Object> keyToInstanceProvider = testMap.get(actualTestCase);
-        if (keyToInstanceProvider == null) {
-          testMap.putIfAbsent(
-              actualTestCase, new ConcurrentHashMap<Key<?>, Object>());
-          keyToInstanceProvider = testMap.get(actualTestCase);
-        }
-        Object o = keyToInstanceProvider.get(key);
-        if (o != null) {
-          return (T) o;
+        TestSlots testSlots = lifetime.slotsOf(universe);
+        AtomicReferenceArray<Object> instances = testSlots.get(TestScope.this, slot);
+        if (instances != null) {
+          Object o = instances.get(slot);
+          if (o != null) {
+            return (T) o;
+          }
         }
         // double checked locking -- handle with extreme care!
-        synchronized(keyToInstanceProvider) {
-          o = keyToInstanceProvider.get(key);
+        synchronized(testSlots) {
+          instances = testSlots.getOrGrow(TestScope.this, slot);
+          Object o = instances.get(slot);
           if (o == null) {
-            o = creator.get();
-            keyToInstanceProvider.put(key, o);
+            o = (pool == null) ? creator.get() : pool.take(creator, currentTest(universe));
+            // The creator may have (recursively) grown the array
+            testSlots.getOrGrow(TestScope.this, slot).set(slot, o);
           }
           return (T) o;
         }
       }
     };
   }
+
+  private synchronized void registerPool(int slot, InstancePool<?> pool) {
+    if (slot >= pools.length) {
+      pools = Arrays.copyOf(pools, Math.max(slotCount.get(), slot + 1));
+    }
+    pools[slot] = pool;
+  }
+
+  /**
+   * The instances of a single {@link PooledTestScoped} key that are waiting
+   * for a later test to use them.
+   */
+  private static final class InstancePool<T> {
+
+    private final Key<T> key;
+    private final Deque<T> idle = new ArrayDeque<T>();
+    private volatile Provider<PooledInstanceResetter<T>> resetterProvider;
+    private volatile PooledInstanceResetter<T> resetter;
+
+    InstancePool(Key<T> key) {
+      this.key = key;
+    }
+
+    boolean isResolved() {
+      return resetterProvider != null;
+    }
+
+    /**
+     * Resolves the resetter in the {@link Injector} that bound {@link #key},
+     * unless that was already done: the first {@link Injector}, in the
+     * lineage of the Env of {@code test}, that has a binding for it.
+     */
+    void resolveResetterIfNeeded(TestDescription test) {
+      if (isResolved()) {
+        return;
+      }
+      Injector injector = test.envInjector;
+      if (injector == null) {
+        throw new IllegalStateException(String.format(
+            "%s is %s, but the Env of %s is not known, so its %s can't be found.",
+            key, PooledTestScoped.class.getSimpleName(), test.getName(),
+            PooledInstanceResetter.class.getSimpleName()));
+      }
+      Injector owner = injector;
+      for (Injector current = injector; current != null; current = current.getParent()) {
+        if (current.getAllBindings().containsKey(key)) {
+          owner = current;
+          break;
+        }
+      }
+      resolveResetter(owner);
+    }
+
+    @SuppressWarnings("unchecked")
+    void resolveResetter(Injector injector) {
+      Key<PooledInstanceResetter<T>> resetterKey = 
+        (Key<PooledInstanceResetter<T>>) resetterKey(key);
+      Binding<PooledInstanceResetter<T>> binding = injector.getExistingBinding(resetterKey);
+      if (binding == null) {
+        throw new IllegalStateException(String.format(
+            "%s is %s, so it requires a binding to %s, to reset its instances "
+            + "before a test reuses them.",
+            key, PooledTestScoped.class.getSimpleName(), resetterKey));
+      }
+      resetterProvider = binding.getProvider();
+    }
+
+    /**
+     * Returns a pooled instance, after resetting it, or a new one from
+     * {@code creator} if there is none that could be reset, for {@code test}.
+     */
+    T take(Provider<T> creator, TestDescription test) {
+      resolveResetterIfNeeded(test);
+      while (true) {
+        T instance;
+        synchronized (idle) {
+          instance = idle.pollFirst();
+        }
+        if (instance == null) {
+          return creator.get();
+        }
+        boolean reset = false;
+        try {
+          reset = resetter().reset(instance);
+        } finally {
+          if (!reset) {
+            resetter().discard(instance);
+          }
+        }
+        if (reset) {
+          return instance;
+        }
+      }
+    }
+
+    void release(Object instance) {
+      @SuppressWarnings("unchecked")
+      T t = (T) instance;
+      synchronized (idle) {
+        if (idle.size() < MAX_POOLED_INSTANCES_PER_KEY) {
+          idle.addFirst(t);
+          return;
+        }
+      }
+      resetter().discard(t);
+    }
+
+    private PooledInstanceResetter<T> resetter() {
+      PooledInstanceResetter<T> result = resetter;
+      if (result == null) {
+        if (resetterProvider == null) {
+          throw new IllegalStateException(String.format(
+              "%s is %s, but its scope was never installed in an Injector by a %s.",
+              key, PooledTestScoped.class.getSimpleName(), 
+              GuiceBerryModule.class.getSimpleName()));
+        }
+        // Racing threads may each get one; they are equally good
+        result = resetterProvider.get();
+        resetter = result;
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Returns the key of the {@link PooledInstanceResetter} of {@code key}: a
+   * {@code PooledInstanceResetter<T>}, with the same binding annotation as
+   * {@code key}, if any.
+   */
+  static Key<?> resetterKey(Key<?> key) {
+    Type type = Types.newParameterizedType(
+        PooledInstanceResetter.class, key.getTypeLiteral().getType());
+    if (key.getAnnotation() != null) {
+      return Key.get(type, key.getAnnotation());
+    }
+    if (key.getAnnotationType() != null) {
+      return Key.get(type, key.getAnnotationType());
+    }
+    return Key.get(type);
+  }
+
+  /**
+   * The instances all {@link TestScope}s hold for a single test. There is one
+   * of these per {@link TestDescription}, and one per
+   * {@link GuiceBerryUniverse.ScopeLifetime}, for the instances held for a
+   * test class or for the suite.
+   *
+   * <p>In the canonical case, a test is in a single {@link TestScope}, so this
+   * is a linked list of one element, but, say, {@link DeprecatedGuiceBerryModule}
+   * binds two.
+   */
+  static final class TestSlots {
+
+    private volatile ScopeSlots head;
+
+    /**
+     * Returns the instances {@code scope} holds for this test, or {@code null}
+     * if there are none yet or if they do not yet have room for {@code slot}.
+     */
+    AtomicReferenceArray<Object> get(TestScope scope, int slot) {
+      for (ScopeSlots node = head; node != null; node = node.next) {
+        if (node.scope == scope) {
+          return (slot < node.instances.length()) ? node.instances : null;
+        }
+      }
+      return null;
+    }
+
+    /**
+     * Like {@link #get}, but creates (or grows) the instances of this
+     * {@code scope} if needed. Must be called while holding this lock.
+     */
+    AtomicReferenceArray<Object> getOrGrow(TestScope scope, int slot) {
+      ScopeSlots previous = null;
+      for (ScopeSlots node = head; node != null; previous = node, node = node.next) {
+        if (node.scope == scope) {
+          if (slot < node.instances.length()) {
+            return node.instances;
+          }
+          ScopeSlots grown = new ScopeSlots(scope, grow(node.instances, scope, slot), node.next);
+          if (previous == null) {
+            head = grown;
+          } else {
+            previous.next = grown;
+          }
+          return grown.instances;
+        }
+      }
+      ScopeSlots created = new ScopeSlots(scope, 
+          new AtomicReferenceArray<Object>(capacity(scope, slot)), head);
+      head = created;
+      return created.instances;
+    }
+
+    /**
+     * Forgets the instances {@code scope} holds for this test, and returns
+     * them, or {@code null} if there were none.
+     */
+    synchronized AtomicReferenceArray<Object> remove(TestScope scope) {
+      ScopeSlots previous = null;
+      for (ScopeSlots node = head; node != null; previous = node, node = node.next) {
+        if (node.scope == scope) {
+          if (previous == null) {
+            head = node.next;
+          } else {
+            previous.next = node.next;
+          }
+          return node.instances;
+        }
+      }
+      return null;
+    }
+
+    private static int capacity(TestScope scope, int slot) {
+      return Math.max(scope.slotCount.get(), slot + 1);
+    }
+
+    private static AtomicReferenceArray<Object> grow(
+        AtomicReferenceArray<Object> instances, TestScope scope, int slot) {
+      AtomicReferenceArray<Object> result =
+        new AtomicReferenceArray<Object>(capacity(scope, slot));
+      for (int i = 0; i < instances.length(); i++) {
+        result.set(i, instances.get(i));
+      }
+      return result;
+    }
+  }
+
+  private static final class ScopeSlots {
+    private final TestScope scope;
+    private final AtomicReferenceArray<Object> instances;
+    private volatile ScopeSlots next;
+
+    ScopeSlots(TestScope scope, AtomicReferenceArray<Object> instances, ScopeSlots next) {
+      this.scope = scope;
+      this.instances = instances;
+      this.next = next;
+    }
+  }
 }
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.guiceberry;
+
+import com.google.common.testing.TearDownAccepter;
+import com.google.inject.Module;
+
+/**
+ * If a {@link TestTimingListener} is bound in your GuiceBerry Env, it is told
+ * how long, in nanoseconds, each of the {@link Phase}s GuiceBerry goes through
+ * to set up and tear down each test took. Use it to find out which of your
+ * Envs make your tests slow.
+ *
+ * <p>For example, to get histograms printed when the JVM exits:
+ *
+ * <pre>
+ * bind(TestTimingListener.class).toInstance(HistogramTestTimingListener.install());
+ * </pre>
+ *
+ * <p>Implementations are called from the threads that run the tests, possibly
+ * concurrently, and should be quick.
+ *
+ * @see com.google.guiceberry.util.HistogramTestTimingListener
+ *
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public interface TestTimingListener {
+
+  /**
+   * The phases of a test's life cycle that GuiceBerry times.
+   */
+  enum Phase {
+    /**
+     * Getting the Env's {@link com.google.inject.Injector}. For the first test
+     * that uses an Env, this includes creating it and running its
+     * {@link GuiceBerryEnvMain}.
+     */
+    INJECTOR_LOOKUP,
+    /** Getting the {@link TestWrapper} and running its {@link TestWrapper#toRunBeforeTest}. */
+    TEST_WRAPPER,
+    /** Injecting the test instance's members. */
+    INJECT_MEMBERS,
+    /** Running the tear downs added to the {@link TearDownAccepter}. */
+    TEAR_DOWN,
+    /** Restoring the Env's {@link GuiceBerryEnvSnapshot}, if it binds one. */
+    RESTORE_SNAPSHOT,
+    /** Ending the {@link TestScoped} scope of the test. */
+    FINISH_SCOPE
+  }
+
+  /**
+   * Called when {@code phase} of {@code testDescription}, which uses the
+   * GuiceBerry Env {@code gbeClass}, has finished (successfully or not) after
+   * {@code elapsedNanos}.
+   */
+  void phaseFinished(Class<? extends Module> gbeClass, TestDescription testDescription,
+      Phase phase, long elapsedNanos);
+}
@@ -16,9 +16,12 @@
 package com.google.guiceberry.controllable;
 
 import com.google.common.base.Objects;
+import com.google.common.collect.Maps;
 import com.google.inject.Key;
 import com.google.guiceberry.TestId;
 
+import java.util.concurrent.ConcurrentMap;
+
 /**
  * This is basically a pair of a controlled {@link Key} (i.e. a possible 
  * annotated {@link Class}) and a {@link TestId}. This is used as a 
@@ -30,25 +33,60 @@ import com.google.guiceberry.TestId;
  * @param <T> The type of {@link Key} in this class. 
  */
 public class ControllableId<T> {
+
+  /**
+   * The {@link Key#toString()} of each controlled {@link Key}, which the
+   * strategies that identify overrides by name need on every lookup, and which
+   * is too costly to render every time. It renders the same in the test and
+   * in the server, as long as both run the same code.
+   */
+  private static final ConcurrentMap<Key<?>, String> keyNames = Maps.newConcurrentMap();
   
   private final TestId testId;
   private final Key<T> key;
+  private final int hashCode;
 
   public ControllableId(TestId test, Key<T> key) {
     this.testId = test;
     this.key = key;
+    // Same as Objects.hashCode(testId, key), without the varargs array. Both
+    // TestId and Key cache their own hash codes.
+    this.hashCode = 31 * (31 + ((testId == null) ? 0 : testId.hashCode()))
+        + ((key == null) ? 0 : key.hashCode());
+  }
+
+  TestId getTestId() {
+    return testId;
+  }
+
+  Key<T> getKey() {
+    return key;
+  }
+
+  /**
+   * Returns the {@link Key#toString()} of the {@link #getKey() key}, rendered
+   * only once per {@link Key}.
+   */
+  String getKeyName() {
+    String result = keyNames.get(key);
+    if (result == null) {
+      result = key.toString();
+      keyNames.putIfAbsent(key, result);
+    }
+    return result;
   }
 
   @Override
   public int hashCode() {
-    return Objects.hashCode(testId, key);
+    return hashCode;
   }
 
   @Override
   public boolean equals(Object other) {
     if (other instanceof ControllableId) {
       ControllableId<?> that = (ControllableId<?>) other;
-      return Objects.equal(this.testId, that.testId)
+      return (this.hashCode == that.hashCode)
+        && Objects.equal(this.testId, that.testId)
         && Objects.equal(this.key, that.key);
     }
     return false;
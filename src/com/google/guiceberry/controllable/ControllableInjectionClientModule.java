@@ -15,14 +15,18 @@
  */
 package com.google.guiceberry.controllable;
 
+import com.google.common.base.Objects;
+import com.google.common.collect.Sets;
 import com.google.common.testing.TearDown;
 import com.google.common.testing.TearDownAccepter;
 import com.google.inject.AbstractModule;
 import com.google.inject.Key;
 import com.google.inject.Provider;
 import com.google.guiceberry.TestId;
+import com.google.guiceberry.controllable.IcStrategy.TestPartitionedClientSupport;
 
 import java.util.Map;
+import java.util.Set;
 
 /**
  * This internal class is basically what the {@link IcMaster} uses to fulfill
@@ -34,6 +38,13 @@ import java.util.Map;
 final class ControllableInjectionClientModule extends AbstractModule {
   
   private final Map<Key<?>, IcStrategy> rewriter;
+
+  /**
+   * The test partitions that already have a tear down registered to drop
+   * them. Shared by all the {@link InjectionController}s of this module, so
+   * that a test's partition is dropped exactly once.
+   */
+  private final Set<TestPartition> partitionsToDrop = Sets.newConcurrentHashSet();
   
   public ControllableInjectionClientModule(Map<Key<?>, IcStrategy> rewriter) {
     this.rewriter = rewriter;
@@ -48,7 +59,8 @@ final class ControllableInjectionClientModule extends AbstractModule {
              e.getKey(), 
              getProvider(TestId.class), 
              getProvider(e.getValue().clientSupportClass()),
-             getProvider(TearDownAccepter.class)));
+             getProvider(TearDownAccepter.class),
+             partitionsToDrop));
     }
   }
 
@@ -57,15 +69,18 @@ final class ControllableInjectionClientModule extends AbstractModule {
     private final Provider<IcStrategy.ClientSupport> clientControllerSupportProvider;
     private final Provider<TestId> testIdProvider;
     private final Provider<TearDownAccepter> tearDownAccepterProvider;
+    private final Set<TestPartition> partitionsToDrop;
     
     public MyClientProvider(Key<T> key,  
         Provider<TestId> testIdProvider, 
         Provider<IcStrategy.ClientSupport> clientControllerSupportProvider,
-        Provider<TearDownAccepter> tearDownAccepterProvider) {
+        Provider<TearDownAccepter> tearDownAccepterProvider,
+        Set<TestPartition> partitionsToDrop) {
       this.key = key;
       this.testIdProvider = testIdProvider;
       this.clientControllerSupportProvider = clientControllerSupportProvider;
       this.tearDownAccepterProvider = tearDownAccepterProvider;
+      this.partitionsToDrop = partitionsToDrop;
     }
 
     public InjectionController<T> get() {
@@ -78,11 +93,17 @@ final class ControllableInjectionClientModule extends AbstractModule {
             clientControllerSupportProvider.get();
           final ControllableId<T> controllableId = 
             new ControllableId<T>(testIdProvider.get(), key);
-          tearDownAccepterProvider.get().addTearDown(new TearDown() {
-            public void tearDown() throws Exception {
-              icClientStrategy.resetOverride(controllableId);
-            }
-          });
+          if (icClientStrategy instanceof TestPartitionedClientSupport) {
+            registerPartitionDrop(
+                (TestPartitionedClientSupport) icClientStrategy,
+                controllableId.getTestId());
+          } else {
+            tearDownAccepterProvider.get().addTearDown(new TearDown() {
+              public void tearDown() throws Exception {
+                icClientStrategy.resetOverride(controllableId);
+              }
+            });
+          }
           icClientStrategy.setOverride(controllableId, override);
         }
 
@@ -95,5 +116,57 @@ final class ControllableInjectionClientModule extends AbstractModule {
         }
       };
     }
+
+    /**
+     * Registers the tear down that drops the whole partition of
+     * {@code testId} on the first override of that test only. Tear downs run
+     * in reverse order, so registering it on every override would drop the
+     * test's overrides before the tear downs added in between them had run.
+     */
+    private void registerPartitionDrop(
+        final TestPartitionedClientSupport clientSupport, final TestId testId) {
+      final TestPartition partition = new TestPartition(clientSupport, testId);
+      if (!partitionsToDrop.add(partition)) {
+        return;
+      }
+      tearDownAccepterProvider.get().addTearDown(new TearDown() {
+        public void tearDown() throws Exception {
+          try {
+            clientSupport.resetOverrides(testId);
+          } finally {
+            partitionsToDrop.remove(partition);
+          }
+        }
+      });
+    }
+  }
+
+  /**
+   * A test's partition of a {@link TestPartitionedClientSupport}. Client
+   * supports are provided unscoped, so they are told apart by their class.
+   */
+  private static final class TestPartition {
+    private final Class<?> clientSupportClass;
+    private final TestId testId;
+
+    TestPartition(TestPartitionedClientSupport clientSupport, TestId testId) {
+      this.clientSupportClass = clientSupport.getClass();
+      this.testId = testId;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof TestPartition)) {
+        return false;
+      }
+      TestPartition that = (TestPartition) obj;
+      return clientSupportClass == that.clientSupportClass
+          && testId.equals(that.testId);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(clientSupportClass, testId);
+    }
   }
 }
\ No newline at end of file
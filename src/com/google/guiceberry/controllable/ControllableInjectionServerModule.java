@@ -18,8 +18,10 @@ package com.google.guiceberry.controllable;
 import com.google.inject.AbstractModule;
 import com.google.inject.Key;
 import com.google.inject.Provider;
+import com.google.inject.Singleton;
 import com.google.guiceberry.TestId;
 import com.google.guiceberry.controllable.IcStrategy.ServerSupport;
+import com.google.guiceberry.controllable.IcStrategy.SingleLookupServerSupport;
 
 import java.util.Map;
 
@@ -38,13 +40,19 @@ final class ControllableInjectionServerModule extends AbstractModule {
     this.rewriter = rewriter;
   }
   
+  /**
+   * Binds, for each controlled key, a single {@link IcServer}, so that
+   * serving a provision of that key needs no further resolution through the
+   * server Injector.
+   */
   @SuppressWarnings({"unchecked", "rawtypes"})
   @Override
   protected void configure() {
     for (Map.Entry<Key<?>, IcStrategy> e : rewriter.entrySet()) {
       bind(IcStrategy.wrap(IcServer.class, e.getKey()))
            .toProvider(new MyServerProvider(e.getKey(), getProvider(TestId.class), 
-             getProvider(e.getValue().serverSupportClass())));
+             getProvider(e.getValue().serverSupportClass())))
+           .in(Singleton.class);
     }
   }
 
@@ -61,17 +69,59 @@ final class ControllableInjectionServerModule extends AbstractModule {
     }
 
     public IcServer<T> get() {
-      return new IcServer<T>() {     
-        public T getOverride(Provider<? extends T> delegate) {
-          ControllableId<T> controllableId = 
-            new ControllableId<T>(testIdProvider.get(), key);
-          ServerSupport serverSupport = serverSupportProvider.get();
-          if (!serverSupport.isControlled(controllableId)) {
-            return delegate.get();
-          }
-          return serverSupport.getOverride(controllableId, delegate);
-        }
-      };
+      ServerSupport serverSupport = serverSupportProvider.get();
+      if (serverSupport instanceof SingleLookupServerSupport) {
+        return new SingleLookupIcServer<T>(
+            key, testIdProvider, (SingleLookupServerSupport) serverSupport);
+      }
+      return new MyIcServer<T>(key, testIdProvider, serverSupport);
     }
   }
-}
\ No newline at end of file
+
+  private static final class MyIcServer<T> implements IcServer<T> {
+    private final Key<T> key;
+    private final Provider<TestId> testIdProvider;
+    private final ServerSupport serverSupport;
+
+    MyIcServer(Key<T> key, Provider<TestId> testIdProvider, ServerSupport serverSupport) {
+      this.key = key;
+      this.testIdProvider = testIdProvider;
+      this.serverSupport = serverSupport;
+    }
+
+    public T getOverride(Provider<? extends T> delegate) {
+      TestId testId = testIdProvider.get();
+      if (testId == null) {
+        // Not serving a test, so nothing can be controlled
+        return delegate.get();
+      }
+      ControllableId<T> controllableId = new ControllableId<T>(testId, key);
+      if (!serverSupport.isControlled(controllableId)) {
+        return delegate.get();
+      }
+      return serverSupport.getOverride(controllableId, delegate);
+    }
+  }
+
+  private static final class SingleLookupIcServer<T> implements IcServer<T> {
+    private final Key<T> key;
+    private final Provider<TestId> testIdProvider;
+    private final SingleLookupServerSupport serverSupport;
+
+    SingleLookupIcServer(Key<T> key, Provider<TestId> testIdProvider,
+        SingleLookupServerSupport serverSupport) {
+      this.key = key;
+      this.testIdProvider = testIdProvider;
+      this.serverSupport = serverSupport;
+    }
+
+    public T getOverride(Provider<? extends T> delegate) {
+      TestId testId = testIdProvider.get();
+      if (testId == null) {
+        return delegate.get();
+      }
+      T override = serverSupport.getOverrideIfControlled(new ControllableId<T>(testId, key));
+      return (override == null) ? delegate.get() : override;
+    }
+  }
+}
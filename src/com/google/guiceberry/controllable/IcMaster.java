@@ -15,16 +15,22 @@
  */
 package com.google.guiceberry.controllable;
 
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.inject.AbstractModule;
 import com.google.inject.Inject;
 import com.google.inject.Injector;
 import com.google.inject.Key;
 import com.google.inject.Module;
 import com.google.inject.Provider;
+import com.google.inject.Singleton;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * As documented at length in the <a 
@@ -145,42 +151,94 @@ public final class IcMaster {
    * be rewritten to honor this. 
    */
   public Module buildServerModule(final Module... modules) {
-    return new InterceptingBindingsBuilder()
-      .install(modules)
-      .install(new ProvisionInterceptorModule())
-      .install(new ControllableInjectionServerModule(controlledKeyToStrategyMap))
-      .intercept(controlledKeyToStrategyMap.keySet())
-      .build();
+    return buildServerModule(Arrays.asList(modules));
   }
 
   /**
    * @see #buildServerModule(Module...)
    */
   public Module buildServerModule(final Collection<? extends Module> modules) {
-    return new InterceptingBindingsBuilder()
+    InterceptingBindingsBuilder result = new InterceptingBindingsBuilder()
       .install(modules)
-      .install(new ProvisionInterceptorModule())
+      .install(new ProvisionInterceptorModule(controlledKeyToStrategyMap.keySet()))
       .install(new ControllableInjectionServerModule(controlledKeyToStrategyMap))
-      .intercept(controlledKeyToStrategyMap.keySet())
-      .build();
+      .intercept(controlledKeyToStrategyMap.keySet());
+    InterceptingBindingsBuilder.Gate anyOverrideGate = buildAnyOverrideGate();
+    if (anyOverrideGate != null) {
+      result.interceptOnlyWhileOpen(anyOverrideGate);
+    }
+    return result.build();
+  }
+
+  /**
+   * Returns a gate that is open whenever any of the strategies of this
+   * {@link IcMaster} might have an override, or {@code null} if any of them
+   * can't tell.
+   */
+  private InterceptingBindingsBuilder.Gate buildAnyOverrideGate() {
+    final Set<InterceptingBindingsBuilder.Gate> gates = Sets.newIdentityHashSet();
+    for (IcStrategy strategy : controlledKeyToStrategyMap.values()) {
+      if (strategy.anyOverrideGate() == null) {
+        return null;
+      }
+      gates.add(strategy.anyOverrideGate());
+    }
+    if (gates.size() == 1) {
+      return gates.iterator().next();
+    }
+    return new InterceptingBindingsBuilder.Gate() {
+      public boolean isOpen() {
+        for (InterceptingBindingsBuilder.Gate gate : gates) {
+          if (gate.isOpen()) {
+            return true;
+          }
+        }
+        return false;
+      }
+    };
   }
 
   private static class ProvisionInterceptorModule extends AbstractModule {
 
+    private final ImmutableSet<Key<?>> controlledKeys;
+
+    ProvisionInterceptorModule(Collection<Key<?>> controlledKeys) {
+      this.controlledKeys = ImmutableSet.copyOf(controlledKeys);
+    }
+
     @Override
     protected void configure() {
-      bind(ProvisionInterceptor.class).to(MyProvisionInterceptor.class);
+      bind(ProvisionInterceptor.class).toProvider(new Provider<ProvisionInterceptor>() {
+        @Inject Injector injector;
+
+        public ProvisionInterceptor get() {
+          ImmutableMap.Builder<Key<?>, IcServer<?>> keyToIcServerMap = ImmutableMap.builder();
+          for (Key<?> key : controlledKeys) {
+            keyToIcServerMap.put(key,
+                (IcServer<?>) injector.getInstance(IcStrategy.wrap(IcServer.class, key)));
+          }
+          return new MyProvisionInterceptor(keyToIcServerMap.build());
+        }
+      }).in(Singleton.class);
     }
     
+    /**
+     * Serves each intercepted provision through the {@link IcServer} of its
+     * key, all of which are resolved once, when this is built.
+     */
     private static class MyProvisionInterceptor implements ProvisionInterceptor {
 
-      @Inject Injector injector;
+      private final ImmutableMap<Key<?>, IcServer<?>> keyToIcServerMap;
+
+      MyProvisionInterceptor(ImmutableMap<Key<?>, IcServer<?>> keyToIcServerMap) {
+        this.keyToIcServerMap = keyToIcServerMap;
+      }
       
       @SuppressWarnings("unchecked")
       public <T> T intercept(Key<T> key, Provider<? extends T> delegate) {
-        IcServer<T> instance = (IcServer<T>) injector.getInstance(IcStrategy.wrap(IcServer.class, key));
+        IcServer<T> instance = (IcServer<T>) keyToIcServerMap.get(key);
         return instance.getOverride(delegate);
       }
     }
   }
-}
\ No newline at end of file
+}
@@ -17,6 +17,7 @@ package com.google.guiceberry.controllable;
 
 import java.lang.reflect.Type;
 
+import com.google.guiceberry.TestId;
 import com.google.inject.Key;
 import com.google.inject.Provider;
 import com.google.inject.util.Types;
@@ -27,6 +28,10 @@ import com.google.inject.util.Types;
  * 
  * <p>Out-of-the-box, GuiceBerry offers a {@link StaticMapInjectionController}, 
  * which is ideal when you run both test and server in the same ClassLoader/JVM.
+ * When the server runs in a separate process on the same machine, there is
+ * {@link MappedFileInjectionController}, which shares a memory-mapped file,
+ * and {@link SocketInjectionController}, which talks to the server through a
+ * loopback socket.
  * 
  * <p>When that is not possible, there are other ways to send this sort of data,
  * such as HTTP {@link javax.servlet.http.Cookie}s, {@link java.io.File}s in a 
@@ -100,6 +105,10 @@ public class IcStrategy {
   /**
    * The "server side" implementation of a Controllable Injection 
    * {@link IcStrategy}.
+   * 
+   * <p>A single instance is used to serve all the provisions of each
+   * controlled key, possibly from many threads at once, so implementations
+   * must be thread-safe.
    */
   public interface ServerSupport {
     
@@ -125,16 +134,66 @@ public class IcStrategy {
      */
     <T> T getOverride(ControllableId<T> controllableId, Provider<? extends T> delegate);
   }
+
+  /**
+   * A {@link ClientSupport} that keeps the overrides of each test apart, and
+   * can thus reset all of them at once.
+   */
+  public interface TestPartitionedClientSupport extends ClientSupport {
+
+    /**
+     * Like {@link #resetOverride(ControllableId)}, but for every injection
+     * controlled by the test with the given {@code testId}.
+     * 
+     * <p>When the {@link ClientSupport} implements this interface, the
+     * framework calls this method, rather than
+     * {@link #resetOverride(ControllableId)}, when a test is torn down.
+     */
+    void resetOverrides(TestId testId);
+  }
+
+  /**
+   * A {@link ServerSupport} that can find out whether an injection is
+   * controlled, and what its override is, in a single lookup.
+   */
+  public interface SingleLookupServerSupport extends ServerSupport {
+
+    /**
+     * Returns the current override for this injection, or {@code null} if it
+     * is not currently being controlled (overrides are never {@code null}).
+     * 
+     * <p>When the {@link ServerSupport} implements this interface, the
+     * framework calls this method instead of
+     * {@link #isControlled(ControllableId)} followed by
+     * {@link #getOverride(ControllableId, Provider)}.
+     */
+    <T> T getOverrideIfControlled(ControllableId<T> controllableId);
+  }
   
   private final Class<? extends IcStrategy.ClientSupport> clientSupportClass;
   private final Class<? extends IcStrategy.ServerSupport> serverSupportClass;
+  private final InterceptingBindingsBuilder.Gate anyOverrideGate;
 
   public IcStrategy(
       Class<? extends IcStrategy.ClientSupport> icStrategyClientSupportClass,
       Class<? extends IcStrategy.ServerSupport> icStrategyServerSupportClass
       ) {
+    this(icStrategyClientSupportClass, icStrategyServerSupportClass, null);
+  }
+
+  /**
+   * @param anyOverrideGate open whenever any test, anywhere, has an override
+   *   in this strategy's store. This lets the server skip Controllable
+   *   Injection altogether while no test controls anything.
+   */
+  IcStrategy(
+      Class<? extends IcStrategy.ClientSupport> icStrategyClientSupportClass,
+      Class<? extends IcStrategy.ServerSupport> icStrategyServerSupportClass,
+      InterceptingBindingsBuilder.Gate anyOverrideGate
+      ) {
     this.clientSupportClass = icStrategyClientSupportClass;
     this.serverSupportClass = icStrategyServerSupportClass;
+    this.anyOverrideGate = anyOverrideGate;
   }
   
   Class<? extends IcStrategy.ClientSupport> clientSupportClass() {
@@ -145,6 +204,14 @@ public class IcStrategy {
     return serverSupportClass;
   }
 
+  /**
+   * Returns {@code null} if this strategy can't tell whether any override is
+   * active.
+   */
+  InterceptingBindingsBuilder.Gate anyOverrideGate() {
+    return anyOverrideGate;
+  }
+
   static Key<?> wrap(Type raw, Key<?> annotationHolder) {
     Type type = Types.newParameterizedType(
         raw, annotationHolder.getTypeLiteral().getType());
@@ -81,6 +81,21 @@ final class InterceptingBindingsBuilder {
   private final Collection<Module> modules = new ArrayList<Module>();
   private final Set<Key<?>> keysToIntercept = Sets.newHashSet();
   private boolean tolerateUnmatchedInterceptions = false;
+  private Gate gate = null;
+
+  /**
+   * Tells whether provisions need to be intercepted at all. See
+   * {@link InterceptingBindingsBuilder#interceptOnlyWhileOpen(Gate)}.
+   */
+  interface Gate {
+    
+    /**
+     * Returns false if no provision needs to be intercepted right now. This
+     * is called on every provision of an intercepted key, so it should be
+     * about as cheap as reading a volatile field.
+     */
+    boolean isOpen();
+  }
 
   public InterceptingBindingsBuilder() {
     // bind the keys to intercept
@@ -127,6 +142,16 @@ final class InterceptingBindingsBuilder {
     return intercept(keysAsList);
   }
 
+  /**
+   * Makes provisions of the intercepted keys go straight to their original
+   * provisioning strategy, without calling the {@link ProvisionInterceptor},
+   * whenever the given {@code gate} is closed.
+   */
+  public InterceptingBindingsBuilder interceptOnlyWhileOpen(Gate gate) {
+    this.gate = checkNotNull(gate);
+    return this;
+  }
+
   public InterceptingBindingsBuilder tolerateUnmatchedInterceptions() {
     this.tolerateUnmatchedInterceptions = true;
     return this;
@@ -135,11 +160,12 @@ final class InterceptingBindingsBuilder {
   public Module build() {
     // record commands from the modules
     final List<Element> elements = Elements.getElements(modules);
+    final Gate gate = this.gate;
 
     // rewrite the commands to insert interception
     return new Module() {
       public void configure(Binder binder) {
-        ModuleRewriter rewriter = new ModuleRewriter(binder);
+        ModuleRewriter rewriter = new ModuleRewriter(binder, gate);
         rewriter.writeAll(elements);
 
         // fail if any interceptions were missing
@@ -158,9 +184,11 @@ final class InterceptingBindingsBuilder {
   /** Replays commands, inserting the InterceptingProvider where necessary. */
   private class ModuleRewriter extends ModuleWriter {
     private Set<Key<?>> keysIntercepted = Sets.newHashSet();
+    private final Gate gate;
     
-    public ModuleRewriter(Binder binder) {
+    public ModuleRewriter(Binder binder, Gate gate) {
       super(binder);
+      this.gate = gate;
     }
 
     @Override
@@ -181,7 +209,8 @@ final class InterceptingBindingsBuilder {
       });
 
       Key<T> anonymousKey = Key.get(key.getTypeLiteral(), UniqueAnnotations.create());
-      binder.bind(key).toProvider(new InterceptingProvider<T>(key, binder.getProvider(anonymousKey)));
+      binder.bind(key).toProvider(
+          new InterceptingProvider<T>(key, binder.getProvider(anonymousKey), gate));
 
       ScopedBindingBuilder scopedBindingBuilder = bindKeyToTarget(binding, binder, anonymousKey);
 
@@ -202,10 +231,13 @@ final class InterceptingBindingsBuilder {
     private final Key<T> key;
     private Provider<ProvisionInterceptor> provisionInterceptorProvider;
     private Provider<? extends T> delegateProvider;
+    // Null if provisions are always intercepted
+    private final Gate gate;
 
-    public InterceptingProvider(Key<T> key, Provider<T> delegateProvider) {
+    public InterceptingProvider(Key<T> key, Provider<T> delegateProvider, Gate gate) {
       this.key = key;
       this.delegateProvider = delegateProvider;
+      this.gate = gate;
     }
 
     @SuppressWarnings("unused")
@@ -214,6 +246,9 @@ final class InterceptingBindingsBuilder {
     }
 
     public T get() {
+      if ((gate != null) && !gate.isOpen()) {
+        return delegateProvider.get();
+      }
       checkNotNull(provisionInterceptorProvider, "injectionInterceptorProvider");
       return provisionInterceptorProvider.get().intercept(key, delegateProvider);
     }
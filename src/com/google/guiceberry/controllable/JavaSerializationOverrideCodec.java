@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.guiceberry.controllable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * See {@link OverrideCodec#JAVA_SERIALIZATION}.
+ *
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+final class JavaSerializationOverrideCodec implements OverrideCodec {
+
+  public byte[] encode(Object override) {
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      ObjectOutputStream out = new ObjectOutputStream(bytes);
+      out.writeObject(override);
+      out.close();
+      return bytes.toByteArray();
+    } catch (IOException e) {
+      throw new IllegalArgumentException(String.format(
+          "Could not serialize the override '%s'.", override), e);
+    }
+  }
+
+  public Object decode(byte[] bytes) {
+    try {
+      return new ObjectInputStream(new ByteArrayInputStream(bytes)).readObject();
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not deserialize an override.", e);
+    } catch (ClassNotFoundException e) {
+      throw new IllegalStateException("Could not deserialize an override.", e);
+    }
+  }
+}
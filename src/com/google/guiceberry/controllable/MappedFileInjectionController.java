@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.guiceberry.controllable;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.AbstractModule;
+import com.google.inject.Inject;
+import com.google.inject.Key;
+import com.google.inject.Module;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * The {@link #strategy()} static factory method gives forth an
+ * {@link IcStrategy} for when the server under test runs in a separate process
+ * (e.g. a forked JVM) than the tests, on the same machine.
+ *
+ * <p>The overrides are kept in a table in a memory-mapped {@link File}, which
+ * the tests write to and the server reads from. Looking up an override is
+ * thus a matter of reading shared memory, with no system call and no network
+ * stack involved. The overrides are written to the file through an
+ * {@link OverrideCodec} -- by default, {@link OverrideCodec#JAVA_SERIALIZATION}.
+ *
+ * <p>Both the test and the server {@link com.google.inject.Injector} need to
+ * install the {@link Module} built by {@link #module(File)} (or one of its
+ * overloads) for the same file, e.g.:
+ *
+ * <pre>
+ * IcMaster icMaster = new IcMaster()
+ *   .thatControls(MappedFileInjectionController.strategy(), MyService.class);
+ * Module overrideTableModule = MappedFileInjectionController.module(tableFile);
+ * </pre>
+ *
+ * <p>Unlike with {@link StaticMapInjectionController}, the server gets a copy
+ * of each override, decoded once per change. Only one process (the one
+ * running the tests) should write to a given file, though it may do so from
+ * many threads, and through the tables of many Injectors.
+ *
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public final class MappedFileInjectionController {
+
+  public static final int DEFAULT_SLOT_COUNT = 1024;
+  public static final int DEFAULT_SLOT_SIZE = 4096;
+
+  public static IcStrategy strategy() {
+    return new IcStrategy(IcClientStrategyImpl.class, IcServerStrategyImpl.class);
+  }
+
+  /**
+   * Builds the {@link Module} that both the test and the server Injector
+   * must install, using {@link OverrideCodec#JAVA_SERIALIZATION} and a table of
+   * {@link #DEFAULT_SLOT_COUNT} slots of {@link #DEFAULT_SLOT_SIZE} bytes.
+   */
+  public static Module module(File file) {
+    return module(file, OverrideCodec.JAVA_SERIALIZATION);
+  }
+
+  /**
+   * @see #module(File)
+   */
+  public static Module module(File file, OverrideCodec codec) {
+    return module(file, codec, DEFAULT_SLOT_COUNT, DEFAULT_SLOT_SIZE);
+  }
+
+  /**
+   * Like {@link #module(File)}, but with the given {@code codec} and a table
+   * of {@code slotCount} slots of {@code slotSize} bytes. Each slot holds one
+   * override, along with its id (i.e. the {@link ControllableId}). The test and
+   * the server must agree on the size of the table.
+   */
+  public static Module module(final File file, final OverrideCodec codec,
+      final int slotCount, final int slotSize) {
+    Preconditions.checkNotNull(file);
+    Preconditions.checkNotNull(codec);
+    return new AbstractModule() {
+      @Override
+      protected void configure() {
+        bind(MappedOverrideTable.class).toProvider(new Provider<MappedOverrideTable>() {
+          public MappedOverrideTable get() {
+            try {
+              return new MappedOverrideTable(file, codec, slotCount, slotSize);
+            } catch (IOException e) {
+              throw new RuntimeException(String.format(
+                  "Could not map the override table '%s'.", file), e);
+            }
+          }
+        }).in(Singleton.class);
+      }
+    };
+  }
+
+  /**
+   * The id of each override in the table is made of the
+   * {@link com.google.guiceberry.TestId} and the
+   * {@link ControllableId#getKeyName() name} of the {@link Key}, which need
+   * no separator: the former ends in digits, the latter starts with
+   * {@code "Key["}.
+   */
+  private static String idPrefix(ControllableId<?> controllableId) {
+    return controllableId.getTestId().toString();
+  }
+
+  private static String idSuffix(ControllableId<?> controllableId) {
+    return controllableId.getKeyName();
+  }
+
+  private static final class IcClientStrategyImpl implements IcStrategy.ClientSupport {
+    
+    private final MappedOverrideTable table;
+
+    @Inject
+    IcClientStrategyImpl(MappedOverrideTable table) {
+      this.table = table;
+    }
+
+    public <T> void setOverride(ControllableId<T> controllableId, T override) {
+      table.put(idPrefix(controllableId), idSuffix(controllableId), override);
+    }
+
+    public <T> void resetOverride(ControllableId<T> controllableId) {
+      table.remove(idPrefix(controllableId), idSuffix(controllableId));
+    }
+  }
+  
+  private static final class IcServerStrategyImpl implements IcStrategy.SingleLookupServerSupport {
+    
+    private final MappedOverrideTable table;
+
+    @Inject
+    IcServerStrategyImpl(MappedOverrideTable table) {
+      this.table = table;
+    }
+
+    public <T> T getOverride(
+        ControllableId<T> controllableId, 
+        Provider<? extends T> delegate) {
+      T result = getOverrideIfControlled(controllableId);
+      if (result == null) {
+        throw new IllegalArgumentException(String.format(
+            "The injection of '%s' is not currently being controlled.", 
+            controllableId.toString()));
+      }
+      return result;
+    }
+
+    public <T> boolean isControlled(ControllableId<T> controllableId) {
+      return table.get(idPrefix(controllableId), idSuffix(controllableId)) != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T getOverrideIfControlled(ControllableId<T> controllableId) {
+      return (T) table.get(idPrefix(controllableId), idSuffix(controllableId));
+    }
+  }
+}
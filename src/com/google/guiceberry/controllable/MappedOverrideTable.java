@@ -0,0 +1,485 @@
+/*
+ * Copyright (C) 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.guiceberry.controllable;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A fixed-size, open-addressing hash table of overrides, laid out in a
+ * memory-mapped file so that it can be shared by separate processes. See
+ * {@link MappedFileInjectionController}.
+ *
+ * <p>The file starts with a header (a magic number, the number of slots, the
+ * size of each slot and a sequence number for the table as a whole), followed
+ * by the slots. Each slot holds a sequence number, a state (empty or used),
+ * the hash and length of its id, the length of its value, then the id (as
+ * UTF-16 chars) and the value bytes themselves. An id is given in two parts,
+ * a prefix and a suffix, so that callers need not concatenate them.
+ *
+ * <p>Only one process is expected to write to a table (the tests), while any
+ * number of them read from it (the servers). Within that process, writes to
+ * a file are serialized by a lock shared by all the tables that map it (e.g.
+ * those of different Injectors), not just by each table. Writes to a slot are bracketed by
+ * bumping its sequence number (odd while the slot is being written), so a
+ * reader that sees an odd or changed sequence number knows to read the slot
+ * again. Removing an id shifts the ids that probed past it back into its
+ * slot, rather than leaving a tombstone behind, so that a lookup never probes
+ * further than the cluster of used slots it falls in. As that moves ids
+ * around, it is bracketed by bumping the sequence number of the table, which
+ * readers check before reporting that an id is not there. Reads are plain
+ * memory accesses, i.e. no system calls, ordered by the fences of a volatile
+ * field.
+ *
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+final class MappedOverrideTable {
+
+  private static final int MAGIC = 0x4742494d;
+  
+  private static final int HEADER_MAGIC = 0;
+  private static final int HEADER_SLOT_COUNT = 4;
+  private static final int HEADER_SLOT_SIZE = 8;
+  private static final int HEADER_SEQUENCE = 12;
+  private static final int HEADER_SIZE = 16;
+  
+  private static final int SLOT_SEQUENCE = 0;
+  private static final int SLOT_STATE = 4;
+  private static final int SLOT_ID_HASH = 8;
+  private static final int SLOT_ID_LENGTH = 12;
+  private static final int SLOT_VALUE_LENGTH = 16;
+  private static final int SLOT_HEADER_SIZE = 20;
+  
+  private static final int EMPTY = 0;
+  private static final int USED = 1;
+
+  /**
+   * How long a reader keeps retrying a slot (or the table) that is being
+   * written before it gives up, assuming the writer died half way through.
+   * Writes take microseconds.
+   */
+  @VisibleForTesting
+  static final long WRITE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  /**
+   * Returned by {@link #lookUp} when it saw a write in progress.
+   */
+  private static final Object RETRY = new Object();
+
+  /**
+   * The lock of each (canonical) file mapped by this JVM, which its writers
+   * hold, whichever table they write through.
+   */
+  private static final ConcurrentMap<File, Object> writeLocks = Maps.newConcurrentMap();
+  
+  private final MappedByteBuffer buffer;
+  private final Object writeLock;
+  private final int slotCount;
+  private final int slotSize;
+  private final OverrideCodec codec;
+  
+  /**
+   * The last value decoded from each slot, so that reading an override that
+   * has not changed does not decode it again.
+   */
+  private final AtomicReferenceArray<Decoded> decodedValues;
+
+  /**
+   * Only ever accessed for its memory fences: the plain accesses to the
+   * {@link #buffer} can be neither hoisted out of the loops that read it, nor
+   * reordered across an access to this field. See {@link #fence()}.
+   */
+  private volatile int fence;
+
+  private static final class Decoded {
+    final int sequence;
+    final Object value;
+
+    Decoded(int sequence, Object value) {
+      this.sequence = sequence;
+      this.value = value;
+    }
+  }
+
+  MappedOverrideTable(File file, OverrideCodec codec, int slotCount, int slotSize)
+      throws IOException {
+    Preconditions.checkArgument(slotCount > 0, "slotCount must be positive");
+    Preconditions.checkArgument(slotSize > SLOT_HEADER_SIZE,
+        "slotSize must be greater than %s", SLOT_HEADER_SIZE);
+    this.codec = Preconditions.checkNotNull(codec);
+    this.slotCount = slotCount;
+    this.slotSize = slotSize;
+    this.decodedValues = new AtomicReferenceArray<Decoded>(slotCount);
+    this.writeLock = writeLockOf(file);
+    
+    long size = HEADER_SIZE + ((long) slotCount * slotSize);
+    Preconditions.checkArgument(size <= Integer.MAX_VALUE,
+        "A table of %s slots of %s bytes is too large", slotCount, slotSize);
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+    try {
+      if (randomAccessFile.length() < size) {
+        randomAccessFile.setLength(size);
+      }
+      // The mapping stays valid after the file is closed
+      this.buffer = randomAccessFile.getChannel().map(MapMode.READ_WRITE, 0, size);
+    } finally {
+      randomAccessFile.close();
+    }
+    
+    if (buffer.getInt(HEADER_MAGIC) != MAGIC) {
+      buffer.putInt(HEADER_SLOT_COUNT, slotCount);
+      buffer.putInt(HEADER_SLOT_SIZE, slotSize);
+      buffer.putInt(HEADER_MAGIC, MAGIC);
+    } else if ((buffer.getInt(HEADER_SLOT_COUNT) != slotCount)
+        || (buffer.getInt(HEADER_SLOT_SIZE) != slotSize)) {
+      throw new IllegalStateException(String.format(
+          "The override table '%s' has %s slots of %s bytes, not %s slots of %s bytes.",
+          file, buffer.getInt(HEADER_SLOT_COUNT), buffer.getInt(HEADER_SLOT_SIZE),
+          slotCount, slotSize));
+    }
+  }
+
+  private static Object writeLockOf(File file) throws IOException {
+    File canonicalFile = file.getCanonicalFile();
+    Object result = writeLocks.get(canonicalFile);
+    if (result == null) {
+      Object newLock = new Object();
+      result = writeLocks.putIfAbsent(canonicalFile, newLock);
+      if (result == null) {
+        result = newLock;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Sets (or replaces) the override with the id {@code idPrefix + idSuffix}.
+   *
+   * @throws IllegalArgumentException if the id and the encoded override do
+   *   not fit in a slot.
+   * @throws IllegalStateException if the table is full.
+   */
+  void put(String idPrefix, String idSuffix, Object override) {
+    byte[] valueBytes = codec.encode(override);
+    int idLength = idPrefix.length() + idSuffix.length();
+    if ((2 * idLength) + valueBytes.length > slotSize - SLOT_HEADER_SIZE) {
+      throw new IllegalArgumentException(String.format(
+          "The override of '%s%s' takes %s bytes, but the slots of this table only fit %s.",
+          idPrefix, idSuffix, (2 * idLength) + valueBytes.length,
+          slotSize - SLOT_HEADER_SIZE));
+    }
+    int hash = hash(idPrefix, idSuffix);
+    synchronized (writeLock) {
+      int slot = firstSlot(hash);
+      for (int i = 0; i < slotCount; i++) {
+        int state = buffer.getInt(slotOffset(slot) + SLOT_STATE);
+        if ((state == EMPTY)
+            || idMatches(slotOffset(slot), hash, idPrefix, idSuffix)) {
+          write(slot, hash, idPrefix, idSuffix, valueBytes);
+          return;
+        }
+        slot = nextSlot(slot);
+      }
+    }
+    throw new IllegalStateException(String.format(
+        "The override table is full (it has %s slots).", slotCount));
+  }
+
+  /**
+   * Removes the override with the id {@code idPrefix + idSuffix}, if there is
+   * one.
+   */
+  void remove(String idPrefix, String idSuffix) {
+    int hash = hash(idPrefix, idSuffix);
+    synchronized (writeLock) {
+      int slot = firstSlot(hash);
+      for (int i = 0; i < slotCount; i++) {
+        int offset = slotOffset(slot);
+        if (buffer.getInt(offset + SLOT_STATE) == EMPTY) {
+          return;
+        }
+        if (idMatches(offset, hash, idPrefix, idSuffix)) {
+          int tableSequence = beginWrite(HEADER_SEQUENCE);
+          shiftBackInto(slot);
+          endWrite(HEADER_SEQUENCE, tableSequence);
+          return;
+        }
+        slot = nextSlot(slot);
+      }
+    }
+  }
+
+  /**
+   * Returns the override with the id {@code idPrefix + idSuffix}, or
+   * {@code null} if there is none.
+   *
+   * @throws IllegalStateException if the slot (or the table) stays half
+   *   written for longer than {@link #WRITE_TIMEOUT_NANOS}, i.e. its writer
+   *   died while writing it.
+   */
+  Object get(String idPrefix, String idSuffix) {
+    int hash = hash(idPrefix, idSuffix);
+    long retryingSince = 0;
+    for (int retries = 0; ; retries++) {
+      Object result = lookUp(hash, idPrefix, idSuffix);
+      if (result != RETRY) {
+        return result;
+      }
+      if (retries == 0) {
+        retryingSince = System.nanoTime();
+      } else if (System.nanoTime() - retryingSince > WRITE_TIMEOUT_NANOS) {
+        throw new IllegalStateException(String.format(
+            "Gave up looking up '%s%s': the override table has been in the middle "
+            + "of a write for over %sms. Did the process writing to it die?",
+            idPrefix, idSuffix, TimeUnit.NANOSECONDS.toMillis(WRITE_TIMEOUT_NANOS)));
+      }
+      Thread.yield();
+    }
+  }
+
+  /**
+   * @see #put(String, String, Object)
+   */
+  void put(String id, Object override) {
+    put(id, "", override);
+  }
+
+  /**
+   * @see #remove(String, String)
+   */
+  void remove(String id) {
+    remove(id, "");
+  }
+
+  /**
+   * @see #get(String, String)
+   */
+  Object get(String id) {
+    return get(id, "");
+  }
+
+  /**
+   * Looks the id up once, returning {@link #RETRY} if a write got in the way.
+   */
+  private Object lookUp(int hash, String idPrefix, String idSuffix) {
+    int tableSequence = buffer.getInt(HEADER_SEQUENCE);
+    fence();
+    if ((tableSequence & 1) != 0) {
+      return RETRY;
+    }
+    int slot = firstSlot(hash);
+    for (int i = 0; i < slotCount; i++) {
+      int offset = slotOffset(slot);
+      int sequence = buffer.getInt(offset + SLOT_SEQUENCE);
+      fence();
+      if ((sequence & 1) != 0) {
+        return RETRY;
+      }
+      int state = buffer.getInt(offset + SLOT_STATE);
+      if (state == EMPTY) {
+        break;
+      }
+      if (idMatches(offset, hash, idPrefix, idSuffix)) {
+        return readValue(slot, offset, sequence);
+      }
+      slot = nextSlot(slot);
+    }
+    // Not there -- unless it was being moved around while we looked
+    fence();
+    return (buffer.getInt(HEADER_SEQUENCE) == tableSequence) ? null : RETRY;
+  }
+
+  private Object readValue(int slot, int offset, int sequence) {
+    Decoded decoded = decodedValues.get(slot);
+    if ((decoded != null) && (decoded.sequence == sequence)) {
+      fence();
+      return (buffer.getInt(offset + SLOT_SEQUENCE) == sequence) ? decoded.value : RETRY;
+    }
+    int idLength = buffer.getInt(offset + SLOT_ID_LENGTH);
+    int valueLength = buffer.getInt(offset + SLOT_VALUE_LENGTH);
+    if ((idLength < 0) || (valueLength < 0)
+        || ((2 * idLength) + valueLength > slotSize - SLOT_HEADER_SIZE)) {
+      // Torn read
+      return RETRY;
+    }
+    byte[] valueBytes = new byte[valueLength];
+    int valueOffset = offset + SLOT_HEADER_SIZE + (2 * idLength);
+    for (int i = 0; i < valueLength; i++) {
+      valueBytes[i] = buffer.get(valueOffset + i);
+    }
+    fence();
+    if (buffer.getInt(offset + SLOT_SEQUENCE) != sequence) {
+      return RETRY;
+    }
+    Object result = codec.decode(valueBytes);
+    decodedValues.set(slot, new Decoded(sequence, result));
+    return result;
+  }
+
+  /**
+   * Empties {@code hole}, first moving into it the next id of its cluster
+   * that probed past it, then doing the same for the slot that id left, and
+   * so on (Knuth's algorithm R).
+   */
+  private void shiftBackInto(int hole) {
+    int slot = hole;
+    for (int i = 1; i < slotCount; i++) {
+      slot = nextSlot(slot);
+      int offset = slotOffset(slot);
+      if (buffer.getInt(offset + SLOT_STATE) == EMPTY) {
+        break;
+      }
+      int home = firstSlot(buffer.getInt(offset + SLOT_ID_HASH));
+      boolean probedPastHole = (hole <= slot)
+          ? ((home <= hole) || (home > slot))
+          : ((home <= hole) && (home > slot));
+      if (probedPastHole) {
+        copy(slot, hole);
+        hole = slot;
+      }
+    }
+    int offset = slotOffset(hole);
+    int sequence = beginWrite(offset + SLOT_SEQUENCE);
+    buffer.putInt(offset + SLOT_STATE, EMPTY);
+    endWrite(offset + SLOT_SEQUENCE, sequence);
+  }
+
+  private void copy(int fromSlot, int toSlot) {
+    int from = slotOffset(fromSlot);
+    int to = slotOffset(toSlot);
+    int length = SLOT_HEADER_SIZE
+        + (2 * buffer.getInt(from + SLOT_ID_LENGTH))
+        + buffer.getInt(from + SLOT_VALUE_LENGTH);
+    int sequence = beginWrite(to + SLOT_SEQUENCE);
+    // Everything but the sequence number
+    for (int i = SLOT_STATE; i < length; i++) {
+      buffer.put(to + i, buffer.get(from + i));
+    }
+    endWrite(to + SLOT_SEQUENCE, sequence);
+  }
+
+  private boolean idMatches(int offset, int hash, String idPrefix, String idSuffix) {
+    if ((buffer.getInt(offset + SLOT_ID_HASH) != hash)
+        || (buffer.getInt(offset + SLOT_ID_LENGTH) != idPrefix.length() + idSuffix.length())) {
+      return false;
+    }
+    int idOffset = offset + SLOT_HEADER_SIZE;
+    for (int i = 0; i < idPrefix.length(); i++, idOffset += 2) {
+      if (buffer.getChar(idOffset) != idPrefix.charAt(i)) {
+        return false;
+      }
+    }
+    for (int i = 0; i < idSuffix.length(); i++, idOffset += 2) {
+      if (buffer.getChar(idOffset) != idSuffix.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void write(int slot, int hash, String idPrefix, String idSuffix, byte[] valueBytes) {
+    int offset = slotOffset(slot);
+    int sequence = beginWrite(offset + SLOT_SEQUENCE);
+    buffer.putInt(offset + SLOT_STATE, USED);
+    buffer.putInt(offset + SLOT_ID_HASH, hash);
+    buffer.putInt(offset + SLOT_ID_LENGTH, idPrefix.length() + idSuffix.length());
+    buffer.putInt(offset + SLOT_VALUE_LENGTH, valueBytes.length);
+    int dataOffset = offset + SLOT_HEADER_SIZE;
+    for (int i = 0; i < idPrefix.length(); i++, dataOffset += 2) {
+      buffer.putChar(dataOffset, idPrefix.charAt(i));
+    }
+    for (int i = 0; i < idSuffix.length(); i++, dataOffset += 2) {
+      buffer.putChar(dataOffset, idSuffix.charAt(i));
+    }
+    for (int i = 0; i < valueBytes.length; i++) {
+      buffer.put(dataOffset + i, valueBytes[i]);
+    }
+    endWrite(offset + SLOT_SEQUENCE, sequence);
+  }
+
+  /**
+   * Makes the sequence number at {@code offset} odd, returning it. If a
+   * previous writer died half way through, the number was odd already, and
+   * is bumped to the next odd one.
+   */
+  private int beginWrite(int offset) {
+    int sequence = (buffer.getInt(offset) + 1) | 1;
+    buffer.putInt(offset, sequence);
+    fence();
+    return sequence;
+  }
+
+  private void endWrite(int offset, int sequence) {
+    fence();
+    buffer.putInt(offset, sequence + 1);
+  }
+
+  /**
+   * A full fence: a volatile write followed by a volatile read. The accesses
+   * before it can not move past the write, nor the accesses after it ahead of
+   * the read.
+   */
+  private void fence() {
+    fence = 0;
+    @SuppressWarnings("unused")
+    int ignored = fence;
+  }
+
+  @VisibleForTesting
+  int emptySlots() {
+    int result = 0;
+    for (int slot = 0; slot < slotCount; slot++) {
+      if (buffer.getInt(slotOffset(slot) + SLOT_STATE) == EMPTY) {
+        result++;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * The same as {@code (idPrefix + idSuffix).hashCode()}, without building
+   * the concatenation.
+   */
+  private static int hash(String idPrefix, String idSuffix) {
+    int result = idPrefix.hashCode();
+    for (int i = 0; i < idSuffix.length(); i++) {
+      result = (31 * result) + idSuffix.charAt(i);
+    }
+    return result;
+  }
+
+  private int firstSlot(int hash) {
+    return (hash & Integer.MAX_VALUE) % slotCount;
+  }
+
+  private int nextSlot(int slot) {
+    return (slot + 1 == slotCount) ? 0 : slot + 1;
+  }
+
+  private int slotOffset(int slot) {
+    return HEADER_SIZE + (slot * slotSize);
+  }
+}
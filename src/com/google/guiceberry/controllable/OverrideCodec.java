@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.guiceberry.controllable;
+
+/**
+ * Turns overrides into bytes, and back, for the {@link IcStrategy}s that
+ * send them to a server in a separate process, e.g.
+ * {@link MappedFileInjectionController} and {@link SocketInjectionController}.
+ *
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public interface OverrideCodec {
+
+  /**
+   * An {@link OverrideCodec} that uses Java serialization, and thus requires
+   * overrides to be {@link java.io.Serializable}.
+   */
+  OverrideCodec JAVA_SERIALIZATION = new JavaSerializationOverrideCodec();
+
+  byte[] encode(Object override);
+
+  Object decode(byte[] bytes);
+}
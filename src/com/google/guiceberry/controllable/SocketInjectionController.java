@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.guiceberry.controllable;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.guiceberry.TestId;
+import com.google.inject.AbstractModule;
+import com.google.inject.Inject;
+import com.google.inject.Module;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@link #strategy()} static factory method gives forth an
+ * {@link IcStrategy} for when the server under test runs in a separate process
+ * than the tests, and they can't share a file (see
+ * {@link MappedFileInjectionController}).
+ *
+ * <p>The server Injector installs {@link #serverModule(int, String)}, which
+ * starts an agent that listens on the given loopback port and keeps the
+ * overrides in memory. The test Injector installs
+ * {@link #clientModule(InetSocketAddress, String)}, which sends the overrides
+ * to that agent over a single connection. The overrides are sent through an
+ * {@link OverrideCodec} -- by default, {@link OverrideCodec#JAVA_SERIALIZATION}.
+ *
+ * <p>Any local process can connect to a loopback port, so the agent only
+ * listens to clients that know its secret. It is up to the tests to share it
+ * with the server they start, e.g. through a system property, and to pick a
+ * new, random one for every run.
+ *
+ * <p>Operations are pipelined: a test waits for the agent only when it sets
+ * (or resets) an override, never when it is torn down. To set many overrides
+ * at the cost of a single round trip, set them inside {@link #batch(Runnable)}:
+ *
+ * <pre>
+ * SocketInjectionController.batch(new Runnable() {
+ *   public void run() {
+ *     fooInjectionController.setOverride(someFoo);
+ *     barInjectionController.setOverride(someBar);
+ *   }
+ * });
+ * </pre>
+ *
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public final class SocketInjectionController {
+
+  /**
+   * The operations of the current thread's {@link #batch(Runnable)}, if any,
+   * waiting to be sent by each client.
+   */
+  private static final ThreadLocal<Map<SocketOverrideClient, List<byte[]>>> currentBatch =
+    new ThreadLocal<Map<SocketOverrideClient, List<byte[]>>>();
+
+  public static IcStrategy strategy() {
+    return new IcStrategy(IcClientStrategyImpl.class, IcServerStrategyImpl.class);
+  }
+
+  /**
+   * Builds the {@link Module} for the test Injector, to send overrides to the
+   * agent at {@code agentAddress}, which has the given {@code secret}, using
+   * {@link OverrideCodec#JAVA_SERIALIZATION}.
+   */
+  public static Module clientModule(InetSocketAddress agentAddress, String secret) {
+    return clientModule(agentAddress, secret, OverrideCodec.JAVA_SERIALIZATION);
+  }
+
+  /**
+   * @see #clientModule(InetSocketAddress, String)
+   */
+  public static Module clientModule(
+      final InetSocketAddress agentAddress, final String secret, final OverrideCodec codec) {
+    Preconditions.checkNotNull(agentAddress);
+    Preconditions.checkNotNull(secret);
+    Preconditions.checkNotNull(codec);
+    return new AbstractModule() {
+      @Override
+      protected void configure() {
+        bind(SocketOverrideClient.class)
+            .toInstance(new SocketOverrideClient(agentAddress, secret, codec));
+      }
+    };
+  }
+
+  /**
+   * Builds the {@link Module} for the server Injector, which starts an agent
+   * listening on the given loopback {@code port} (or any free one, if
+   * {@code 0}) when the Injector is created, using
+   * {@link OverrideCodec#JAVA_SERIALIZATION}. Only clients that know the given
+   * {@code secret} can connect to it. The agent stops when the JVM shuts down.
+   */
+  public static Module serverModule(int port, String secret) {
+    return serverModule(port, secret, OverrideCodec.JAVA_SERIALIZATION);
+  }
+
+  /**
+   * @see #serverModule(int, String)
+   */
+  public static Module serverModule(
+      final int port, final String secret, final OverrideCodec codec) {
+    Preconditions.checkNotNull(secret);
+    Preconditions.checkNotNull(codec);
+    return new AbstractModule() {
+      @Override
+      protected void configure() {
+        bind(SocketOverrideAgent.class).toProvider(new Provider<SocketOverrideAgent>() {
+          public SocketOverrideAgent get() {
+            try {
+              return new SocketOverrideAgent(port, secret, codec);
+            } catch (IOException e) {
+              throw new RuntimeException(String.format(
+                  "Could not start the override agent on port %s.", port), e);
+            }
+          }
+        }).asEagerSingleton();
+      }
+    };
+  }
+
+  /**
+   * Runs {@code overrides} in the current thread, sending all the overrides
+   * it sets or resets through a {@link SocketInjectionController} at once,
+   * when it returns. Batches may be nested, in which case the outermost one
+   * sends.
+   */
+  public static void batch(Runnable overrides) {
+    if (currentBatch.get() != null) {
+      overrides.run();
+      return;
+    }
+    Map<SocketOverrideClient, List<byte[]>> batch = Maps.newLinkedHashMap();
+    currentBatch.set(batch);
+    try {
+      overrides.run();
+    } finally {
+      currentBatch.remove();
+    }
+    for (Map.Entry<SocketOverrideClient, List<byte[]>> e : batch.entrySet()) {
+      e.getKey().send(e.getValue(), true);
+    }
+  }
+
+  /**
+   * Sends the given {@code operation} right away, and waits for it to be
+   * applied, unless in a {@link #batch(Runnable)}.
+   */
+  private static void sendOrBatch(SocketOverrideClient client, byte[] operation) {
+    Map<SocketOverrideClient, List<byte[]>> batch = currentBatch.get();
+    if (batch == null) {
+      client.send(operation, true);
+      return;
+    }
+    List<byte[]> operations = batch.get(client);
+    if (operations == null) {
+      operations = Lists.newArrayList();
+      batch.put(client, operations);
+    }
+    operations.add(operation);
+  }
+
+  private static final class IcClientStrategyImpl
+      implements IcStrategy.TestPartitionedClientSupport {
+    
+    private final SocketOverrideClient client;
+
+    @Inject
+    IcClientStrategyImpl(SocketOverrideClient client) {
+      this.client = client;
+    }
+
+    public <T> void setOverride(ControllableId<T> controllableId, T override) {
+      sendOrBatch(client, client.setOperation(
+          controllableId.getTestId().toString(), controllableId.getKeyName(), override));
+    }
+
+    public <T> void resetOverride(ControllableId<T> controllableId) {
+      sendOrBatch(client, client.resetOperation(
+          controllableId.getTestId().toString(), controllableId.getKeyName()));
+    }
+
+    public void resetOverrides(TestId testId) {
+      // The test is over, and no other test shares its TestId, so there is
+      // no need to wait for this to be applied
+      client.send(client.resetTestOperation(testId.toString()), false);
+    }
+  }
+  
+  private static final class IcServerStrategyImpl implements IcStrategy.SingleLookupServerSupport {
+    
+    private final SocketOverrideAgent agent;
+
+    @Inject
+    IcServerStrategyImpl(SocketOverrideAgent agent) {
+      this.agent = agent;
+    }
+
+    public <T> T getOverride(
+        ControllableId<T> controllableId, 
+        Provider<? extends T> delegate) {
+      T result = getOverrideIfControlled(controllableId);
+      if (result == null) {
+        throw new IllegalArgumentException(String.format(
+            "The injection of '%s' is not currently being controlled.", 
+            controllableId.toString()));
+      }
+      return result;
+    }
+
+    public <T> boolean isControlled(ControllableId<T> controllableId) {
+      return getOverrideIfControlled(controllableId) != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T getOverrideIfControlled(ControllableId<T> controllableId) {
+      return (T) agent.get(
+          controllableId.getTestId().toString(), controllableId.getKeyName());
+    }
+  }
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright (C) 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.guiceberry.controllable;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * The server side of {@link SocketInjectionController}: listens on a loopback
+ * port for the operations sent by {@link SocketOverrideClient}s, and keeps the
+ * resulting overrides in memory, apart for each test.
+ *
+ * <p>Since overrides are decoded by the {@link OverrideCodec} (e.g. Java
+ * deserialization), only clients that know the agent's secret are listened
+ * to: upon connecting, a client has to answer a random challenge with its
+ * HMAC under the secret, or gets dropped. The agent closes itself when the
+ * JVM shuts down, if not {@link #close() closed} before.
+ *
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+final class SocketOverrideAgent {
+
+  static final byte SET = 1;
+  static final byte RESET = 2;
+  static final byte RESET_TEST = 3;
+  static final byte SYNC = 4;
+
+  /**
+   * The largest encoded override the agent accepts. A client that sends a
+   * larger (or negative) length gets dropped.
+   */
+  static final int MAX_VALUE_LENGTH = 16 * 1024 * 1024;
+
+  static final int CHALLENGE_LENGTH = 32;
+  private static final String HMAC_ALGORITHM = "HmacSHA256";
+  private static final int HANDSHAKE_TIMEOUT_MILLIS = 10 * 1000;
+
+  private final ConcurrentMap<String, ConcurrentMap<String, Object>> testIdToOverridesMap =
+    Maps.newConcurrentMap();
+
+  private final OverrideCodec codec;
+  private final byte[] secret;
+  private final SecureRandom random = new SecureRandom();
+  private final ServerSocket serverSocket;
+  private final Set<Socket> connections = Sets.newConcurrentHashSet();
+  private final Thread shutdownHook;
+
+  SocketOverrideAgent(int port, String secret, OverrideCodec codec) throws IOException {
+    Preconditions.checkArgument(!secret.isEmpty(), "The secret must not be empty");
+    this.codec = codec;
+    this.secret = secret.getBytes(Charsets.UTF_8);
+    // InetAddress.getByName(null) is the loopback address
+    this.serverSocket = new ServerSocket(port, 50, InetAddress.getByName(null));
+    this.shutdownHook = new Thread("GuiceBerry-override-agent-" + getPort() + "-shutdown") {
+      @Override
+      public void run() {
+        closeQuietly();
+      }
+    };
+    Runtime.getRuntime().addShutdownHook(shutdownHook);
+    Thread acceptor = new Thread("GuiceBerry-override-agent-" + getPort()) {
+      @Override
+      public void run() {
+        acceptConnections();
+      }
+    };
+    acceptor.setDaemon(true);
+    acceptor.start();
+  }
+
+  int getPort() {
+    return serverSocket.getLocalPort();
+  }
+
+  /**
+   * Returns the override with the given {@code key} for the test with the
+   * given {@code testId}, or {@code null} if there is none.
+   */
+  Object get(String testId, String key) {
+    ConcurrentMap<String, Object> overrides = testIdToOverridesMap.get(testId);
+    if (overrides == null) {
+      return null;
+    }
+    return overrides.get(key);
+  }
+
+  /**
+   * Stops listening, and drops the clients connected so far.
+   */
+  void close() throws IOException {
+    try {
+      Runtime.getRuntime().removeShutdownHook(shutdownHook);
+    } catch (IllegalStateException e) {
+      // The JVM is shutting down already, and the hook is closing us
+    }
+    closeQuietly();
+  }
+
+  private void closeQuietly() {
+    closeQuietly(serverSocket);
+    for (Socket socket : connections) {
+      closeQuietly(socket);
+    }
+  }
+
+  private static void closeQuietly(Closeable closeable) {
+    try {
+      closeable.close();
+    } catch (IOException e) {
+      // Nothing left to do
+    }
+  }
+
+  /**
+   * The answer to the given {@code challenge} of a client that knows the
+   * given {@code secret}.
+   */
+  static byte[] answer(byte[] secret, byte[] challenge) {
+    try {
+      Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+      mac.init(new SecretKeySpec(secret, HMAC_ALGORITHM));
+      return mac.doFinal(challenge);
+    } catch (GeneralSecurityException e) {
+      // Every JVM supports HmacSHA256
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private void acceptConnections() {
+    while (!serverSocket.isClosed()) {
+      final Socket socket;
+      try {
+        socket = serverSocket.accept();
+      } catch (IOException e) {
+        // Closed
+        return;
+      }
+      Thread handler = new Thread(
+          "GuiceBerry-override-agent-" + getPort() + "-" + socket.getPort()) {
+        @Override
+        public void run() {
+          handle(socket);
+        }
+      };
+      handler.setDaemon(true);
+      handler.start();
+    }
+  }
+
+  /**
+   * Applies the operations sent through the given {@code socket}, in order,
+   * answering only the {@link #SYNC}s, once the client proved it knows the
+   * secret. A failure to apply an operation is reported in the answer to the
+   * next {@link #SYNC}, since its sender does not wait for it.
+   */
+  private void handle(Socket socket) {
+    connections.add(socket);
+    try {
+      socket.setTcpNoDelay(true);
+      DataInputStream in =
+        new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      if (!handshake(socket, in, out)) {
+        return;
+      }
+      String failure = null;
+      while (true) {
+        byte operation;
+        try {
+          operation = in.readByte();
+        } catch (EOFException e) {
+          return;
+        }
+        try {
+          switch (operation) {
+            case SET:
+              String testId = in.readUTF();
+              String key = in.readUTF();
+              int length = in.readInt();
+              if ((length < 0) || (length > MAX_VALUE_LENGTH)) {
+                throw new IOException("Bad override length " + length);
+              }
+              byte[] value = new byte[length];
+              in.readFully(value);
+              set(testId, key, codec.decode(value));
+              break;
+            case RESET:
+              ConcurrentMap<String, Object> overrides = testIdToOverridesMap.get(in.readUTF());
+              String resetKey = in.readUTF();
+              if (overrides != null) {
+                overrides.remove(resetKey);
+              }
+              break;
+            case RESET_TEST:
+              testIdToOverridesMap.remove(in.readUTF());
+              break;
+            case SYNC:
+              out.writeBoolean(failure == null);
+              if (failure != null) {
+                out.writeUTF(failure);
+                failure = null;
+              }
+              out.flush();
+              break;
+            default:
+              throw new IOException("Unknown operation " + operation);
+          }
+        } catch (RuntimeException e) {
+          if (failure == null) {
+            failure = String.valueOf(e);
+          }
+        }
+      }
+    } catch (IOException e) {
+      // The client went away, or is broken -- either way, drop it
+    } finally {
+      connections.remove(socket);
+      closeQuietly(socket);
+    }
+  }
+
+  /**
+   * Challenges the client to prove it knows the secret, telling it whether it
+   * did. Clients that take too long to answer are dropped.
+   */
+  private boolean handshake(Socket socket, DataInputStream in, DataOutputStream out)
+      throws IOException {
+    byte[] challenge = new byte[CHALLENGE_LENGTH];
+    random.nextBytes(challenge);
+    socket.setSoTimeout(HANDSHAKE_TIMEOUT_MILLIS);
+    out.write(challenge);
+    out.flush();
+    byte[] expected = answer(secret, challenge);
+    byte[] actual = new byte[expected.length];
+    in.readFully(actual);
+    boolean accepted = MessageDigest.isEqual(expected, actual);
+    out.writeBoolean(accepted);
+    out.flush();
+    socket.setSoTimeout(0);
+    return accepted;
+  }
+
+  private void set(String testId, String key, Object override) {
+    ConcurrentMap<String, Object> overrides = testIdToOverridesMap.get(testId);
+    if (overrides == null) {
+      ConcurrentMap<String, Object> newOverrides = Maps.newConcurrentMap();
+      overrides = testIdToOverridesMap.putIfAbsent(testId, newOverrides);
+      if (overrides == null) {
+        overrides = newOverrides;
+      }
+    }
+    overrides.put(key, override);
+  }
+}
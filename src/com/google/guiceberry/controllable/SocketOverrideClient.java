@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.guiceberry.controllable;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.List;
+
+/**
+ * The client side of {@link SocketInjectionController}: sends override
+ * operations to a {@link SocketOverrideAgent} over a single connection.
+ *
+ * <p>Operations are pipelined: {@link #send(List, boolean)} writes any number
+ * of them and, only if asked to, waits for the agent to have applied them all,
+ * which takes a single round trip. Upon connecting, the client proves to the
+ * agent that it knows their shared secret.
+ *
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+final class SocketOverrideClient {
+
+  private final InetSocketAddress agentAddress;
+  private final byte[] secret;
+  private final OverrideCodec codec;
+
+  // Guarded by this
+  private Socket socket;
+  private DataInputStream in;
+  private DataOutputStream out;
+
+  SocketOverrideClient(InetSocketAddress agentAddress, String secret, OverrideCodec codec) {
+    Preconditions.checkArgument(!secret.isEmpty(), "The secret must not be empty");
+    this.agentAddress = agentAddress;
+    this.secret = secret.getBytes(Charsets.UTF_8);
+    this.codec = codec;
+  }
+
+  byte[] setOperation(String testId, String key, Object override) {
+    byte[] value = codec.encode(override);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(value.length + 64);
+    DataOutputStream operation = new DataOutputStream(bytes);
+    try {
+      operation.writeByte(SocketOverrideAgent.SET);
+      operation.writeUTF(testId);
+      operation.writeUTF(key);
+      operation.writeInt(value.length);
+      operation.write(value);
+    } catch (IOException e) {
+      // Can't happen with a ByteArrayOutputStream
+      throw new RuntimeException(e);
+    }
+    return bytes.toByteArray();
+  }
+
+  byte[] resetOperation(String testId, String key) {
+    return operation(SocketOverrideAgent.RESET, testId, key);
+  }
+
+  byte[] resetTestOperation(String testId) {
+    return operation(SocketOverrideAgent.RESET_TEST, testId);
+  }
+
+  private static byte[] operation(byte type, String... arguments) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream operation = new DataOutputStream(bytes);
+    try {
+      operation.writeByte(type);
+      for (String argument : arguments) {
+        operation.writeUTF(argument);
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return bytes.toByteArray();
+  }
+
+  void send(byte[] operation, boolean sync) {
+    send(ImmutableList.of(operation), sync);
+  }
+
+  /**
+   * Sends the given {@code operations}, in order. If {@code sync}, waits for
+   * the agent to have applied them (and any previously sent ones).
+   *
+   * @throws IllegalStateException if the agent failed to apply any operation
+   *   sent since the last sync.
+   */
+  synchronized void send(List<byte[]> operations, boolean sync) {
+    try {
+      connectIfNeeded();
+      for (byte[] operation : operations) {
+        out.write(operation);
+      }
+      if (sync) {
+        out.writeByte(SocketOverrideAgent.SYNC);
+      }
+      out.flush();
+      if (sync && !in.readBoolean()) {
+        throw new IllegalStateException(String.format(
+            "The override agent at '%s' failed to apply an override: %s",
+            agentAddress, in.readUTF()));
+      }
+    } catch (IOException e) {
+      disconnect();
+      throw new RuntimeException(String.format(
+          "Could not send overrides to the override agent at '%s'.", agentAddress), e);
+    }
+  }
+
+  private void connectIfNeeded() throws IOException {
+    if (socket != null) {
+      return;
+    }
+    Socket newSocket = new Socket(agentAddress.getAddress(), agentAddress.getPort());
+    socket = newSocket;
+    newSocket.setTcpNoDelay(true);
+    in = new DataInputStream(new BufferedInputStream(newSocket.getInputStream()));
+    out = new DataOutputStream(new BufferedOutputStream(newSocket.getOutputStream()));
+    byte[] challenge = new byte[SocketOverrideAgent.CHALLENGE_LENGTH];
+    in.readFully(challenge);
+    out.write(SocketOverrideAgent.answer(secret, challenge));
+    out.flush();
+    if (!in.readBoolean()) {
+      throw new IOException("The override agent rejected the secret.");
+    }
+  }
+
+  private void disconnect() {
+    try {
+      if (socket != null) {
+        socket.close();
+      }
+    } catch (IOException e) {
+      // Nothing left to do
+    } finally {
+      socket = null;
+      in = null;
+      out = null;
+    }
+  }
+}
@@ -16,10 +16,13 @@
 package com.google.guiceberry.controllable;
 
 import com.google.common.collect.Maps;
+import com.google.guiceberry.TestId;
+import com.google.inject.Key;
 import com.google.inject.Provider;
 import com.google.guiceberry.controllable.IcStrategy;
 
-import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The {@link #strategy()} static factory method gives forth the 
@@ -31,41 +34,119 @@ import java.util.Map;
  * static var needs to be shared between test and server Injector, i.e. running
  * in the same JVM and same (or child) ClassLoader. 
  * 
+ * <p>It is safe to use by tests running in parallel, and by server threads
+ * running concurrently with them. The overrides of each test are kept apart,
+ * so that the server finds an override with a single lookup per test and per
+ * key, and all the overrides of a test are dropped at once when it is torn
+ * down.
+ * 
  * @author Luiz-Otavio Zorzella
  */
 public final class StaticMapInjectionController {
 
-  private static final Map<ControllableId<?>,Object> map = Maps.newHashMap();
+  private static final ConcurrentMap<TestId, TestOverrides> map = Maps.newConcurrentMap();
+
+  /**
+   * The overrides of a single test. Tests only ever change their own
+   * overrides, so the lock is only contended if a test sets an override while
+   * being torn down. The server never takes it.
+   */
+  private static final class TestOverrides {
+    
+    final ConcurrentMap<Key<?>, Object> keyToOverrideMap = Maps.newConcurrentMap();
+    
+    // Guarded by this
+    boolean dropped;
+  }
+
+  /**
+   * The number of tests that have (or had, and were not yet torn down) an
+   * override, i.e. the size of {@link #map}, but a volatile read away. While
+   * this is zero, server Injectors skip Controllable Injection altogether.
+   */
+  private static final AtomicInteger testsWithOverrides = new AtomicInteger();
+
+  private static final InterceptingBindingsBuilder.Gate ANY_OVERRIDE_GATE =
+    new InterceptingBindingsBuilder.Gate() {
+      public boolean isOpen() {
+        return testsWithOverrides.get() != 0;
+      }
+    };
 
   public static IcStrategy strategy() {
-    return new IcStrategy(IcClientStrategyImpl.class, IcServerStrategyImpl.class);
+    return new IcStrategy(
+        IcClientStrategyImpl.class, IcServerStrategyImpl.class, ANY_OVERRIDE_GATE);
   }
 
-  private static final class IcClientStrategyImpl implements IcStrategy.ClientSupport {
+  private static final class IcClientStrategyImpl implements IcStrategy.TestPartitionedClientSupport {
     public <T> void setOverride(ControllableId<T> pair, T override) {
-      map.put(pair, override);
+      TestId testId = pair.getTestId();
+      while (true) {
+        TestOverrides testOverrides = map.get(testId);
+        if (testOverrides == null) {
+          TestOverrides newTestOverrides = new TestOverrides();
+          testOverrides = map.putIfAbsent(testId, newTestOverrides);
+          if (testOverrides == null) {
+            testOverrides = newTestOverrides;
+            testsWithOverrides.incrementAndGet();
+          }
+        }
+        synchronized (testOverrides) {
+          if (!testOverrides.dropped) {
+            testOverrides.keyToOverrideMap.put(pair.getKey(), override);
+            return;
+          }
+        }
+        // Lost a race with resetOverrides -- start over with a new one
+      }
     }
 
     public <T> void resetOverride(ControllableId<T> controllableId) {
-      map.remove(controllableId);
+      TestOverrides testOverrides = map.get(controllableId.getTestId());
+      if (testOverrides != null) {
+        testOverrides.keyToOverrideMap.remove(controllableId.getKey());
+      }
+    }
+
+    public void resetOverrides(TestId testId) {
+      TestOverrides testOverrides = map.get(testId);
+      if (testOverrides != null) {
+        synchronized (testOverrides) {
+          if (!testOverrides.dropped) {
+            testOverrides.dropped = true;
+            map.remove(testId, testOverrides);
+            testsWithOverrides.decrementAndGet();
+          }
+        }
+      }
     }
   }
   
-  private static final class IcServerStrategyImpl implements IcStrategy.ServerSupport {
-    @SuppressWarnings("unchecked")
+  private static final class IcServerStrategyImpl implements IcStrategy.SingleLookupServerSupport {
     public <T> T getOverride(
         ControllableId<T> controllableId, 
         Provider<? extends T> delegate) {
-      if (!map.containsKey(controllableId)) {
+      T result = getOverrideIfControlled(controllableId);
+      if (result == null) {
         throw new IllegalArgumentException(String.format(
             "The injection of '%s' is not currently being controlled.", 
             controllableId.toString()));
       }
-      return (T) map.get(controllableId);
+      return result;
     }
 
     public <T> boolean isControlled(ControllableId<T> controllableId) {
-      return map.containsKey(controllableId);
+      return getOverrideIfControlled(controllableId) != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T getOverrideIfControlled(ControllableId<T> controllableId) {
+      TestOverrides testOverrides = map.get(controllableId.getTestId());
+      if (testOverrides == null) {
+        return null;
+      }
+      // Overrides are never null (see InjectionController#setOverride)
+      return (T) testOverrides.keyToOverrideMap.get(controllableId.getKey());
     }
   }
-}
\ No newline at end of file
+}
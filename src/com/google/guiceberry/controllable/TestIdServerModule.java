@@ -15,22 +15,13 @@
  */
 package com.google.guiceberry.controllable;
 
-import com.google.common.collect.ImmutableMultimap;
-import com.google.common.collect.Multimap;
 import com.google.inject.AbstractModule;
-import com.google.inject.BindingAnnotation;
 import com.google.inject.Module;
 import com.google.inject.Provider;
 import com.google.inject.Provides;
 import com.google.inject.servlet.RequestScoped;
 import com.google.guiceberry.TestId;
 
-import java.lang.annotation.ElementType;
-import java.lang.annotation.Retention;
-import java.lang.annotation.RetentionPolicy;
-import java.lang.annotation.Target;
-import java.util.Collection;
-
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
 
@@ -44,39 +35,31 @@ import javax.servlet.http.HttpServletRequest;
  */
 public class TestIdServerModule extends AbstractModule {
 
-  @Retention(RetentionPolicy.RUNTIME)
-  @Target({ElementType.FIELD, ElementType.PARAMETER, ElementType.METHOD})
-  @BindingAnnotation
-  @interface CookieMap {}
-  
+  /**
+   * Returns the {@link TestId} of the test that sent the current request, or
+   * {@code null} if it was not sent by a test.
+   */
   @Provides
   @RequestScoped
-  TestId get(@CookieMap Multimap<String,Cookie> cookieMap) {
-    Collection<Cookie> temp = cookieMap.get(TestId.COOKIE_NAME);
-    if (temp.size() > 1) {
-      throw new IllegalStateException(String.format(
-          "There's more than one Cookie named '%s'.", TestId.COOKIE_NAME));
-    } else if (temp.size() == 0) {
+  TestId get(HttpServletRequest httpServletRequest) {
+    Cookie[] cookies = httpServletRequest.getCookies();
+    if (cookies == null) {
       return null;
     }
-    return new TestId(temp.iterator().next());
-  }
-
-  @Provides
-  @CookieMap
-  @RequestScoped
-  Multimap<String,Cookie> getCookieMap(
-      Provider<HttpServletRequest> httpServletRequestProvider) {
-    
-    Cookie[] cookies = httpServletRequestProvider.get().getCookies();
-    ImmutableMultimap.Builder<String, Cookie> temp = 
-      new ImmutableMultimap.Builder<String, Cookie>();
-    if (cookies != null) {
-      for (Cookie cookie : cookies) {
-        temp.put(cookie.getName(), cookie);
+    Cookie testIdCookie = null;
+    for (Cookie cookie : cookies) {
+      if (TestId.COOKIE_NAME.equals(cookie.getName())) {
+        if (testIdCookie != null) {
+          throw new IllegalStateException(String.format(
+              "There's more than one Cookie named '%s'.", TestId.COOKIE_NAME));
+        }
+        testIdCookie = cookie;
       }
     }
-    return temp.build();
+    if (testIdCookie == null) {
+      return null;
+    }
+    return new TestId(testIdCookie);
   }
 
   @Override
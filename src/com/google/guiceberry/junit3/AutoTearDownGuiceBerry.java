@@ -28,6 +28,10 @@ import junit.framework.TestCase;
 /**
  * {@link GuiceBerry} adapter for JUnit3 {@link TearDownAccepter}s.
  *
+ * <p>To end the {@link com.google.guiceberry.TestClassScoped} scope once all
+ * tests of a class have run, see
+ * {@link ManualTearDownGuiceBerry#suiteFinishingTestClass}.
+ *
  * @see ManualTearDownGuiceBerry
  *
  * @author Luiz-Otavio "Z" Zorzella
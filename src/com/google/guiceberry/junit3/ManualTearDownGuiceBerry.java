@@ -20,10 +20,14 @@ import com.google.guiceberry.DefaultEnvSelector;
 import com.google.guiceberry.GuiceBerry;
 import com.google.guiceberry.GuiceBerry.GuiceBerryWrapper;
 import com.google.guiceberry.GuiceBerryEnvSelector;
+import com.google.guiceberry.TestClassScoped;
 import com.google.guiceberry.TestDescription;
 import com.google.inject.Module;
 
+import junit.extensions.TestSetup;
+import junit.framework.Test;
 import junit.framework.TestCase;
+import junit.framework.TestSuite;
 
 /**
  * {@link GuiceBerry} adapter for vanilla JUnit3 tests (i.e. {@link TestCase}s
@@ -72,6 +76,29 @@ public class ManualTearDownGuiceBerry {
     };
   }
 
+  /**
+   * Returns a suite of all tests of the given {@code testClass} that, once
+   * they have all run, ends its {@link TestClassScoped} scope (see
+   * {@link GuiceBerry#finishTestClass}). JUnit3 has no hook for the end of a
+   * test class, so, to get one, a test class declares:
+   *
+   * <pre>
+   *   public static Test suite() {
+   *     return ManualTearDownGuiceBerry.suiteFinishingTestClass(MyTest.class);
+   *   }
+   * </pre>
+   *
+   * Otherwise, the scope ends when the JVM exits.
+   */
+  public static Test suiteFinishingTestClass(final Class<? extends TestCase> testClass) {
+    return new TestSetup(new TestSuite(testClass)) {
+      @Override
+      protected void tearDown() {
+        GuiceBerry.INSTANCE.finishTestClass(testClass);
+      }
+    };
+  }
+
   static TestDescription buildTestDescription(TestCase testCase, String methodName) {
     String testCaseName = testCase.getClass().getName();
     return new TestDescription(testCase, testCaseName + "." + methodName);
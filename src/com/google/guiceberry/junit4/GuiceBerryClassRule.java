@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.guiceberry.junit4;
+
+import com.google.guiceberry.GuiceBerry;
+import com.google.guiceberry.SuiteScoped;
+import com.google.guiceberry.TestClassScoped;
+
+import org.junit.ClassRule;
+import org.junit.rules.TestRule;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+/**
+ * A {@link ClassRule} that ends the {@link TestClassScoped} scope of a test
+ * class once all of its tests have run, through
+ * {@link GuiceBerry#finishTestClass}. Use it alongside a
+ * {@link GuiceBerryRule} or {@link GuiceBerryTestRule}, which only see
+ * individual tests:
+ *
+ * <pre>
+ * {@literal @}ClassRule
+ * public static final GuiceBerryClassRule CLASS_SCOPE = GuiceBerryClassRule.forTestClass();
+ *
+ * {@literal @}Rule
+ * public final GuiceBerryRule guiceBerry = new GuiceBerryRule(MyEnv.class);
+ * </pre>
+ *
+ * <p>Used on a {@link org.junit.runners.Suite}, {@link #forSuite()} also
+ * ends the {@link SuiteScoped} scope once the whole suite has run, through
+ * {@link GuiceBerry#finishSuite}.
+ *
+ * <p>Without this rule, these scopes end when the JVM exits.
+ *
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public final class GuiceBerryClassRule implements TestRule {
+
+  private final boolean suite;
+
+  private GuiceBerryClassRule(boolean suite) {
+    this.suite = suite;
+  }
+
+  /**
+   * Ends the {@link TestClassScoped} scope of the annotated test class.
+   */
+  public static GuiceBerryClassRule forTestClass() {
+    return new GuiceBerryClassRule(false);
+  }
+
+  /**
+   * Ends the {@link TestClassScoped} scope of every test class still
+   * unfinished, and then the {@link SuiteScoped} scope, once the annotated
+   * suite has run.
+   */
+  public static GuiceBerryClassRule forSuite() {
+    return new GuiceBerryClassRule(true);
+  }
+
+  public Statement apply(final Statement base, final Description description) {
+    return new Statement() {
+      @Override
+      public void evaluate() throws Throwable {
+        try {
+          base.evaluate();
+        } finally {
+          if (suite) {
+            GuiceBerry.INSTANCE.finishSuite();
+          } else {
+            GuiceBerry.INSTANCE.finishTestClass(description.getTestClass());
+          }
+        }
+      }
+    };
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.guiceberry.junit4;
+
+import com.google.common.base.Function;
+import com.google.guiceberry.util.EnvOrdering;
+import com.google.guiceberry.util.TestClassEnvResolver;
+
+import org.junit.runner.Runner;
+import org.junit.runners.Suite;
+import org.junit.runners.model.InitializationError;
+import org.junit.runners.model.RunnerBuilder;
+
+import java.util.List;
+
+/**
+ * A {@link Suite} that runs its test classes grouped by GuiceBerry Env (see
+ * {@link EnvOrdering}), rather than in the order they are listed, so that each
+ * Env is booted once, and all the tests using it run while it is:
+ *
+ * <pre>
+ * {@literal @}RunWith(GuiceBerryEnvOrderedSuite.class)
+ * {@literal @}SuiteClasses({FooTest.class, BarTest.class, BazTest.class})
+ * public class AllTests {}
+ * </pre>
+ *
+ * <p>See {@link TestClassEnvResolver} for how the Env of a test class is found.
+ * Nested suites are ordered among the test classes whose Env is unknown, so
+ * they should rather be flattened into a single one of these.
+ *
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public class GuiceBerryEnvOrderedSuite extends Suite {
+
+  public GuiceBerryEnvOrderedSuite(Class<?> klass, RunnerBuilder builder)
+      throws InitializationError {
+    super(klass, orderByEnv(builder.runners(klass, getSuiteClasses(klass))));
+  }
+
+  private static Class<?>[] getSuiteClasses(Class<?> klass) throws InitializationError {
+    SuiteClasses annotation = klass.getAnnotation(SuiteClasses.class);
+    if (annotation == null) {
+      throw new InitializationError(String.format(
+          "class '%s' must have a SuiteClasses annotation", klass.getName()));
+    }
+    return annotation.value();
+  }
+
+  private static List<Runner> orderByEnv(List<Runner> runners) {
+    return EnvOrdering.orderByEnv(runners, new Function<Runner, Class<?>>() {
+      public Class<?> apply(Runner runner) {
+        return runner.getDescription().getTestClass();
+      }
+    });
+  }
+}
@@ -32,6 +32,10 @@ import org.junit.runners.model.Statement;
  * <p>If you are looking for a {@link TestRule}, see {@link GuiceBerryTestRule}. Note that the
  * {@link MethodRule} is the preferred implementation to use for being less error-prone.
  *
+ * <p>A rule only sees individual tests; to end the
+ * {@link com.google.guiceberry.TestClassScoped} scope once all tests of a
+ * class have run, also use a {@link GuiceBerryClassRule}.
+ *
  * @author Luiz-Otavio "Z" Zorzella
  */
 public class GuiceBerryRule implements MethodRule {
@@ -46,6 +50,13 @@ public class GuiceBerryRule implements MethodRule {
     this.guiceBerryEnvSelector = guiceBerryEnvSelector;
   }
 
+  /**
+   * Returns the {@link GuiceBerryEnvSelector} this rule sets tests up with.
+   */
+  public GuiceBerryEnvSelector getGuiceBerryEnvSelector() {
+    return guiceBerryEnvSelector;
+  }
+
   public Statement apply(final Statement base, final FrameworkMethod method, final Object target) {
     return buildStatement(base, guiceBerryEnvSelector, target, method.getName());
   }
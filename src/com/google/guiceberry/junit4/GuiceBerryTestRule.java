@@ -28,6 +28,10 @@ import org.junit.runners.model.Statement;
  *
  * <p>You may want to use the less error-prone {@link GuiceBerryRule} when a
  * TestRule is not necessary.
+ *
+ * <p>As with {@link GuiceBerryRule}, use a {@link GuiceBerryClassRule} to end
+ * the {@link com.google.guiceberry.TestClassScoped} scope once all tests of a
+ * class have run.
  * 
  * @author David M. Hull
  */
@@ -56,6 +60,13 @@ public final class GuiceBerryTestRule implements TestRule {
     this(target, DefaultEnvSelector.of(envClass));
   }
 
+  /**
+   * Returns the {@link GuiceBerryEnvSelector} this rule sets tests up with.
+   */
+  public GuiceBerryEnvSelector getGuiceBerryEnvSelector() {
+    return guiceBerryEnvSelector;
+  }
+
   public Statement apply(Statement base, Description description) {
     if (!description.getTestClass().isInstance(target)) {
       throw new IllegalArgumentException(
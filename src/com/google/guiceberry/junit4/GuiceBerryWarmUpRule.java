@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.guiceberry.junit4;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Sets;
+import com.google.guiceberry.GuiceBerry;
+import com.google.guiceberry.util.TestClassEnvResolver;
+import com.google.inject.Module;
+
+import org.junit.ClassRule;
+import org.junit.rules.TestRule;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * A {@link ClassRule} that boots GuiceBerry Envs before any test runs, using
+ * {@link GuiceBerry#warmUp}. Without it, each Env is booted lazily by the
+ * first test that uses it, which then pays the full boot latency.
+ *
+ * <p>Used on a {@link org.junit.runners.Suite}, {@link #forAllTestClasses()}
+ * boots, concurrently, the Envs of every test class in the suite:
+ *
+ * <pre>
+ * {@literal @}RunWith(Suite.class)
+ * {@literal @}SuiteClasses({FooTest.class, BarTest.class})
+ * public class AllTests {
+ *   {@literal @}ClassRule
+ *   public static final GuiceBerryWarmUpRule WARM_UP = GuiceBerryWarmUpRule.forAllTestClasses();
+ * }
+ * </pre>
+ *
+ * <p>See {@link TestClassEnvResolver} for how the Env of a test class is found.
+ * The boot time of each Env is logged, at {@link java.util.logging.Level#INFO}.
+ *
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public final class GuiceBerryWarmUpRule implements TestRule {
+
+  private static final Logger logger = Logger.getLogger(GuiceBerryWarmUpRule.class.getName());
+
+  private final Set<Class<? extends Module>> envClasses;
+  private final boolean scanTestClasses;
+  private final int maxThreads;
+
+  private GuiceBerryWarmUpRule(
+      Set<Class<? extends Module>> envClasses, boolean scanTestClasses, int maxThreads) {
+    Preconditions.checkArgument(maxThreads > 0, "maxThreads must be positive");
+    this.envClasses = envClasses;
+    this.scanTestClasses = scanTestClasses;
+    this.maxThreads = maxThreads;
+  }
+
+  /**
+   * Boots the Envs of all test classes the annotated class (or suite)
+   * contains.
+   */
+  public static GuiceBerryWarmUpRule forAllTestClasses() {
+    return new GuiceBerryWarmUpRule(
+        Sets.<Class<? extends Module>>newLinkedHashSet(), true,
+        Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Boots the given {@code envClasses}.
+   */
+  public static GuiceBerryWarmUpRule forEnvs(Class<? extends Module>... envClasses) {
+    return new GuiceBerryWarmUpRule(
+        Sets.<Class<? extends Module>>newLinkedHashSet(Arrays.asList(envClasses)), false,
+        Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Returns a copy of this rule that boots at most {@code maxThreads} Envs at
+   * a time. The default is the number of available processors.
+   */
+  public GuiceBerryWarmUpRule withMaxThreads(int maxThreads) {
+    return new GuiceBerryWarmUpRule(envClasses, scanTestClasses, maxThreads);
+  }
+
+  public Statement apply(final Statement base, final Description description) {
+    return new Statement() {
+      @Override
+      public void evaluate() throws Throwable {
+        Set<Class<? extends Module>> toBoot = Sets.newLinkedHashSet(envClasses);
+        if (scanTestClasses) {
+          addEnvsOfTestClasses(description, Sets.<Class<?>>newHashSet(), toBoot);
+        }
+        Map<Class<? extends Module>, Long> bootTimes =
+          GuiceBerry.INSTANCE.warmUp(toBoot, maxThreads);
+        for (Map.Entry<Class<? extends Module>, Long> e : bootTimes.entrySet()) {
+          logger.info(String.format(
+              "GuiceBerry Env '%s' warmed up in %d ms.", e.getKey().getName(), e.getValue()));
+        }
+        base.evaluate();
+      }
+    };
+  }
+
+  private static void addEnvsOfTestClasses(Description description,
+      Set<Class<?>> visitedTestClasses, Set<Class<? extends Module>> result) {
+    Class<?> testClass = description.getTestClass();
+    if ((testClass != null) && visitedTestClasses.add(testClass)) {
+      Class<? extends Module> envClass = TestClassEnvResolver.resolve(testClass);
+      if (envClass != null) {
+        result.add(envClass);
+      }
+    }
+    for (Description child : description.getChildren()) {
+      addEnvsOfTestClasses(child, visitedTestClasses, result);
+    }
+  }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.guiceberry.testng;
+
+import com.google.common.base.Function;
+import com.google.guiceberry.util.AnnotatedGuiceBerryEnv;
+import com.google.guiceberry.util.EnvOrdering;
+
+import org.testng.IMethodInstance;
+import org.testng.IMethodInterceptor;
+import org.testng.ITestContext;
+
+import java.util.List;
+
+/**
+ * A TestNG {@link IMethodInterceptor} that runs test methods grouped by
+ * GuiceBerry Env (see {@link EnvOrdering}), so that each Env is booted once,
+ * and all the tests using it run while it is. Register it as a listener,
+ * e.g. through {@code @Listeners(GuiceBerryEnvOrderingInterceptor.class)} or
+ * the {@code <listeners>} of a {@code testng.xml}.
+ *
+ * <p>Since a TestNG test class hands its Env directly to
+ * {@link TestNgGuiceBerry#setUp}, where it can not be found ahead of time,
+ * test classes should also declare it through {@link AnnotatedGuiceBerryEnv}
+ * for their methods to be grouped (see
+ * {@link com.google.guiceberry.util.TestClassEnvResolver}).
+ *
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public class GuiceBerryEnvOrderingInterceptor implements IMethodInterceptor {
+
+  public List<IMethodInstance> intercept(
+      List<IMethodInstance> methods, ITestContext context) {
+    return EnvOrdering.orderByEnv(methods, new Function<IMethodInstance, Class<?>>() {
+      public Class<?> apply(IMethodInstance method) {
+        return method.getMethod().getRealClass();
+      }
+    });
+  }
+}
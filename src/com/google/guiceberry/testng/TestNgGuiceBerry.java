@@ -20,6 +20,8 @@ import com.google.guiceberry.DefaultEnvSelector;
 import com.google.guiceberry.GuiceBerry;
 import com.google.guiceberry.GuiceBerry.GuiceBerryWrapper;
 import com.google.guiceberry.GuiceBerryEnvSelector;
+import com.google.guiceberry.SuiteScoped;
+import com.google.guiceberry.TestClassScoped;
 import com.google.guiceberry.TestDescription;
 import com.google.inject.Module;
 
@@ -71,6 +73,24 @@ public class TestNgGuiceBerry {
     };
   }
 
+  /**
+   * Ends the {@link TestClassScoped} scope of the given {@code testClass}.
+   * A canonical test will call this method in an @AfterClass, passing
+   * {@code getClass()}. See {@link GuiceBerry#finishTestClass}.
+   */
+  public static void tearDownClass(Class<?> testClass) {
+    GuiceBerry.INSTANCE.finishTestClass(testClass);
+  }
+
+  /**
+   * Ends the {@link SuiteScoped} scope (and the {@link TestClassScoped} scope
+   * of every test class still unfinished). Call this in an @AfterSuite. See
+   * {@link GuiceBerry#finishSuite}.
+   */
+  public static void tearDownSuite() {
+    GuiceBerry.INSTANCE.finishSuite();
+  }
+
   static TestDescription buildTestDescription(Object testCase, String methodName) {
     String testCaseName = testCase.getClass().getName();
     return new TestDescription(testCase, testCaseName + "." + methodName);
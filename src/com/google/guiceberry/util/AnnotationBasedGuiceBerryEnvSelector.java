@@ -16,6 +16,7 @@
 package com.google.guiceberry.util;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Maps;
 import com.google.guiceberry.DefaultEnvSelector;
 import com.google.guiceberry.GuiceBerryEnvSelector;
 import com.google.guiceberry.TestDescription;
@@ -24,10 +25,15 @@ import com.google.guiceberry.junit3.AnnotationBasedManualTearDownGuiceBerry;
 import com.google.inject.Module;
 import com.google.inject.testing.guiceberry.GuiceBerryEnv;
 
+import java.util.concurrent.ConcurrentMap;
+
 /**
  * A {@link GuiceBerryEnvSelector} that is based on the {@link AnnotatedGuiceBerryEnv}
  * annotation, though it also honors the {@link DefaultEnvSelector}'s override.
  *
+ * <p>The annotation of each test class is only read, and the GuiceBerry Env
+ * it declares only loaded, the first time a test of that class is run.
+ *
  * @see AnnotationBasedManualTearDownGuiceBerry
  * @see AnnotationBasedAutoTearDownGuiceBerry
  *
@@ -36,17 +42,54 @@ import com.google.inject.testing.guiceberry.GuiceBerryEnv;
 public class AnnotationBasedGuiceBerryEnvSelector implements GuiceBerryEnvSelector {
 
   public static final GuiceBerryEnvSelector INSTANCE = new AnnotationBasedGuiceBerryEnvSelector();
+
+  /**
+   * The name of the GuiceBerry Env each test class declares.
+   */
+  private static final ConcurrentMap<Class<?>, String> testCaseClassToGbeNameMap =
+    Maps.newConcurrentMap();
+
+  /**
+   * The GuiceBerry Env each test class declares, when it is not overridden.
+   * Overrides are checked before this, so this need not be invalidated when
+   * they change.
+   */
+  private static final ConcurrentMap<Class<?>, Class<? extends Module>> testCaseClassToGbeClassMap =
+    Maps.newConcurrentMap();
+
   public Class<? extends Module> guiceBerryEnvToUse(TestDescription testDescription) {
-    String gbeName = getGbeNameFromGbeAnnotation(testDescription);
+    return envOf(testDescription.getTestCaseClass());
+  }
+
+  /**
+   * Returns the GuiceBerry Env the tests of {@code testCaseClass} use, which
+   * only depends on the class's annotation (and the overrides).
+   */
+  static Class<? extends Module> envOf(Class<?> testCaseClass) {
+    String gbeName = testCaseClassToGbeNameMap.get(testCaseClass);
+    if (gbeName == null) {
+      gbeName = getGbeNameFromGbeAnnotation(testCaseClass);
+      testCaseClassToGbeNameMap.putIfAbsent(testCaseClass, gbeName);
+    }
     
     if (DefaultEnvSelector.isOverridden(gbeName)) {
-      return DefaultEnvSelector.of(gbeName).guiceBerryEnvToUse(testDescription);
+      return DefaultEnvSelector.envToUse(gbeName);
+    }
+
+    Class<? extends Module> result = testCaseClassToGbeClassMap.get(testCaseClass);
+    if (result == null) {
+      result = getDeclaredGbeClass(testCaseClass, gbeName);
+      testCaseClassToGbeClassMap.putIfAbsent(testCaseClass, result);
     }
+    return result;
+  }
 
+  private static Class<? extends Module> getDeclaredGbeClass(
+      Class<?> testCaseClass, String gbeName) {
     Class<? extends Module> gbeClass = getGbeClassFromClassName(gbeName);
     if (!Module.class.isAssignableFrom(gbeClass)) {
       String annotationName;
-      if (isOldAnnotation(testDescription.getTestCaseClass())) {
+      if (isOldAnnotation(testCaseClass)) {
         annotationName = GuiceBerryEnv.class.getSimpleName();
       } else {
         annotationName = AnnotatedGuiceBerryEnv.class.getSimpleName();
@@ -62,7 +105,10 @@ public class AnnotationBasedGuiceBerryEnvSelector implements GuiceBerryEnvSelect
   
   @VisibleForTesting
   static String getGbeNameFromGbeAnnotation(TestDescription testDescription) {
-    Class<?> testCaseClass = testDescription.getTestCaseClass();
+    return getGbeNameFromGbeAnnotation(testDescription.getTestCaseClass());
+  }
+
+  private static String getGbeNameFromGbeAnnotation(Class<?> testCaseClass) {
     GuiceBerryEnv gbeAnnotation = getGbeAnnotation(testCaseClass);
     AnnotatedGuiceBerryEnv annotatedGbeAnnotation = getAnnotatedGbeAnnotation(testCaseClass);
 
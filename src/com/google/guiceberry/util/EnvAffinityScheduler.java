@@ -0,0 +1,371 @@
+/*
+ * Copyright (C) 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.guiceberry.util;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+import com.google.inject.Module;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Splits the test classes of a suite among a number of worker JVMs (e.g. the
+ * forks of a test run) so that each GuiceBerry Env is booted in as few of
+ * them as possible, while the workers still get about the same amount of
+ * work, as measured by how long each test class took in previous runs.
+ *
+ * <p>The test classes of an Env (see {@link TestClassEnvResolver}) all go to
+ * the same worker, unless they would take longer than a worker's fair share
+ * of the whole run, in which case they are split among as few workers as
+ * that allows. Test classes whose Env is unknown go wherever there is room.
+ * Each worker's test classes are grouped by Env, like {@link EnvOrdering}
+ * does.
+ *
+ * <p>{@link #main} writes the workers' test classes to files that can be used
+ * as the {@code includesfile} of the {@code <fileset>} of each worker's Ant
+ * {@code <batchtest>}, run with {@code forkmode="perBatch"} so that a worker
+ * is a single JVM. Past durations are read from the plain-text JUnit reports
+ * of the previous run (see {@link #readJunitReports}).
+ *
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public final class EnvAffinityScheduler {
+
+  /**
+   * How long a test class is assumed to take, in milliseconds, when there is
+   * no past duration for it, nor for any other test class.
+   */
+  static final long DEFAULT_DURATION_MILLIS = 1000;
+
+  private static final Pattern TEST_SUITE_PATTERN = Pattern.compile("^Testsuite: (\\S+)$");
+  private static final Pattern TIME_ELAPSED_PATTERN =
+    Pattern.compile("Time elapsed: ([0-9.]+) sec");
+
+  private EnvAffinityScheduler() {}
+
+  /**
+   * Returns the test classes of each GuiceBerry Env, in the order of their
+   * first test class, leaving out the test classes whose Env is unknown.
+   */
+  public static Map<Class<? extends Module>, List<Class<?>>> envToTestClassesMap(
+      Iterable<? extends Class<?>> testClasses) {
+    Map<Class<? extends Module>, List<Class<?>>> result = Maps.newLinkedHashMap();
+    for (Map.Entry<Optional<Class<? extends Module>>, List<Class<?>>> e
+        : groupByEnv(testClasses).entrySet()) {
+      if (e.getKey().isPresent()) {
+        result.put(e.getKey().get(), e.getValue());
+      }
+    }
+    return result;
+  }
+
+  private static Map<Optional<Class<? extends Module>>, List<Class<?>>> groupByEnv(
+      Iterable<? extends Class<?>> testClasses) {
+    Map<Optional<Class<? extends Module>>, List<Class<?>>> result = Maps.newLinkedHashMap();
+    for (Class<?> testClass : testClasses) {
+      Optional<Class<? extends Module>> env = TestClassEnvResolver.resolveQuietly(testClass);
+      List<Class<?>> envTestClasses = result.get(env);
+      if (envTestClasses == null) {
+        envTestClasses = Lists.newArrayList();
+        result.put(env, envTestClasses);
+      }
+      if (!envTestClasses.contains(testClass)) {
+        envTestClasses.add(testClass);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Splits {@code testClasses} among {@code workers} workers, given how many
+   * milliseconds some of them took in the past (keyed by class name). Returns
+   * one list of test classes per worker, some of which may be empty.
+   */
+  public static List<List<Class<?>>> partition(Iterable<? extends Class<?>> testClasses,
+      Map<String, Long> testClassNameToMillis, int workers) {
+    Preconditions.checkArgument(workers > 0, "workers must be positive");
+    Map<Optional<Class<? extends Module>>, List<Class<?>>> envToTestClassesMap =
+      groupByEnv(testClasses);
+
+    List<Class<?>> all = Lists.newArrayList();
+    for (List<Class<?>> envTestClasses : envToTestClassesMap.values()) {
+      all.addAll(envTestClasses);
+    }
+    Map<Class<?>, Long> durations = estimateDurations(all, testClassNameToMillis);
+    long total = 0;
+    for (long duration : durations.values()) {
+      total += duration;
+    }
+    long fairShare = Math.max(1, (total + workers - 1) / workers);
+
+    // The test classes that must run together, i.e. in the same worker
+    List<Chunk> chunks = Lists.newArrayList();
+    for (Map.Entry<Optional<Class<? extends Module>>, List<Class<?>>> e
+        : envToTestClassesMap.entrySet()) {
+      if (e.getKey().isPresent()) {
+        chunks.addAll(split(e.getKey(), e.getValue(), durations, fairShare));
+      } else {
+        // No Env to share: each can go anywhere
+        for (Class<?> testClass : e.getValue()) {
+          chunks.addAll(split(e.getKey(), Collections.<Class<?>>singletonList(testClass),
+              durations, fairShare));
+        }
+      }
+    }
+
+    // Longest first, each to the least busy worker (a stable sort, so equal
+    // chunks keep the order of their Envs)
+    Collections.sort(chunks, LONGEST_FIRST);
+    List<Worker> allWorkers = Lists.newArrayList();
+    for (int i = 0; i < workers; i++) {
+      allWorkers.add(new Worker());
+    }
+    for (Chunk chunk : chunks) {
+      Collections.min(allWorkers, SHORTEST_FIRST).add(chunk);
+    }
+
+    List<List<Class<?>>> result = Lists.newArrayList();
+    for (Worker worker : allWorkers) {
+      List<Class<?>> workerTestClasses = Lists.newArrayList();
+      for (List<Class<?>> envTestClasses : worker.envToTestClassesMap.values()) {
+        workerTestClasses.addAll(envTestClasses);
+      }
+      result.add(workerTestClasses);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the past duration of each of {@code testClasses}, or, for those
+   * that have none, the average of the others.
+   */
+  private static Map<Class<?>, Long> estimateDurations(
+      List<Class<?>> testClasses, Map<String, Long> testClassNameToMillis) {
+    long knownTotal = 0;
+    int knownCount = 0;
+    for (Class<?> testClass : testClasses) {
+      Long millis = testClassNameToMillis.get(testClass.getName());
+      if (millis != null) {
+        knownTotal += millis;
+        knownCount++;
+      }
+    }
+    long unknown = (knownCount == 0) ? DEFAULT_DURATION_MILLIS : knownTotal / knownCount;
+    Map<Class<?>, Long> result = Maps.newHashMap();
+    for (Class<?> testClass : testClasses) {
+      Long millis = testClassNameToMillis.get(testClass.getName());
+      // Even an instant test class costs something to run
+      result.put(testClass, Math.max(1, (millis == null) ? unknown : millis));
+    }
+    return result;
+  }
+
+  /**
+   * Splits the test classes of an Env into as few chunks as needed for none
+   * to take (much) longer than {@code fairShare}.
+   */
+  private static List<Chunk> split(Optional<Class<? extends Module>> env,
+      List<Class<?>> testClasses, Map<Class<?>, Long> durations, long fairShare) {
+    long total = 0;
+    for (Class<?> testClass : testClasses) {
+      total += durations.get(testClass);
+    }
+    int count = (int) Math.min(testClasses.size(), (total + fairShare - 1) / fairShare);
+    List<Chunk> result = Lists.newArrayList();
+    for (int i = 0; i < count; i++) {
+      result.add(new Chunk(env));
+    }
+    List<Class<?>> longestFirst = Lists.newArrayList(testClasses);
+    Collections.sort(longestFirst, byDuration(durations));
+    for (Class<?> testClass : longestFirst) {
+      Chunk chunk = Collections.min(result, SHORTEST_FIRST);
+      chunk.testClasses.add(testClass);
+      chunk.millis += durations.get(testClass);
+    }
+    // Within a chunk, test classes keep the order they were given in
+    for (Chunk chunk : result) {
+      List<Class<?>> inOrder = Lists.newArrayList(testClasses);
+      inOrder.retainAll(chunk.testClasses);
+      chunk.testClasses.clear();
+      chunk.testClasses.addAll(inOrder);
+    }
+    return result;
+  }
+
+  private static Comparator<Class<?>> byDuration(final Map<Class<?>, Long> durations) {
+    return new Comparator<Class<?>>() {
+      public int compare(Class<?> one, Class<?> other) {
+        return durations.get(other).compareTo(durations.get(one));
+      }
+    };
+  }
+
+  /**
+   * Some amount of work, in milliseconds.
+   */
+  private static class Load {
+    long millis;
+  }
+
+  /**
+   * Test classes of the same Env that are to run in the same worker.
+   */
+  private static final class Chunk extends Load {
+    final Optional<Class<? extends Module>> env;
+    final List<Class<?>> testClasses = Lists.newArrayList();
+
+    Chunk(Optional<Class<? extends Module>> env) {
+      this.env = env;
+    }
+  }
+
+  private static final class Worker extends Load {
+    final Map<Optional<Class<? extends Module>>, List<Class<?>>> envToTestClassesMap =
+      Maps.newLinkedHashMap();
+
+    void add(Chunk chunk) {
+      millis += chunk.millis;
+      List<Class<?>> envTestClasses = envToTestClassesMap.get(chunk.env);
+      if (envTestClasses == null) {
+        envTestClasses = Lists.newArrayList();
+        envToTestClassesMap.put(chunk.env, envTestClasses);
+      }
+      envTestClasses.addAll(chunk.testClasses);
+    }
+  }
+
+  private static final Comparator<Load> LONGEST_FIRST = new Comparator<Load>() {
+    public int compare(Load one, Load other) {
+      return (one.millis > other.millis) ? -1 : ((one.millis == other.millis) ? 0 : 1);
+    }
+  };
+
+  // Collections.min returns the first of equal elements, i.e. the lowest worker
+  private static final Comparator<Load> SHORTEST_FIRST = new Comparator<Load>() {
+    public int compare(Load one, Load other) {
+      return (one.millis < other.millis) ? -1 : ((one.millis == other.millis) ? 0 : 1);
+    }
+  };
+
+  /**
+   * Reads how many milliseconds each test class took from the plain-text
+   * JUnit reports in {@code reportDir}, as written by Ant's {@code <junit>}
+   * task with a {@code <formatter type="plain"/>}. Returns an empty map if
+   * there are none.
+   */
+  public static Map<String, Long> readJunitReports(File reportDir) throws IOException {
+    Map<String, Long> result = Maps.newHashMap();
+    File[] reports = reportDir.listFiles();
+    if (reports == null) {
+      return result;
+    }
+    for (File report : reports) {
+      if (!report.getName().endsWith(".txt")) {
+        continue;
+      }
+      String testClassName = null;
+      for (String line : Files.readLines(report, Charsets.UTF_8)) {
+        Matcher testSuite = TEST_SUITE_PATTERN.matcher(line);
+        if (testSuite.matches()) {
+          testClassName = testSuite.group(1);
+          continue;
+        }
+        Matcher timeElapsed = TIME_ELAPSED_PATTERN.matcher(line);
+        if ((testClassName != null) && timeElapsed.find()) {
+          result.put(testClassName,
+              Math.round(Double.parseDouble(timeElapsed.group(1)) * 1000));
+          break;
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the source files, relative to the source root, of each worker's
+   * test classes in {@code partition}. Nested test classes map to the source
+   * file of their top-level class, and each source file is listed only once,
+   * for the first worker that has any of its test classes, so that no test
+   * class runs in two workers.
+   */
+  public static List<List<String>> sourceFiles(List<List<Class<?>>> partition) {
+    Set<String> seen = Sets.newHashSet();
+    List<List<String>> result = Lists.newArrayList();
+    for (List<Class<?>> worker : partition) {
+      List<String> sourceFiles = Lists.newArrayList();
+      for (Class<?> testClass : worker) {
+        String sourceFile = sourceFileOf(testClass);
+        if (seen.add(sourceFile)) {
+          sourceFiles.add(sourceFile);
+        }
+      }
+      result.add(sourceFiles);
+    }
+    return result;
+  }
+
+  private static String sourceFileOf(Class<?> testClass) {
+    String name = testClass.getName();
+    int nested = name.indexOf('$');
+    String topLevelName = (nested == -1) ? name : name.substring(0, nested);
+    return topLevelName.replace('.', '/') + ".java";
+  }
+
+  /**
+   * Usage: {@code EnvAffinityScheduler <workers> <reportDir> <outputDir>
+   * <testClassName>...}
+   *
+   * <p>Splits the given test classes among {@code workers} workers (see
+   * {@link #partition}), using the durations in the JUnit reports in
+   * {@code reportDir} (see {@link #readJunitReports}), and writes the source
+   * files of the test classes of worker {@code i} (see {@link #sourceFiles}) to
+   * {@code <outputDir>/worker-<i>.txt}, one per line.
+   */
+  public static void main(String[] args) throws IOException, ClassNotFoundException {
+    if (args.length < 3) {
+      System.err.println("Usage: " + EnvAffinityScheduler.class.getName()
+          + " <workers> <reportDir> <outputDir> <testClassName>...");
+      System.exit(1);
+    }
+    int workers = Integer.parseInt(args[0]);
+    Map<String, Long> durations = readJunitReports(new File(args[1]));
+    File outputDir = new File(args[2]);
+    List<Class<?>> testClasses = Lists.newArrayList();
+    for (int i = 3; i < args.length; i++) {
+      testClasses.add(Class.forName(args[i]));
+    }
+    List<List<String>> sourceFiles = sourceFiles(partition(testClasses, durations, workers));
+    outputDir.mkdirs();
+    for (int i = 0; i < sourceFiles.size(); i++) {
+      Files.asCharSink(new File(outputDir, "worker-" + i + ".txt"), Charsets.UTF_8)
+          .writeLines(sourceFiles.get(i));
+    }
+  }
+}
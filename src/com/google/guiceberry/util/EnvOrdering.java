@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.guiceberry.util;
+
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.inject.Module;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Orders tests so that all tests of a GuiceBerry Env run next to each other.
+ * Each Env then boots once, right before its first test, and (if the number
+ * of booted Envs is bounded, see
+ * {@link com.google.guiceberry.GuiceBerry#setMaxBootedEnvs}) is only evicted
+ * once all of its tests have run.
+ *
+ * <p>Envs are ordered by their first test, and tests of the same Env keep
+ * their relative order, so tests of the same class stay together. Test
+ * classes whose Env can not be resolved ahead of time (see
+ * {@link TestClassEnvResolver}) are kept together as well, as if they all
+ * shared an Env.
+ *
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public final class EnvOrdering {
+
+  private EnvOrdering() {}
+
+  /**
+   * Returns the given {@code tests}, grouped by the GuiceBerry Env of the
+   * test class {@code testClassOf} returns for each.
+   */
+  public static <T> List<T> orderByEnv(
+      Iterable<? extends T> tests, Function<? super T, ? extends Class<?>> testClassOf) {
+    Map<Class<?>, Optional<Class<? extends Module>>> testClassToEnvMap = Maps.newHashMap();
+    Map<Optional<Class<? extends Module>>, List<T>> envToTestsMap = Maps.newLinkedHashMap();
+    for (T test : tests) {
+      Class<?> testClass = testClassOf.apply(test);
+      Optional<Class<? extends Module>> env = testClassToEnvMap.get(testClass);
+      if (env == null) {
+        env = TestClassEnvResolver.resolveQuietly(testClass);
+        testClassToEnvMap.put(testClass, env);
+      }
+      List<T> envTests = envToTestsMap.get(env);
+      if (envTests == null) {
+        envTests = Lists.newArrayList();
+        envToTestsMap.put(env, envTests);
+      }
+      envTests.add(test);
+    }
+    List<T> result = Lists.newArrayList();
+    for (List<T> envTests : envToTestsMap.values()) {
+      result.addAll(envTests);
+    }
+    return result;
+  }
+}
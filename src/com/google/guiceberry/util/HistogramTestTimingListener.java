@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.guiceberry.util;
+
+import com.google.common.collect.Maps;
+import com.google.guiceberry.TestDescription;
+import com.google.guiceberry.TestTimingListener;
+import com.google.inject.Module;
+
+import java.io.PrintStream;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@link TestTimingListener} that aggregates the timings of all tests, per
+ * GuiceBerry Env and per test class, into histograms that can be
+ * {@link #dump}ed.
+ *
+ * <p>{@link #install()} returns an instance shared by all Envs that bind it,
+ * whose histograms are printed to {@link System#out} when the JVM exits:
+ *
+ * <pre>
+ * bind(TestTimingListener.class).toInstance(HistogramTestTimingListener.install());
+ * </pre>
+ *
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public final class HistogramTestTimingListener implements TestTimingListener {
+
+  private static final HistogramTestTimingListener SHARED = new HistogramTestTimingListener();
+
+  private static final AtomicBoolean dumpAtExit = new AtomicBoolean();
+
+  private final ConcurrentMap<String, PhaseHistograms> envNameToHistograms =
+    Maps.newConcurrentMap();
+  private final ConcurrentMap<String, PhaseHistograms> testClassNameToHistograms =
+    Maps.newConcurrentMap();
+
+  /**
+   * Builds an instance of its own, which prints nothing unless told to
+   * {@link #dump}.
+   */
+  public HistogramTestTimingListener() {}
+
+  /**
+   * Returns the instance shared by all callers, making sure its histograms
+   * are printed to {@link System#out} when the JVM exits.
+   */
+  public static HistogramTestTimingListener install() {
+    if (dumpAtExit.compareAndSet(false, true)) {
+      Runtime.getRuntime().addShutdownHook(new Thread("GuiceBerry timing dump") {
+        @Override
+        public void run() {
+          SHARED.dump(System.out);
+        }
+      });
+    }
+    return SHARED;
+  }
+
+  public void phaseFinished(Class<? extends Module> gbeClass, TestDescription testDescription,
+      Phase phase, long elapsedNanos) {
+    get(envNameToHistograms, gbeClass.getName()).record(phase, elapsedNanos);
+    get(testClassNameToHistograms, testDescription.getTestCaseClass().getName())
+        .record(phase, elapsedNanos);
+  }
+
+  /**
+   * Prints, to {@code out}, the histograms aggregated so far. This is what gets
+   * printed when the JVM exits, for the {@link #install()}ed instance.
+   */
+  public void dump(PrintStream out) {
+    if (envNameToHistograms.isEmpty()) {
+      return;
+    }
+    out.println("GuiceBerry per-test timings, per Env:");
+    dump(out, envNameToHistograms);
+    out.println("GuiceBerry per-test timings, per test class:");
+    dump(out, testClassNameToHistograms);
+  }
+
+  private static void dump(PrintStream out, Map<String, PhaseHistograms> nameToHistograms) {
+    SortedMap<String, PhaseHistograms> sorted = Maps.newTreeMap();
+    sorted.putAll(nameToHistograms);
+    for (Map.Entry<String, PhaseHistograms> e : sorted.entrySet()) {
+      out.println("  " + e.getKey());
+      for (Map.Entry<Phase, Histogram> phaseEntry : e.getValue().phaseToHistogram.entrySet()) {
+        Histogram histogram = phaseEntry.getValue();
+        if (histogram.count.get() > 0) {
+          out.println(String.format("    %-16s %s", phaseEntry.getKey(), histogram));
+        }
+      }
+    }
+  }
+
+  private static PhaseHistograms get(
+      ConcurrentMap<String, PhaseHistograms> nameToHistograms, String name) {
+    PhaseHistograms result = nameToHistograms.get(name);
+    if (result == null) {
+      nameToHistograms.putIfAbsent(name, new PhaseHistograms());
+      result = nameToHistograms.get(name);
+    }
+    return result;
+  }
+
+  private static final class PhaseHistograms {
+    private final Map<Phase, Histogram> phaseToHistogram =
+      new EnumMap<Phase, Histogram>(Phase.class);
+
+    PhaseHistograms() {
+      for (Phase phase : Phase.values()) {
+        phaseToHistogram.put(phase, new Histogram());
+      }
+    }
+
+    void record(Phase phase, long elapsedNanos) {
+      phaseToHistogram.get(phase).record(elapsedNanos);
+    }
+  }
+
+  /**
+   * A histogram with power-of-two nanosecond buckets, i.e. bucket {@code i}
+   * counts the timings {@code t} for which {@code 2^(i-1) <= t < 2^i}.
+   */
+  private static final class Histogram {
+    private final AtomicLongArray buckets = new AtomicLongArray(Long.SIZE);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    void record(long elapsedNanos) {
+      long nanos = Math.max(0, elapsedNanos);
+      buckets.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(nanos));
+      count.incrementAndGet();
+      totalNanos.addAndGet(nanos);
+      long max;
+      do {
+        max = maxNanos.get();
+      } while ((nanos > max) && !maxNanos.compareAndSet(max, nanos));
+    }
+
+    /**
+     * Returns an upper bound for the timing below which {@code fraction} of
+     * the timings fall.
+     */
+    private long percentileUpperBoundNanos(double fraction) {
+      long threshold = (long) Math.ceil(count.get() * fraction);
+      long seen = 0;
+      for (int i = 0; i < buckets.length(); i++) {
+        seen += buckets.get(i);
+        if (seen >= threshold) {
+          return Math.min(maxNanos.get(), (i == 0) ? 0 : (1L << i) - 1);
+        }
+      }
+      return maxNanos.get();
+    }
+
+    @Override
+    public String toString() {
+      long n = count.get();
+      return String.format(
+          "count=%d total=%dms mean=%dus p50<=%dus p90<=%dus p99<=%dus max=%dus",
+          n,
+          TimeUnit.NANOSECONDS.toMillis(totalNanos.get()),
+          TimeUnit.NANOSECONDS.toMicros(totalNanos.get() / Math.max(1, n)),
+          TimeUnit.NANOSECONDS.toMicros(percentileUpperBoundNanos(0.5)),
+          TimeUnit.NANOSECONDS.toMicros(percentileUpperBoundNanos(0.9)),
+          TimeUnit.NANOSECONDS.toMicros(percentileUpperBoundNanos(0.99)),
+          TimeUnit.NANOSECONDS.toMicros(maxNanos.get()));
+    }
+  }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.guiceberry.util;
+
+import com.google.common.base.Optional;
+import com.google.guiceberry.GuiceBerryEnvSelector;
+import com.google.guiceberry.TestDescription;
+import com.google.guiceberry.junit4.GuiceBerryRule;
+import com.google.guiceberry.junit4.GuiceBerryTestRule;
+import com.google.inject.Module;
+import com.google.inject.testing.guiceberry.GuiceBerryEnv;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+
+/**
+ * Finds out, ahead of running any of its tests, which GuiceBerry Env a test
+ * class uses. This is what makes it possible to, say, boot all the Envs a
+ * suite needs before its first test runs.
+ *
+ * <p>A test class is recognized as a GuiceBerry test if it is annotated with
+ * {@link AnnotatedGuiceBerryEnv} (or the deprecated {@link GuiceBerryEnv}), or
+ * if it has a {@link GuiceBerryRule} or {@link GuiceBerryTestRule} field. In
+ * the latter case only, the class is instantiated through its zero-arguments
+ * constructor to read the rule. Tests that pass their Env directly to, say,
+ * {@link com.google.guiceberry.junit3.ManualTearDownGuiceBerry} can not be
+ * recognized.
+ *
+ * <p>The Env is resolved through the test's actual
+ * {@link GuiceBerryEnvSelector}, so {@link com.google.guiceberry.DefaultEnvSelector}
+ * overrides are honored.
+ *
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public final class TestClassEnvResolver {
+
+  private TestClassEnvResolver() {}
+
+  /**
+   * Returns the GuiceBerry Env {@code testClass} uses, or {@code null} if it
+   * does not look like a GuiceBerry test.
+   */
+  public static Class<? extends Module> resolve(Class<?> testClass) {
+    if ((testClass.getAnnotation(AnnotatedGuiceBerryEnv.class) != null)
+        || (testClass.getAnnotation(GuiceBerryEnv.class) != null)) {
+      // The annotation alone says which Env: no need to run any test code
+      return AnnotationBasedGuiceBerryEnvSelector.envOf(testClass);
+    }
+    Field ruleField = findRuleField(testClass);
+    if (ruleField == null) {
+      return null;
+    }
+    Object testCase = instantiate(testClass);
+    GuiceBerryEnvSelector selector = getSelector(ruleField, testCase);
+    return selector.guiceBerryEnvToUse(
+        new TestDescription(testCase, testClass.getName() + ".resolve"));
+  }
+
+  /**
+   * Resolves the Env of {@code testClass}, if possible. A test class that
+   * can not even be instantiated -- including one that fails to link, or
+   * whose static initializer throws -- is left for its tests to fail on their
+   * own.
+   */
+  static Optional<Class<? extends Module>> resolveQuietly(Class<?> testClass) {
+    if (testClass == null) {
+      return Optional.absent();
+    }
+    try {
+      return Optional.<Class<? extends Module>>fromNullable(resolve(testClass));
+    } catch (RuntimeException e) {
+      return Optional.absent();
+    } catch (LinkageError e) {
+      // Also covers ExceptionInInitializerError and NoClassDefFoundError
+      return Optional.absent();
+    }
+  }
+
+  private static Field findRuleField(Class<?> testClass) {
+    for (Class<?> clazz = testClass; clazz != null; clazz = clazz.getSuperclass()) {
+      for (Field field : clazz.getDeclaredFields()) {
+        if (GuiceBerryRule.class.isAssignableFrom(field.getType())
+            || GuiceBerryTestRule.class.isAssignableFrom(field.getType())) {
+          return field;
+        }
+      }
+    }
+    return null;
+  }
+
+  private static GuiceBerryEnvSelector getSelector(Field ruleField, Object testCase) {
+    Object rule;
+    try {
+      ruleField.setAccessible(true);
+      rule = ruleField.get(testCase);
+    } catch (IllegalAccessException e) {
+      throw new IllegalArgumentException(String.format(
+          "Could not read the GuiceBerry rule '%s' of '%s'.",
+          ruleField.getName(), testCase.getClass().getName()), e);
+    }
+    if (rule instanceof GuiceBerryRule) {
+      return ((GuiceBerryRule) rule).getGuiceBerryEnvSelector();
+    }
+    if (rule instanceof GuiceBerryTestRule) {
+      return ((GuiceBerryTestRule) rule).getGuiceBerryEnvSelector();
+    }
+    throw new IllegalArgumentException(String.format(
+        "The GuiceBerry rule '%s' of '%s' is null.",
+        ruleField.getName(), testCase.getClass().getName()));
+  }
+
+  private static Object instantiate(Class<?> testClass) {
+    try {
+      Constructor<?> constructor = testClass.getDeclaredConstructor();
+      constructor.setAccessible(true);
+      return constructor.newInstance();
+    } catch (NoSuchMethodException e) {
+      throw new IllegalArgumentException(String.format(
+          "Test class '%s' must have a zero-arguments constructor for its "
+          + "GuiceBerry Env to be resolved ahead of time.", testClass.getName()), e);
+    } catch (Exception e) {
+      throw new IllegalArgumentException(String.format(
+          "Error creating an instance of test class '%s'.", testClass.getName()), e);
+    }
+  }
+}
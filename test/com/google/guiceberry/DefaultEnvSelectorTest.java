@@ -51,6 +51,19 @@ public class DefaultEnvSelectorTest extends TearDownTestCase {
     assertEquals(MyEnvTwo.class, envSelector.guiceBerryEnvToUse(null));
   }
 
+  public void testCachedResolutionIsRedoneAfterOverrideAndClearOverride() {
+    GuiceBerryEnvSelector envSelector = DefaultEnvSelector.of(MyEnvOne.class);
+    assertEquals(MyEnvOne.class, envSelector.guiceBerryEnvToUse(null));
+    assertEquals(MyEnvOne.class, envSelector.guiceBerryEnvToUse(null));
+
+    override();
+    assertEquals(MyEnvTwo.class, envSelector.guiceBerryEnvToUse(null));
+
+    DefaultEnvSelector.clearOverride(MyEnvOne.class);
+    assertFalse(DefaultEnvSelector.isOverridden(MyEnvOne.class));
+    assertEquals(MyEnvOne.class, envSelector.guiceBerryEnvToUse(null));
+  }
+
   private void override() {
     addTearDown(new TearDown() {
       
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.guiceberry;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.testing.TearDown;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public class DeferredTearDownsTest {
+
+  private final DeferredTearDowns deferredTearDowns = new DeferredTearDowns(1);
+  private final TestDescription testDescription =
+      new TestDescription(new Object(), "deferred");
+
+  @Test public void testATestsTearDownsRunInTheGivenOrder() {
+    final List<String> ran = Lists.newArrayList();
+    deferredTearDowns.defer(testDescription, ImmutableList.<TearDown>of(
+        new Recording(ran, "first"), new Recording(ran, "second")));
+    deferredTearDowns.drain();
+    Assert.assertEquals(ImmutableList.of("first", "second"), ran);
+  }
+
+  @Test public void testDeferWaitsWhileTooManyTestsArePending()
+      throws InterruptedException {
+    final CountDownLatch mayRun = new CountDownLatch(1);
+    deferredTearDowns.defer(testDescription, ImmutableList.<TearDown>of(
+        new TearDown() {
+          public void tearDown() throws InterruptedException {
+            mayRun.await();
+          }
+        }));
+    
+    final List<String> ran = Lists.newArrayList();
+    Thread nextTest = new Thread() {
+      @Override
+      public void run() {
+        deferredTearDowns.defer(testDescription,
+            ImmutableList.<TearDown>of(new Recording(ran, "next")));
+      }
+    };
+    nextTest.start();
+    nextTest.join(100);
+    Assert.assertTrue(nextTest.isAlive());
+    
+    mayRun.countDown();
+    nextTest.join();
+    deferredTearDowns.drain();
+    Assert.assertEquals(ImmutableList.of("next"), ran);
+  }
+
+  @Test public void testFailuresAreReportedByDrain() {
+    final RuntimeException failure = new RuntimeException();
+    deferredTearDowns.defer(testDescription, ImmutableList.<TearDown>of(
+        new TearDown() {
+          public void tearDown() {
+            throw failure;
+          }
+        }));
+    try {
+      deferredTearDowns.drain();
+      Assert.fail();
+    } catch (RuntimeException expected) {
+      Assert.assertSame(failure, expected.getCause());
+      Assert.assertTrue(expected.getMessage().contains("deferred"));
+    }
+    deferredTearDowns.drain();
+  }
+
+  @Test public void testTheLimitMustBePositive() {
+    try {
+      new DeferredTearDowns(0);
+      Assert.fail();
+    } catch (IllegalArgumentException expected) {}
+  }
+
+  private static final class Recording implements TearDown {
+    private final List<String> ran;
+    private final String name;
+
+    Recording(List<String> ran, String name) {
+      this.ran = ran;
+      this.name = name;
+    }
+
+    public void tearDown() {
+      ran.add(name);
+    }
+  }
+}
@@ -23,9 +23,21 @@ import com.google.inject.Binder;
 import com.google.inject.ConfigurationException;
 import com.google.inject.CreationException;
 import com.google.inject.Inject;
+import com.google.inject.Injector;
 import com.google.inject.Module;
+import com.google.inject.Provider;
 import com.google.inject.Provides;
+import com.google.inject.Singleton;
+import com.google.inject.TypeLiteral;
+import com.google.inject.name.Named;
+import com.google.inject.name.Names;
+import com.google.common.collect.ImmutableList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
@@ -407,4 +419,819 @@ public class GuiceBerryUniverseTest {
     @Inject
     MyClassThatKeepsTabsOnTheOrder myClass;
   }
+
+  /**
+   * Makes sure that two different GuiceBerry Envs can boot at the same time,
+   * i.e. that creating the injector for one Env does not hold a lock that
+   * prevents creating the injector for another.
+   */
+  @Test public void testDifferentEnvsBootConcurrently() throws Exception {
+    MyGuiceBerryEnvWaitingForAnotherEnvToBoot.otherEnvBooted = new CountDownLatch(1);
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    Thread waitingThread = new Thread() {
+      @Override
+      public void run() {
+        try {
+          GuiceBerryUniverse.TestCaseScaffolding testCaseScaffolding =
+            new GuiceBerryUniverse.TestCaseScaffolding(bogusTestDescription(),
+                DefaultEnvSelector.of(MyGuiceBerryEnvWaitingForAnotherEnvToBoot.class), universe);
+          testCaseScaffolding.runBeforeTest();
+          testCaseScaffolding.runAfterTest();
+        } catch (Throwable e) {
+          failure.set(e);
+        }
+      }
+    };
+    waitingThread.start();
+    
+    GuiceBerryUniverse.TestCaseScaffolding testCaseScaffolding =
+      new GuiceBerryUniverse.TestCaseScaffolding(bogusTestDescription(),
+          DefaultEnvSelector.of(MyGuiceBerryEnvSignalingItBooted.class), universe);
+    testCaseScaffolding.runBeforeTest();
+    testCaseScaffolding.runAfterTest();
+    
+    waitingThread.join(TimeUnit.SECONDS.toMillis(10));
+    Assert.assertFalse(waitingThread.isAlive());
+    Assert.assertNull(failure.get());
+  }
+
+  /**
+   * A thread created while a test runs inherits that test, but it must still
+   * be able to set up tests of its own (e.g. if it's a pool thread, and tests
+   * run in parallel).
+   */
+  @Test public void testThreadCreatedDuringATestCanSetUpItsOwnTest() throws Exception {
+    GuiceBerryUniverse.TestCaseScaffolding testCaseScaffolding =
+      new GuiceBerryUniverse.TestCaseScaffolding(bogusTestDescription(),
+          DefaultEnvSelector.of(MyGuiceBerryEnv.class), universe);
+    testCaseScaffolding.runBeforeTest();
+    final TestDescription parentTest = universe.currentTestDescriptionThreadLocal.get();
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    Thread childThread = new Thread() {
+      @Override
+      public void run() {
+        try {
+          Assert.assertSame(parentTest, universe.currentTestDescriptionThreadLocal.get());
+          TestDescription childTest = bogusTestDescription();
+          GuiceBerryUniverse.TestCaseScaffolding childScaffolding =
+            new GuiceBerryUniverse.TestCaseScaffolding(childTest,
+                DefaultEnvSelector.of(MyGuiceBerryEnv.class), universe);
+          childScaffolding.runBeforeTest();
+          Assert.assertSame(childTest, universe.currentTestDescriptionThreadLocal.get());
+          childScaffolding.runAfterTest();
+          Assert.assertNull(universe.currentTestDescriptionThreadLocal.get());
+        } catch (Throwable e) {
+          failure.set(e);
+        }
+      }
+    };
+    childThread.start();
+    childThread.join(TimeUnit.SECONDS.toMillis(10));
+    Assert.assertNull(failure.get());
+    
+    Assert.assertSame(parentTest, universe.currentTestDescriptionThreadLocal.get());
+    testCaseScaffolding.runAfterTest();
+  }
+
+  private static final class MyGuiceBerryEnvWaitingForAnotherEnvToBoot extends AbstractModule {
+
+    private static CountDownLatch otherEnvBooted;
+    
+    private final GuiceBerryModule gbm;
+    
+    @Override
+    protected void configure() {
+      install(gbm);
+    }
+    
+    @SuppressWarnings("unused")
+    public MyGuiceBerryEnvWaitingForAnotherEnvToBoot() {
+      this.gbm = new GuiceBerryModule(GuiceBerryUniverseTest.universe);
+    }
+    
+    @Provides
+    GuiceBerryEnvMain getMain() {
+      return new GuiceBerryEnvMain() {
+        public void run() {
+          try {
+            if (!otherEnvBooted.await(10, TimeUnit.SECONDS)) {
+              throw new RuntimeException("The other env never booted");
+            }
+          } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          }
+        }
+      };
+    }
+  }
+
+  private static final class MyGuiceBerryEnvSignalingItBooted extends AbstractModule {
+
+    private final GuiceBerryModule gbm;
+    
+    @Override
+    protected void configure() {
+      install(gbm);
+    }
+    
+    @SuppressWarnings("unused")
+    public MyGuiceBerryEnvSignalingItBooted() {
+      this.gbm = new GuiceBerryModule(GuiceBerryUniverseTest.universe);
+    }
+    
+    @Provides
+    GuiceBerryEnvMain getMain() {
+      return new GuiceBerryEnvMain() {
+        public void run() {
+          MyGuiceBerryEnvWaitingForAnotherEnvToBoot.otherEnvBooted.countDown();
+        }
+      };
+    }
+  }
+
+  @Test public void testWarmUpBootsEnvsBeforeTheFirstTest() {
+    MyGuiceBerryEnvCountingMainRuns.mainRuns = 0;
+    Map<Class<? extends Module>, Long> bootTimes = universe.warmUp(
+        ImmutableList.of(MyGuiceBerryEnvCountingMainRuns.class, MyGuiceBerryEnv.class), 2);
+    
+    Assert.assertEquals(
+        ImmutableList.of(MyGuiceBerryEnvCountingMainRuns.class, MyGuiceBerryEnv.class),
+        ImmutableList.copyOf(bootTimes.keySet()));
+    Assert.assertEquals(1, MyGuiceBerryEnvCountingMainRuns.mainRuns);
+    Assert.assertNotNull(universe.gbeClassToInjectorMap.get(MyGuiceBerryEnv.class));
+    
+    GuiceBerryUniverse.TestCaseScaffolding testCaseScaffolding =
+      new GuiceBerryUniverse.TestCaseScaffolding(bogusTestDescription(),
+          DefaultEnvSelector.of(MyGuiceBerryEnvCountingMainRuns.class), universe);
+    testCaseScaffolding.runBeforeTest();
+    testCaseScaffolding.runAfterTest();
+    Assert.assertEquals(1, MyGuiceBerryEnvCountingMainRuns.mainRuns);
+  }
+
+  @Test public void testWarmUpReportsFailingEnvs() {
+    try {
+      universe.warmUp(ImmutableList.of(
+          MyGuiceBerryEnvWithGuiceBerryEnvMainThatThrows.class, MyGuiceBerryEnv.class), 2);
+      Assert.fail();
+    } catch (RuntimeException expected) {
+      Assert.assertEquals(MyGuiceBerryEnvWithGuiceBerryEnvMainThatThrows.GuiceBerryEnvMainWasExecutedException.class,
+          expected.getCause().getClass());
+    }
+    Assert.assertNotNull(universe.gbeClassToInjectorMap.get(MyGuiceBerryEnv.class));
+    
+    GuiceBerryUniverse.TestCaseScaffolding testCaseScaffolding =
+      new GuiceBerryUniverse.TestCaseScaffolding(bogusTestDescription(),
+          DefaultEnvSelector.of(MyGuiceBerryEnvWithGuiceBerryEnvMainThatThrows.class), universe);
+    try {
+      testCaseScaffolding.runBeforeTest();
+      Assert.fail();
+    } catch (RuntimeException expected) {
+      Assert.assertTrue(expected.getMessage().startsWith("Skipping"));
+    }
+    testCaseScaffolding.runAfterTest();
+  }
+
+  @Test public void testWarmUpDoesNotProvisionATestScopedTestWrapper() {
+    MyGuiceBerryEnvWithTestScopedTestWrapper.wrappedTests.clear();
+    universe.warmUp(
+        ImmutableList.<Class<? extends Module>>of(MyGuiceBerryEnvWithTestScopedTestWrapper.class), 1);
+    Assert.assertTrue(MyGuiceBerryEnvWithTestScopedTestWrapper.wrappedTests.isEmpty());
+
+    TestDescription testDescription = bogusTestDescription();
+    GuiceBerryUniverse.TestCaseScaffolding testCaseScaffolding =
+      new GuiceBerryUniverse.TestCaseScaffolding(testDescription,
+          DefaultEnvSelector.of(MyGuiceBerryEnvWithTestScopedTestWrapper.class), universe);
+    testCaseScaffolding.runBeforeTest();
+    testCaseScaffolding.runAfterTest();
+    Assert.assertEquals(ImmutableList.of(testDescription.getTestId()),
+        MyGuiceBerryEnvWithTestScopedTestWrapper.wrappedTests);
+  }
+
+  private static final class MyGuiceBerryEnvWithTestScopedTestWrapper extends AbstractModule {
+
+    private static final List<TestId> wrappedTests = Lists.newArrayList();
+
+    private final GuiceBerryModule gbm;
+
+    @Override
+    protected void configure() {
+      install(gbm);
+    }
+
+    @SuppressWarnings("unused")
+    public MyGuiceBerryEnvWithTestScopedTestWrapper() {
+      this.gbm = new GuiceBerryModule(GuiceBerryUniverseTest.universe);
+    }
+
+    @Provides
+    TestWrapper getTestWrapper(final TestId testId, TearDownAccepter tearDownAccepter) {
+      return new TestWrapper() {
+        public void toRunBeforeTest() {
+          wrappedTests.add(testId);
+        }
+      };
+    }
+  }
+
+  private static final class MyGuiceBerryEnvCountingMainRuns extends AbstractModule {
+
+    private static int mainRuns;
+    
+    private final GuiceBerryModule gbm;
+    
+    @Override
+    protected void configure() {
+      install(gbm);
+    }
+    
+    @SuppressWarnings("unused")
+    public MyGuiceBerryEnvCountingMainRuns() {
+      this.gbm = new GuiceBerryModule(GuiceBerryUniverseTest.universe);
+    }
+    
+    @Provides
+    GuiceBerryEnvMain getMain() {
+      return new GuiceBerryEnvMain() {
+        public void run() {
+          mainRuns++;
+        }
+      };
+    }
+  }
+
+  @Test public void testEnvPlanIsResolvedOnceAndReusedByLaterTests() {
+    for (int i = 0; i < 2; i++) {
+      MyTest test = new MyTest();
+      GuiceBerryUniverse.TestCaseScaffolding testCaseScaffolding =
+        new GuiceBerryUniverse.TestCaseScaffolding(new TestDescription(test, "test" + i),
+            DefaultEnvSelector.of(MyGuiceBerryEnv.class), universe);
+      testCaseScaffolding.runBeforeTest();
+      Assert.assertNotNull(test.accepter);
+      testCaseScaffolding.runAfterTest();
+    }
+    GuiceBerryUniverse.EnvPlan plan = universe.gbeClassToPlanMap.get(MyGuiceBerryEnv.class);
+    Assert.assertSame(plan.membersInjector(MyTest.class), plan.membersInjector(MyTest.class));
+  }
+
+  @Test public void testTimingListenerIsToldAboutEveryPhase() {
+    MyGuiceBerryEnvWithTimingListener.phases.clear();
+    GuiceBerryUniverse.TestCaseScaffolding testCaseScaffolding =
+      new GuiceBerryUniverse.TestCaseScaffolding(bogusTestDescription(),
+          DefaultEnvSelector.of(MyGuiceBerryEnvWithTimingListener.class), universe);
+    testCaseScaffolding.runBeforeTest();
+    testCaseScaffolding.runAfterTest();
+    
+    Assert.assertEquals(ImmutableList.of(
+        TestTimingListener.Phase.INJECTOR_LOOKUP,
+        TestTimingListener.Phase.TEST_WRAPPER,
+        TestTimingListener.Phase.INJECT_MEMBERS,
+        TestTimingListener.Phase.TEAR_DOWN,
+        TestTimingListener.Phase.FINISH_SCOPE),
+        MyGuiceBerryEnvWithTimingListener.phases);
+  }
+
+  private static final class MyGuiceBerryEnvWithTimingListener extends AbstractModule {
+
+    private static final List<TestTimingListener.Phase> phases = Lists.newArrayList();
+    
+    private final GuiceBerryModule gbm;
+    
+    @Override
+    protected void configure() {
+      install(gbm);
+      bind(TestTimingListener.class).toInstance(new TestTimingListener() {
+        public void phaseFinished(Class<? extends Module> gbeClass,
+            TestDescription testDescription, Phase phase, long elapsedNanos) {
+          Assert.assertEquals(MyGuiceBerryEnvWithTimingListener.class, gbeClass);
+          Assert.assertTrue(elapsedNanos >= 0);
+          phases.add(phase);
+        }
+      });
+    }
+    
+    @SuppressWarnings("unused")
+    public MyGuiceBerryEnvWithTimingListener() {
+      this.gbm = new GuiceBerryModule(GuiceBerryUniverseTest.universe);
+    }
+  }
+
+  @Test public void testSnapshotIsTakenOnceAndRestoredAfterEachTest() {
+    MyGuiceBerryEnvWithSnapshot.events.clear();
+    for (int i = 0; i < 2; i++) {
+      final int testNumber = i;
+      MyTestWithTearDown test = new MyTestWithTearDown();
+      GuiceBerryUniverse.TestCaseScaffolding testCaseScaffolding =
+        new GuiceBerryUniverse.TestCaseScaffolding(
+            new TestDescription(test, "test" + testNumber),
+            DefaultEnvSelector.of(MyGuiceBerryEnvWithSnapshot.class), universe);
+      testCaseScaffolding.runBeforeTest();
+      test.accepter.addTearDown(new TearDown() {
+        public void tearDown() {
+          MyGuiceBerryEnvWithSnapshot.events.add("tearDown" + testNumber);
+        }
+      });
+      testCaseScaffolding.runAfterTest();
+    }
+    
+    Assert.assertEquals(
+        ImmutableList.of("main", "take", "tearDown0", "restore", "tearDown1", "restore"),
+        MyGuiceBerryEnvWithSnapshot.events);
+  }
+
+  @Test public void testSnapshotOfTheBaseEnvIsRestoredAfterEachTestOfAVariant() {
+    MyGuiceBerryEnvWithSnapshot.events.clear();
+    runScopedTest(new Object(), MySnapshotVariant.class);
+    runScopedTest(new Object(), MySnapshotVariant.class);
+    
+    Assert.assertEquals(
+        ImmutableList.of("main", "take", "restore", "restore"),
+        MyGuiceBerryEnvWithSnapshot.events);
+  }
+
+  public static final class MySnapshotVariant extends GuiceBerryEnvVariant {
+    public MySnapshotVariant() {
+      super(MyGuiceBerryEnvWithSnapshot.class, new FlavorModule("mint"));
+    }
+  }
+
+  private static final class MyTestWithTearDown {
+    @Inject
+    TearDownAccepter accepter;
+  }
+
+  private static final class MyGuiceBerryEnvWithSnapshot extends AbstractModule {
+
+    private static final List<String> events = Lists.newArrayList();
+    
+    private final GuiceBerryModule gbm;
+    
+    @Override
+    protected void configure() {
+      install(gbm);
+      bind(GuiceBerryEnvMain.class).toInstance(new GuiceBerryEnvMain() {
+        public void run() {
+          events.add("main");
+        }
+      });
+      bind(GuiceBerryEnvSnapshot.class).toInstance(new GuiceBerryEnvSnapshot() {
+        public void take() {
+          events.add("take");
+        }
+
+        public void restore() {
+          events.add("restore");
+        }
+      });
+    }
+    
+    @SuppressWarnings("unused")
+    public MyGuiceBerryEnvWithSnapshot() {
+      this.gbm = new GuiceBerryModule(GuiceBerryUniverseTest.universe);
+    }
+  }
+
+  @Test public void testTestClassAndSuiteScopedInstancesAndTearDowns() {
+    MyGuiceBerryEnvWithLongerScopes.events.clear();
+    MyScopedTest first = runScopedTest(new MyScopedTest());
+    MyScopedTest second = runScopedTest(new MyScopedTest());
+    MyOtherScopedTest other = runScopedTest(new MyOtherScopedTest());
+    
+    Assert.assertSame(first.classThing, second.classThing);
+    Assert.assertNotSame(first.classThing, other.classThing);
+    Assert.assertSame(first.suiteThing, other.suiteThing);
+    Assert.assertEquals(ImmutableList.of(), MyGuiceBerryEnvWithLongerScopes.events);
+    
+    universe.finishTestClass(MyScopedTest.class);
+    Assert.assertEquals(ImmutableList.of("classTearDown"), MyGuiceBerryEnvWithLongerScopes.events);
+    MyScopedTest afterFinish = runScopedTest(new MyScopedTest());
+    Assert.assertNotSame(first.classThing, afterFinish.classThing);
+    Assert.assertSame(first.suiteThing, afterFinish.suiteThing);
+    
+    universe.finishSuite();
+    Assert.assertEquals(
+        ImmutableList.of("classTearDown", "classTearDown", "classTearDown", "suiteTearDown"),
+        MyGuiceBerryEnvWithLongerScopes.events);
+    Assert.assertNotSame(first.suiteThing, runScopedTest(new MyScopedTest()).suiteThing);
+  }
+
+  @Test public void testDeferredTearDownsRunInTheBackgroundAndFailAtSuiteEnd()
+      throws InterruptedException {
+    MyDeferringTest test = new MyDeferringTest();
+    GuiceBerryUniverse.TestCaseScaffolding testCaseScaffolding =
+      new GuiceBerryUniverse.TestCaseScaffolding(new TestDescription(test, "deferring"),
+          DefaultEnvSelector.of(MyGuiceBerryEnv.class), universe);
+    testCaseScaffolding.runBeforeTest();
+    
+    final RuntimeException failure = new RuntimeException();
+    final CountDownLatch mayRun = new CountDownLatch(1);
+    final AtomicReference<Thread> ranIn = new AtomicReference<Thread>();
+    test.accepter.addDeferredTearDown(new TearDown() {
+      public void tearDown() {
+        throw failure;
+      }
+    });
+    test.accepter.addDeferredTearDown(new TearDown() {
+      public void tearDown() throws InterruptedException {
+        mayRun.await();
+        ranIn.set(Thread.currentThread());
+      }
+    });
+    
+    // Returns before the deferred tear downs can run
+    testCaseScaffolding.runAfterTest();
+    Assert.assertNull(ranIn.get());
+    
+    mayRun.countDown();
+    try {
+      universe.finishSuite();
+      Assert.fail();
+    } catch (RuntimeException expected) {
+      Assert.assertSame(failure, expected.getCause());
+    }
+    Assert.assertNotNull(ranIn.get());
+    Assert.assertNotSame(Thread.currentThread(), ranIn.get());
+    
+    // Failures are only reported once
+    universe.finishSuite();
+  }
+
+  private static final class MyDeferringTest {
+    @Inject
+    DeferredTearDownAccepter accepter;
+  }
+
+  private static <T> T runScopedTest(T test) {
+    GuiceBerryUniverse.TestCaseScaffolding testCaseScaffolding =
+      new GuiceBerryUniverse.TestCaseScaffolding(new TestDescription(test, "scoped"),
+          DefaultEnvSelector.of(MyGuiceBerryEnvWithLongerScopes.class), universe);
+    testCaseScaffolding.runBeforeTest();
+    testCaseScaffolding.runAfterTest();
+    return test;
+  }
+
+  private static class MyScopedTest {
+    @Inject
+    @Named("class")
+    Object classThing;
+
+    @Inject
+    @Named("suite")
+    Object suiteThing;
+  }
+
+  private static final class MyOtherScopedTest extends MyScopedTest {}
+
+  private static final class MyGuiceBerryEnvWithLongerScopes extends AbstractModule {
+
+    private static final List<String> events = Lists.newArrayList();
+    
+    private final GuiceBerryModule gbm;
+    
+    @Override
+    protected void configure() {
+      install(gbm);
+    }
+    
+    @SuppressWarnings("unused")
+    public MyGuiceBerryEnvWithLongerScopes() {
+      this.gbm = new GuiceBerryModule(GuiceBerryUniverseTest.universe);
+    }
+
+    @Provides
+    @TestClassScoped
+    @Named("class")
+    Object getClassThing(@ForTestClass TearDownAccepter accepter) {
+      accepter.addTearDown(new TearDown() {
+        public void tearDown() {
+          events.add("classTearDown");
+        }
+      });
+      return new Object();
+    }
+
+    @Provides
+    @SuiteScoped
+    @Named("suite")
+    Object getSuiteThing(@ForSuite TearDownAccepter accepter) {
+      accepter.addTearDown(new TearDown() {
+        public void tearDown() {
+          events.add("suiteTearDown");
+        }
+      });
+      return new Object();
+    }
+  }
+
+  @Test public void testIdenticalEnvsShareAnInjectorBootedOnce() {
+    universe.shareIdenticalEnvs = true;
+    CountingMain.runs.set(0);
+    runScopedTest(new MyTest(), MySharedEnvOne.class);
+    runScopedTest(new MyTest(), MySharedEnvTwo.class);
+    
+    Assert.assertSame(universe.gbeClassToInjectorMap.get(MySharedEnvOne.class),
+        universe.gbeClassToInjectorMap.get(MySharedEnvTwo.class));
+    Assert.assertEquals(1, CountingMain.runs.get());
+  }
+
+  @Test public void testEnvsDifferingInOverridableBindingsShareAParentInjector() {
+    universe.shareIdenticalEnvs = true;
+    CountingMain.runs.set(0);
+    MyTestWithFlavor one = runScopedTest(new MyTestWithFlavor(), MySharedEnvOne.class);
+    MyTestWithFlavor vanilla = runScopedTest(new MyTestWithFlavor(), MyVanillaEnv.class);
+    MyTestWithFlavor chocolate = runScopedTest(new MyTestWithFlavor(), MyChocolateEnv.class);
+
+    Assert.assertNull(one.flavor);
+    Assert.assertEquals("vanilla", vanilla.flavor);
+    Assert.assertEquals("chocolate", chocolate.flavor);
+    Injector parent = universe.gbeClassToInjectorMap.get(MySharedEnvOne.class);
+    Assert.assertSame(parent, universe.gbeClassToInjectorMap.get(MyVanillaEnv.class).getParent());
+    Assert.assertSame(parent, universe.gbeClassToInjectorMap.get(MyChocolateEnv.class).getParent());
+    Assert.assertSame(one.shared, chocolate.shared);
+    Assert.assertEquals(1, CountingMain.runs.get());
+  }
+
+  @Test public void testEnvsAreNotSharedUnlessAskedTo() {
+    CountingMain.runs.set(0);
+    runScopedTest(new MyTest(), MySharedEnvOne.class);
+    runScopedTest(new MyTest(), MySharedEnvTwo.class);
+    
+    Assert.assertNotSame(universe.gbeClassToInjectorMap.get(MySharedEnvOne.class),
+        universe.gbeClassToInjectorMap.get(MySharedEnvTwo.class));
+    Assert.assertEquals(2, CountingMain.runs.get());
+  }
+
+  private static <T> T runScopedTest(T test, Class<? extends Module> gbeClass) {
+    GuiceBerryUniverse.TestCaseScaffolding testCaseScaffolding =
+      new GuiceBerryUniverse.TestCaseScaffolding(new TestDescription(test, "shared"),
+          DefaultEnvSelector.of(gbeClass), universe);
+    testCaseScaffolding.runBeforeTest();
+    testCaseScaffolding.runAfterTest();
+    return test;
+  }
+
+  private static final class MyTestWithFlavor {
+    @Inject
+    @Named("shared")
+    Object shared;
+
+    @Inject(optional = true)
+    @Named("flavor")
+    String flavor;
+  }
+
+  private static final class CountingMain implements GuiceBerryEnvMain {
+    static final AtomicInteger runs = new AtomicInteger();
+
+    public void run() {
+      runs.incrementAndGet();
+    }
+  }
+
+  /**
+   * The bindings all the shared Envs have in common. Equal instances install
+   * equal bindings.
+   */
+  private static final class MySharedModule extends AbstractModule {
+    @Override
+    protected void configure() {
+      install(new GuiceBerryModule(GuiceBerryUniverseTest.universe));
+      bind(GuiceBerryEnvMain.class).to(CountingMain.class);
+      bind(Object.class).annotatedWith(Names.named("shared")).to(SharedThing.class);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof MySharedModule;
+    }
+
+    @Override
+    public int hashCode() {
+      return MySharedModule.class.hashCode();
+    }
+  }
+
+  @Singleton
+  private static final class SharedThing {}
+
+  public static final class MySharedEnvOne extends AbstractModule {
+    @Override
+    protected void configure() {
+      install(new MySharedModule());
+    }
+  }
+
+  public static final class MySharedEnvTwo extends AbstractModule {
+    @Override
+    protected void configure() {
+      install(new MySharedModule());
+    }
+  }
+
+  public static final class MyVanillaEnv extends AbstractModule {
+    @Override
+    protected void configure() {
+      install(new MySharedModule());
+      install(new OverridableBindings(new FlavorModule("vanilla")));
+    }
+  }
+
+  public static final class MyChocolateEnv extends AbstractModule {
+    @Override
+    protected void configure() {
+      install(new MySharedModule());
+      install(new OverridableBindings(new FlavorModule("chocolate")));
+    }
+  }
+
+  private static final class FlavorModule extends AbstractModule {
+    private final String flavor;
+
+    FlavorModule(String flavor) {
+      this.flavor = flavor;
+    }
+
+    @Override
+    protected void configure() {
+      bind(String.class).annotatedWith(Names.named("flavor")).toInstance(flavor);
+    }
+  }
+
+  @Test public void testVariantIsAChildOfItsBootedBaseEnv() {
+    CountingMain.runs.set(0);
+    // The variant boots its base Env
+    MyTestWithFlavor mint = runScopedTest(new MyTestWithFlavor(), MyMintVariant.class);
+    MyTestWithFlavor base = runScopedTest(new MyTestWithFlavor(), MySharedEnvOne.class);
+    
+    Assert.assertEquals("mint", mint.flavor);
+    Assert.assertNull(base.flavor);
+    Assert.assertSame(universe.gbeClassToInjectorMap.get(MySharedEnvOne.class),
+        universe.gbeClassToInjectorMap.get(MyMintVariant.class).getParent());
+    Assert.assertSame(base.shared, mint.shared);
+    Assert.assertEquals(1, CountingMain.runs.get());
+  }
+
+  public static final class MyMintVariant extends GuiceBerryEnvVariant {
+    public MyMintVariant() {
+      super(MySharedEnvOne.class, new FlavorModule("mint"));
+    }
+  }
+
+  @Test public void testPooledKeyOfAVariantFindsItsResetter() {
+    PooledFlavorModule.reset.clear();
+    MyTestWithPooledFlavor first =
+      runScopedTest(new MyTestWithPooledFlavor(), MyPooledFlavorVariant.class);
+    MyTestWithPooledFlavor second =
+      runScopedTest(new MyTestWithPooledFlavor(), MyPooledFlavorVariant.class);
+    
+    Assert.assertNotNull(first.flavor);
+    Assert.assertSame(first.flavor, second.flavor);
+    Assert.assertEquals(ImmutableList.of(first.flavor), PooledFlavorModule.reset);
+  }
+
+  private static final class MyTestWithPooledFlavor {
+    // Optional, as the base Env is booted for the test class too
+    @Inject(optional = true)
+    @Named("pooled")
+    StringBuilder flavor;
+  }
+
+  private static final class PooledFlavorModule extends AbstractModule {
+    static final List<StringBuilder> reset = Lists.newArrayList();
+
+    @Override
+    protected void configure() {
+      bind(StringBuilder.class).annotatedWith(Names.named("pooled"))
+          .toProvider(new Provider<StringBuilder>() {
+            public StringBuilder get() {
+              return new StringBuilder();
+            }
+          }).in(PooledTestScoped.class);
+      bind(new TypeLiteral<PooledInstanceResetter<StringBuilder>>() {})
+          .annotatedWith(Names.named("pooled"))
+          .toInstance(new PooledInstanceResetter<StringBuilder>() {
+            public boolean reset(StringBuilder instance) {
+              reset.add(instance);
+              instance.setLength(0);
+              return true;
+            }
+
+            public void discard(StringBuilder instance) {}
+          });
+    }
+  }
+
+  public static final class MyPooledFlavorVariant extends GuiceBerryEnvVariant {
+    public MyPooledFlavorVariant() {
+      super(MySharedEnvOne.class, new PooledFlavorModule());
+    }
+  }
+
+  @Test public void testLeastRecentlyUsedEnvIsShutDownAndRebootedWhenNeeded() {
+    universe.maxBootedEnvs = 1;
+    EvictableEnvModule.events.clear();
+    
+    runScopedTest(new Object(), MyEvictableEnvOne.class);
+    runScopedTest(new Object(), MyEvictableEnvTwo.class);
+    runScopedTest(new Object(), MyEvictableEnvOne.class);
+    Assert.assertEquals(
+        ImmutableList.of("boot one", "boot two", "shut down one", "boot one", "shut down two"),
+        EvictableEnvModule.events);
+  }
+
+  @Test public void testEnvInUseIsNotEvicted() {
+    universe.maxBootedEnvs = 1;
+    EvictableEnvModule.events.clear();
+    
+    TestDescription inUse = new TestDescription(new Object(), "in use");
+    GuiceBerryUniverse.TestCaseScaffolding testCaseScaffolding =
+      new GuiceBerryUniverse.TestCaseScaffolding(inUse,
+          DefaultEnvSelector.of(MyEvictableEnvOne.class), universe);
+    testCaseScaffolding.runBeforeTest();
+    // This is not the same thread the other test is running on
+    universe.testSetUpInThisThreadLocal.remove();
+    runScopedTest(new Object(), MyEvictableEnvTwo.class);
+    Assert.assertEquals(
+        ImmutableList.of("boot one", "boot two", "shut down two"),
+        EvictableEnvModule.events);
+    
+    universe.testSetUpInThisThreadLocal.set(inUse);
+    universe.currentTestDescriptionThreadLocal.set(inUse);
+    testCaseScaffolding.runAfterTest();
+    runScopedTest(new Object(), MyEvictableEnvOne.class);
+    Assert.assertEquals(
+        ImmutableList.of("boot one", "boot two", "shut down two"),
+        EvictableEnvModule.events);
+  }
+
+  @Test public void testEnvWithPendingDeferredTearDownsIsNotEvicted()
+      throws InterruptedException {
+    universe.maxBootedEnvs = 1;
+    EvictableEnvModule.events.clear();
+    
+    MyDeferringTest test = new MyDeferringTest();
+    GuiceBerryUniverse.TestCaseScaffolding testCaseScaffolding =
+      new GuiceBerryUniverse.TestCaseScaffolding(new TestDescription(test, "deferring"),
+          DefaultEnvSelector.of(MyEvictableEnvOne.class), universe);
+    testCaseScaffolding.runBeforeTest();
+    final CountDownLatch mayRun = new CountDownLatch(1);
+    test.accepter.addDeferredTearDown(new TearDown() {
+      public void tearDown() throws InterruptedException {
+        mayRun.await();
+        EvictableEnvModule.events.add("deferred one");
+      }
+    });
+    testCaseScaffolding.runAfterTest();
+    
+    try {
+      runScopedTest(new Object(), MyEvictableEnvTwo.class);
+      Assert.assertEquals(
+          ImmutableList.of("boot one", "boot two", "shut down two"),
+          EvictableEnvModule.events);
+    } finally {
+      mayRun.countDown();
+    }
+    universe.deferredTearDowns.drain();
+    Assert.assertEquals(
+        ImmutableList.of("boot one", "boot two", "shut down two", "deferred one"),
+        EvictableEnvModule.events);
+  }
+
+  public static final class MyEvictableEnvOne extends EvictableEnvModule {
+    public MyEvictableEnvOne() {
+      super("one");
+    }
+  }
+
+  public static final class MyEvictableEnvTwo extends EvictableEnvModule {
+    public MyEvictableEnvTwo() {
+      super("two");
+    }
+  }
+
+  private static class EvictableEnvModule extends AbstractModule {
+    static final List<String> events = Lists.newArrayList();
+    
+    private final String name;
+    
+    EvictableEnvModule(String name) {
+      this.name = name;
+    }
+    
+    @Override
+    protected void configure() {
+      install(new GuiceBerryModule(GuiceBerryUniverseTest.universe));
+      bind(GuiceBerryEnvMain.class).toInstance(new GuiceBerryEnvMain() {
+        public void run() {
+          events.add("boot " + name);
+        }
+      });
+      bind(GuiceBerryEnvShutdown.class).toInstance(new GuiceBerryEnvShutdown() {
+        public void shutDown() {
+          // Shutdowns run outside of the EnvCache's lock
+          Assert.assertFalse(Thread.holdsLock(GuiceBerryUniverseTest.universe.envCache));
+          events.add("shut down " + name);
+        }
+      });
+    }
+  }
 }
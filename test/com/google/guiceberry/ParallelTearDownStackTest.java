@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.guiceberry;
+
+import com.google.common.collect.Lists;
+import com.google.common.testing.TearDown;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public class ParallelTearDownStackTest {
+
+  private final GuiceBerryUniverse universe = new GuiceBerryUniverse();
+  private final ParallelTearDownStack stack = new ParallelTearDownStack(universe);
+  private final List<String> ran =
+      Collections.synchronizedList(Lists.<String>newArrayList());
+
+  @Test public void testDependentTearDownsRunInReverseOrder() {
+    stack.addTearDown(new Recording("first"));
+    stack.addTearDown(new Recording("second"));
+    stack.runTearDown();
+    Assert.assertEquals(Lists.newArrayList("second", "first"), ran);
+  }
+
+  @Test public void testAdjacentIndependentTearDownsRunConcurrently() {
+    // Each of these waits for the other to have started, so they only finish
+    // if they run at the same time
+    CountDownLatch started = new CountDownLatch(2);
+    stack.addTearDown(new Recording("before"));
+    stack.addIndependentTearDown(new Rendezvous("one", started));
+    stack.addIndependentTearDown(new Rendezvous("two", started));
+    stack.addTearDown(new Recording("after"));
+    stack.runTearDown();
+    Assert.assertEquals(4, ran.size());
+    Assert.assertEquals("after", ran.get(0));
+    Assert.assertEquals("before", ran.get(3));
+    Assert.assertTrue(ran.containsAll(Lists.newArrayList("one", "two")));
+  }
+
+  @Test public void testIndependentTearDownsSeeTheCurrentTest() {
+    final TestDescription test = new TestDescription(this, "test");
+    final List<TestDescription> seen =
+        Collections.synchronizedList(Lists.<TestDescription>newArrayList());
+    // Both run at the same time, so at least one runs in the pool
+    final CountDownLatch started = new CountDownLatch(2);
+    for (String name : new String[] {"one", "two"}) {
+      stack.addIndependentTearDown(new Rendezvous(name, started) {
+        @Override
+        public void tearDown() throws Exception {
+          super.tearDown();
+          seen.add(universe.currentTestDescriptionThreadLocal.get());
+        }
+      });
+    }
+    universe.currentTestDescriptionThreadLocal.set(test);
+    try {
+      stack.runTearDown();
+    } finally {
+      universe.currentTestDescriptionThreadLocal.remove();
+    }
+    Assert.assertEquals(Lists.newArrayList(test, test), seen);
+  }
+
+  @Test public void testAllFailuresAreReported() {
+    final RuntimeException dependentFailure = new RuntimeException("dependent");
+    final RuntimeException independentFailure =
+        new RuntimeException("independent");
+    stack.addTearDown(new Recording("first"));
+    stack.addIndependentTearDown(new TearDown() {
+      public void tearDown() {
+        throw independentFailure;
+      }
+    });
+    stack.addIndependentTearDown(new Recording("independent"));
+    stack.addTearDown(new TearDown() {
+      public void tearDown() {
+        throw dependentFailure;
+      }
+    });
+    try {
+      stack.runTearDown();
+      Assert.fail();
+    } catch (RuntimeException expected) {
+      // Same as TearDownStack: the first failure is the cause
+      Assert.assertSame(dependentFailure, expected.getCause());
+      Assert.assertTrue(expected.getMessage().startsWith("2 exceptions"));
+    }
+    Assert.assertEquals(Lists.newArrayList("independent", "first"), ran);
+  }
+
+  @Test public void testASingleFailureIsRethrownAsIs() {
+    final RuntimeException failure = new RuntimeException();
+    stack.addIndependentTearDown(new TearDown() {
+      public void tearDown() {
+        throw failure;
+      }
+    });
+    try {
+      stack.runTearDown();
+      Assert.fail();
+    } catch (RuntimeException expected) {
+      Assert.assertSame(failure, expected);
+    }
+  }
+
+  @Test public void testTearDownsRunOnlyOnce() {
+    stack.addIndependentTearDown(new Recording("once"));
+    stack.runTearDown();
+    stack.runTearDown();
+    Assert.assertEquals(Lists.newArrayList("once"), ran);
+  }
+
+  private class Recording implements TearDown {
+    private final String name;
+
+    Recording(String name) {
+      this.name = name;
+    }
+
+    public void tearDown() throws Exception {
+      ran.add(name);
+    }
+  }
+
+  private class Rendezvous extends Recording {
+    private final CountDownLatch started;
+
+    Rendezvous(String name, CountDownLatch started) {
+      super(name);
+      this.started = started;
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+      started.countDown();
+      Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+      super.tearDown();
+    }
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.guiceberry;
+
+import com.google.inject.Key;
+import com.google.inject.Provider;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public class TestContextTest {
+
+  private final GuiceBerryUniverse universe = new GuiceBerryUniverse();
+  private final TestScope testScope = new TestScope(universe);
+  private final ExecutorService pool = Executors.newSingleThreadExecutor();
+
+  @After public void tearDown() {
+    universe.currentTestDescriptionThreadLocal.remove();
+    pool.shutdownNow();
+  }
+
+  @Test public void testCaptureWithNoCurrentTestThrows() {
+    try {
+      TestContext.capture(universe);
+      Assert.fail();
+    } catch (IllegalStateException expected) {}
+  }
+
+  @Test public void testRunWithRestoresThePreviousTest() throws Exception {
+    TestDescription one = startTest("one");
+    TestContext context = TestContext.capture(universe);
+    TestDescription two = startTest("two");
+    
+    Assert.assertSame(one, context.callWith(new CurrentTest()));
+    Assert.assertSame(two, universe.currentTestDescriptionThreadLocal.get());
+  }
+
+  @Test public void testPooledThreadSeesTheSubmittingTest() throws Exception {
+    // Starts the pool's thread before any test, so it inherits nothing
+    pool.submit(new CurrentTest()).get();
+    
+    ExecutorService propagating = TestContext.propagating(pool, universe);
+    final Provider<Object> scoped =
+        testScope.scope(Key.get(Object.class), new NewObjectProvider());
+    
+    startTest("one");
+    Object instance = scoped.get();
+    Assert.assertSame(instance, propagating.submit(new Callable<Object>() {
+      public Object call() {
+        return scoped.get();
+      }
+    }).get());
+    
+    TestDescription two = startTest("two");
+    Assert.assertSame(two, propagating.invokeAll(
+        Collections.singletonList(new CurrentTest())).get(0).get());
+    
+    // The pooled thread is left with no test in between tasks
+    Assert.assertNull(pool.submit(new CurrentTest()).get());
+  }
+
+  @Test public void testTaskSubmittedOutsideOfATestSeesNoTest() throws Exception {
+    TestDescription stale = startTest("stale");
+    ExecutorService inheriting = Executors.newSingleThreadExecutor();
+    try {
+      // The pool's thread inherits the "stale" test
+      Assert.assertSame(stale, inheriting.submit(new CurrentTest()).get());
+      
+      universe.currentTestDescriptionThreadLocal.remove();
+      Assert.assertNull(TestContext.propagating(inheriting, universe)
+          .submit(new CurrentTest()).get());
+    } finally {
+      inheriting.shutdownNow();
+    }
+  }
+
+  private TestDescription startTest(String name) {
+    TestDescription result = new TestDescription(this, "TestContextTest." + name);
+    universe.currentTestDescriptionThreadLocal.set(result);
+    return result;
+  }
+
+  private final class CurrentTest implements Callable<TestDescription> {
+    public TestDescription call() {
+      return universe.currentTestDescriptionThreadLocal.get();
+    }
+  }
+
+  private static final class NewObjectProvider implements Provider<Object> {
+    public Object get() {
+      return new Object();
+    }
+  }
+}
@@ -18,6 +18,8 @@ package com.google.guiceberry;
 import org.junit.Assert;
 import org.junit.Test;
 
+import javax.servlet.http.Cookie;
+
 /**
  * @author Luiz-Otavio Zorzella
  */
@@ -29,4 +31,35 @@ public class TestIdTest {
       new TestId("com.google.foo.bar").toDeprecatedTestId();
     Assert.assertTrue(deprecatedTestId.toString().startsWith("bar:com.google.foo:"));
   }
+
+  @Test
+  public void testCookieRoundTrip() {
+    TestId testId = new TestId("com.google.foo.bar");
+    TestId fromCookie = new TestId(new Cookie(TestId.COOKIE_NAME, testId.toString()));
+    Assert.assertEquals(testId, fromCookie);
+    Assert.assertEquals(testId.hashCode(), fromCookie.hashCode());
+    Assert.assertEquals(testId.toString(), fromCookie.toString());
+  }
+
+  @Test
+  public void testNonCanonicalCookie() {
+    Assert.assertEquals("foo:7", new TestId(new Cookie(TestId.COOKIE_NAME, "foo:007")).toString());
+    Assert.assertEquals("foo:0", new TestId(new Cookie(TestId.COOKIE_NAME, "foo:-0")).toString());
+    Assert.assertEquals("foo:-3", new TestId(new Cookie(TestId.COOKIE_NAME, "foo:-3")).toString());
+    Assert.assertEquals("foo:0", new TestId(new Cookie(TestId.COOKIE_NAME, "foo:0")).toString());
+  }
+
+  @Test
+  public void testBadCookie() {
+    for (String value : new String[] {"foo", "foo:", "foo:1:2"}) {
+      try {
+        new TestId(new Cookie(TestId.COOKIE_NAME, value));
+        Assert.fail(value);
+      } catch (IllegalStateException expected) {}
+    }
+    try {
+      new TestId(new Cookie(TestId.COOKIE_NAME, "foo:bar"));
+      Assert.fail();
+    } catch (NumberFormatException expected) {}
+  }
 }
@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.guiceberry;
+
+import com.google.common.collect.Lists;
+import com.google.inject.AbstractModule;
+import com.google.inject.CreationException;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.Provider;
+import com.google.inject.Provides;
+import com.google.inject.Singleton;
+import com.google.inject.TypeLiteral;
+import com.google.inject.name.Names;
+
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public class TestScopeTest {
+
+  private final GuiceBerryUniverse universe = new GuiceBerryUniverse();
+  private final TestScope testScope = new TestScope(universe);
+
+  @After public void clearThreadLocal() {
+    universe.currentTestDescriptionThreadLocal.remove();
+  }
+
+  @Test public void testSameInstanceWithinATestAndNewInstanceAcrossTests() {
+    Provider<Object> scoped = testScope.scope(Key.get(Object.class), new NewObjectProvider());
+    
+    TestDescription one = startTest("one");
+    Object instance = scoped.get();
+    Assert.assertSame(instance, scoped.get());
+    testScope.finishScope(one);
+    
+    startTest("two");
+    Assert.assertNotSame(instance, scoped.get());
+  }
+
+  @Test public void testKeysScopedAfterTheTestStarted() {
+    Provider<Object> first = testScope.scope(Key.get(Object.class), new NewObjectProvider());
+    startTest("one");
+    Object firstInstance = first.get();
+    
+    // E.g. a just-in-time binding
+    Provider<Object> second = testScope.scope(
+        Key.get(Object.class, Names.named("second")), new NewObjectProvider());
+    Object secondInstance = second.get();
+    
+    Assert.assertNotSame(firstInstance, secondInstance);
+    Assert.assertSame(firstInstance, first.get());
+    Assert.assertSame(secondInstance, second.get());
+  }
+
+  @Test public void testRecursiveProvisionThatGrowsTheSlots() {
+    final Provider<?>[] inner = new Provider<?>[1];
+    Provider<Object> outer = testScope.scope(Key.get(Object.class), new Provider<Object>() {
+      public Object get() {
+        inner[0] = testScope.scope(
+            Key.get(Object.class, Names.named("inner")), new NewObjectProvider());
+        return inner[0].get();
+      }
+    });
+    startTest("one");
+    Object instance = outer.get();
+    Assert.assertSame(instance, outer.get());
+    Assert.assertSame(instance, inner[0].get());
+  }
+
+  @Test public void testNoCurrentTestThrows() {
+    Provider<Object> scoped = testScope.scope(Key.get(Object.class), new NewObjectProvider());
+    try {
+      scoped.get();
+      Assert.fail();
+    } catch (IllegalStateException expected) {}
+  }
+
+  @Test public void testPooledInstanceIsResetAndReusedByALaterTest() {
+    PooledThingResetter resetter = new PooledThingResetter();
+    Injector injector = Guice.createInjector(new PooledThingModule(universe, resetter));
+    TestScope scope = injector.getInstance(TestScope.class);
+
+    TestDescription one = startTest("one");
+    PooledThing thing = injector.getInstance(PooledThing.class);
+    Assert.assertSame(thing, injector.getInstance(PooledThing.class));
+    thing.dirty = true;
+    scope.finishScope(one);
+    Assert.assertTrue(resetter.reset.isEmpty());
+    
+    startTest("two");
+    Assert.assertSame(thing, injector.getInstance(PooledThing.class));
+    Assert.assertFalse(thing.dirty);
+    Assert.assertEquals(Lists.newArrayList(thing), resetter.reset);
+    Assert.assertTrue(resetter.discarded.isEmpty());
+  }
+
+  @Test public void testPooledInstanceThatCannotBeResetIsDiscarded() {
+    PooledThingResetter resetter = new PooledThingResetter();
+    Injector injector = Guice.createInjector(new PooledThingModule(universe, resetter));
+    TestScope scope = injector.getInstance(TestScope.class);
+
+    TestDescription one = startTest("one");
+    PooledThing thing = injector.getInstance(PooledThing.class);
+    thing.broken = true;
+    scope.finishScope(one);
+    
+    startTest("two");
+    Assert.assertNotSame(thing, injector.getInstance(PooledThing.class));
+    Assert.assertEquals(Lists.newArrayList(thing), resetter.discarded);
+  }
+
+  @Test public void testPoolIsBounded() {
+    PooledThingResetter resetter = new PooledThingResetter();
+    Injector injector = Guice.createInjector(new PooledThingModule(universe, resetter));
+    TestScope scope = injector.getInstance(TestScope.class);
+
+    // As if these many tests were running in parallel
+    int tests = TestScope.MAX_POOLED_INSTANCES_PER_KEY + 2;
+    List<TestDescription> running = Lists.newArrayList();
+    for (int i = 0; i < tests; i++) {
+      running.add(startTest("parallel" + i));
+      injector.getInstance(PooledThing.class);
+    }
+    for (TestDescription test : running) {
+      scope.finishScope(test);
+    }
+    Assert.assertEquals(2, resetter.discarded.size());
+  }
+
+  @Test public void testPooledKeyWithoutAResetterFailsTheInjector() {
+    try {
+      Guice.createInjector(new GuiceBerryModule(universe) {
+        @Override
+        protected void configure() {
+          super.configure();
+          bind(PooledThing.class).in(PooledTestScoped.class);
+        }
+      });
+      Assert.fail();
+    } catch (CreationException expected) {
+      Assert.assertTrue(expected.getMessage(),
+          expected.getMessage().contains(PooledInstanceResetter.class.getName()));
+    }
+  }
+
+  @Test public void testJustInTimePooledKeyFindsItsResetter() {
+    final List<JustInTimePooledThing> reset = Lists.newArrayList();
+    Injector injector = Guice.createInjector(new GuiceBerryModule(universe) {
+      @Override
+      protected void configure() {
+        super.configure();
+        bind(new TypeLiteral<PooledInstanceResetter<JustInTimePooledThing>>() {})
+            .toInstance(new PooledInstanceResetter<JustInTimePooledThing>() {
+              public boolean reset(JustInTimePooledThing instance) {
+                reset.add(instance);
+                return true;
+              }
+
+              public void discard(JustInTimePooledThing instance) {}
+            });
+      }
+    });
+    TestScope scope = injector.getInstance(TestScope.class);
+
+    TestDescription one = startTest("one", injector);
+    JustInTimePooledThing thing = injector.getInstance(JustInTimePooledThing.class);
+    scope.finishScope(one);
+    
+    startTest("two", injector);
+    Assert.assertSame(thing, injector.getInstance(JustInTimePooledThing.class));
+    Assert.assertEquals(Lists.newArrayList(thing), reset);
+  }
+
+  private TestDescription startTest(String name) {
+    TestDescription result = new TestDescription(this, "TestScopeTest." + name);
+    universe.currentTestDescriptionThreadLocal.set(result);
+    return result;
+  }
+
+  private TestDescription startTest(String name, Injector envInjector) {
+    TestDescription result = startTest(name);
+    result.envInjector = envInjector;
+    return result;
+  }
+
+  private static final class NewObjectProvider implements Provider<Object> {
+    public Object get() {
+      return new Object();
+    }
+  }
+
+  private static final class PooledThing {
+    boolean dirty;
+    boolean broken;
+  }
+
+  @PooledTestScoped
+  static final class JustInTimePooledThing {}
+
+  private static final class PooledThingResetter implements PooledInstanceResetter<PooledThing> {
+    final List<PooledThing> reset = Lists.newArrayList();
+    final List<PooledThing> discarded = Lists.newArrayList();
+    
+    public boolean reset(PooledThing instance) {
+      reset.add(instance);
+      instance.dirty = false;
+      return !instance.broken;
+    }
+
+    public void discard(PooledThing instance) {
+      discarded.add(instance);
+    }
+  }
+
+  private static final class PooledThingModule extends GuiceBerryModule {
+    private final PooledThingResetter resetter;
+
+    PooledThingModule(GuiceBerryUniverse universe, PooledThingResetter resetter) {
+      super(universe);
+      this.resetter = resetter;
+    }
+
+    @Override
+    protected void configure() {
+      super.configure();
+      bind(PooledThing.class).in(PooledTestScoped.class);
+    }
+
+    @Provides
+    @Singleton
+    PooledInstanceResetter<PooledThing> getResetter() {
+      return resetter;
+    }
+  }
+}
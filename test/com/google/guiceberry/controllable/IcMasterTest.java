@@ -151,13 +151,83 @@ public class IcMasterTest extends TearDownTestCase {
     assertEquals(MyEnum.FOUR, instanceAfter.myGenericClassOfMyEnum.tField);
   }
 
+  public void testResetOverrideAndTearDown() throws Exception {
+    final IcMaster icMaster = new IcMaster()
+      .thatControls(StaticMapInjectionController.strategy(), 
+          Key.get(MyEnum.class),
+          Key.get(new TypeLiteral<MyGenericClass<MyEnum>> (){}));
+
+    Injector controlledServerInjector = 
+      Guice.createInjector(icMaster.buildServerModule(moduleForServerInjector()));
+    
+    TearDownStack testTearDownStack = new TearDownStack();
+    Injector testInjector = 
+      Guice.createInjector(buildTestModule(icMaster, testTearDownStack));
+    MyTestCase injected = testInjector.getInstance(MyTestCase.class);
+    
+    injected.myEnumIc.setOverride(MyEnum.TWO);
+    injected.myGenericClassOfMyEnumIc.setOverride(new MyGenericClass<MyEnum>(MyEnum.FOUR));
+    
+    injected.myEnumIc.resetOverride();
+    injected.myEnumIc.resetOverride();
+    ClassInServer afterReset = controlledServerInjector.getInstance(ClassInServer.class);
+    assertEquals(MyEnum.ONE, afterReset.myEnum);
+    assertEquals(MyEnum.FOUR, afterReset.myGenericClassOfMyEnum.tField);
+    
+    testTearDownStack.runTearDown();
+    ClassInServer afterTearDown = controlledServerInjector.getInstance(ClassInServer.class);
+    assertEquals(MyEnum.ONE, afterTearDown.myEnum);
+    assertEquals(MyEnum.THREE, afterTearDown.myGenericClassOfMyEnum.tField);
+    
+    // A test may go on to control injections after resetting them
+    injected.myEnumIc.setOverride(MyEnum.TWO);
+    assertEquals(MyEnum.TWO, controlledServerInjector.getInstance(ClassInServer.class).myEnum);
+    injected.myEnumIc.resetOverride();
+  }
+
+  public void testTearDownsBetweenOverridesSeeEarlierOverrides() throws Exception {
+    final IcMaster icMaster = new IcMaster()
+      .thatControls(StaticMapInjectionController.strategy(), 
+          Key.get(MyEnum.class),
+          Key.get(new TypeLiteral<MyGenericClass<MyEnum>> (){}));
+
+    final Injector controlledServerInjector = 
+      Guice.createInjector(icMaster.buildServerModule(moduleForServerInjector()));
+    
+    TearDownStack testTearDownStack = new TearDownStack();
+    Injector testInjector = 
+      Guice.createInjector(buildTestModule(icMaster, testTearDownStack));
+    MyTestCase injected = testInjector.getInstance(MyTestCase.class);
+    
+    final MyEnum[] seenAtTearDown = new MyEnum[1];
+    injected.myEnumIc.setOverride(MyEnum.TWO);
+    testTearDownStack.addTearDown(new TearDown() {
+      public void tearDown() throws Exception {
+        seenAtTearDown[0] = 
+          controlledServerInjector.getInstance(ClassInServer.class).myEnum;
+      }
+    });
+    injected.myGenericClassOfMyEnumIc.setOverride(new MyGenericClass<MyEnum>(MyEnum.FOUR));
+    
+    testTearDownStack.runTearDown();
+    assertEquals(MyEnum.TWO, seenAtTearDown[0]);
+    ClassInServer afterTearDown = controlledServerInjector.getInstance(ClassInServer.class);
+    assertEquals(MyEnum.ONE, afterTearDown.myEnum);
+    assertEquals(MyEnum.THREE, afterTearDown.myGenericClassOfMyEnum.tField);
+  }
+
   private AbstractModule buildTestModule(final IcMaster icMaster) {
+    return buildTestModule(icMaster, new TearDownStack());
+  }
+
+  private AbstractModule buildTestModule(final IcMaster icMaster,
+      final TearDownAccepter tearDownAccepter) {
     return new AbstractModule() {
       @Override
       protected void configure() {
         install(icMaster.buildClientModule());
         bind(TestId.class).toInstance(TEST_ID);
-        bind(TearDownAccepter.class).toInstance(new TearDownStack());
+        bind(TearDownAccepter.class).toInstance(tearDownAccepter);
       }
     };
   }
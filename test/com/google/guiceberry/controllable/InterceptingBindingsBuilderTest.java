@@ -86,6 +86,39 @@ public class InterceptingBindingsBuilderTest extends TestCase {
     assertEquals("B", injector.getInstance(String.class));
   }
 
+  public void testClosedGateBypassesTheInterceptor() {
+    final boolean[] open = {false};
+    InterceptingBindingsBuilder.Gate gate = new InterceptingBindingsBuilder.Gate() {
+      public boolean isOpen() {
+        return open[0];
+      }
+    };
+    final ProvisionInterceptor interceptor = new ProvisionInterceptor() {
+      @SuppressWarnings({"unchecked"})
+      public <T> T intercept(Key<T> key, Provider<? extends T> delegate) {
+        return (T) "B";
+      }
+    };
+
+    Module module = new AbstractModule() {
+      @Override
+      protected void configure() {
+        bind(String.class).toInstance("A");
+        bind(ProvisionInterceptor.class).toInstance(interceptor);
+      }
+    };
+
+    Injector injector = Guice.createInjector(new InterceptingBindingsBuilder()
+        .intercept(String.class)
+        .interceptOnlyWhileOpen(gate)
+        .install(module)
+        .build());
+
+    assertEquals("A", injector.getInstance(String.class));
+    open[0] = true;
+    assertEquals("B", injector.getInstance(String.class));
+  }
+
   /**
    * The user's provider is scoped but the interceptor is not. As this test case
    * demonstrates, the user's provider gets called only once (in singleton
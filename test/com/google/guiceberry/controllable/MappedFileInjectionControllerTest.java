@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.guiceberry.controllable;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.testing.TearDownAccepter;
+import com.google.common.testing.TearDownStack;
+import com.google.guiceberry.TestId;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.Module;
+import com.google.inject.TypeLiteral;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.Cookie;
+
+/**
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public class MappedFileInjectionControllerTest {
+
+  private static final TestId TEST_ID = new TestId(new Cookie(TestId.COOKIE_NAME, "foo:1"));
+
+  private File file;
+
+  @Before public void createFile() throws Exception {
+    file = File.createTempFile("overrides", ".table");
+  }
+
+  @After public void deleteFile() {
+    file.delete();
+  }
+
+  static final class Color implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    final String name;
+
+    Color(String name) {
+      this.name = name;
+    }
+  }
+
+  /**
+   * The test and the server Injectors each map the file separately, just as
+   * if they were in different processes.
+   */
+  @Test public void testServerSeesTheOverridesOfTheTest() throws Exception {
+    final IcMaster icMaster = new IcMaster()
+      .thatControls(MappedFileInjectionController.strategy(), Color.class);
+    Injector serverInjector = Guice.createInjector(
+        MappedFileInjectionController.module(file),
+        icMaster.buildServerModule(new AbstractModule() {
+          @Override
+          protected void configure() {
+            bind(Color.class).toInstance(new Color("default"));
+            bind(TestId.class).toInstance(TEST_ID);
+          }
+        }));
+    TearDownStack tearDownStack = new TearDownStack();
+    Injector testInjector = Guice.createInjector(
+        MappedFileInjectionController.module(file),
+        testModule(icMaster, tearDownStack));
+    InjectionController<Color> colorController = testInjector.getInstance(
+        Key.get(new TypeLiteral<InjectionController<Color>>() {}));
+    
+    Assert.assertEquals("default", serverInjector.getInstance(Color.class).name);
+    colorController.setOverride(new Color("red"));
+    Color red = serverInjector.getInstance(Color.class);
+    Assert.assertEquals("red", red.name);
+    // Decoded once per change
+    Assert.assertSame(red, serverInjector.getInstance(Color.class));
+    colorController.setOverride(new Color("blue"));
+    Assert.assertEquals("blue", serverInjector.getInstance(Color.class).name);
+    
+    tearDownStack.runTearDown();
+    Assert.assertEquals("default", serverInjector.getInstance(Color.class).name);
+  }
+
+  /**
+   * Two Injectors of the same JVM, each with its own table for the same file,
+   * must not corrupt it by writing to it at the same time.
+   */
+  @Test public void testTablesOfTheSameFileWriteOneAtATime() throws Exception {
+    final MappedOverrideTable[] tables = {
+        Guice.createInjector(MappedFileInjectionController.module(file,
+            OverrideCodec.JAVA_SERIALIZATION, 64, 128)).getInstance(MappedOverrideTable.class),
+        Guice.createInjector(MappedFileInjectionController.module(file,
+            OverrideCodec.JAVA_SERIALIZATION, 64, 128)).getInstance(MappedOverrideTable.class)};
+    Assert.assertNotSame(tables[0], tables[1]);
+    final int writers = 4;
+    final int idsPerWriter = 12;
+    final CyclicBarrier barrier = new CyclicBarrier(writers);
+    List<Future<?>> futures = Lists.newArrayList();
+    ExecutorService executor = Executors.newFixedThreadPool(writers);
+    try {
+      for (int w = 0; w < writers; w++) {
+        final int writer = w;
+        futures.add(executor.submit(new Callable<Void>() {
+          public Void call() throws Exception {
+            try {
+              write(tables[writer % 2]);
+            } catch (Throwable t) {
+              // Do not leave the other writers waiting
+              barrier.reset();
+              Throwables.propagateIfPossible(t, Exception.class);
+              throw new RuntimeException(t);
+            }
+            return null;
+          }
+
+          private void write(MappedOverrideTable table) throws Exception {
+            for (int round = 0; round < 2000; round++) {
+              barrier.await(10, TimeUnit.SECONDS);
+              for (int i = 0; i < idsPerWriter; i++) {
+                table.put("w" + writer + "-" + i, i);
+              }
+              for (int i = 0; i < idsPerWriter; i++) {
+                Assert.assertEquals(i, table.get("w" + writer + "-" + i));
+              }
+              for (int i = 0; i < idsPerWriter; i += 2) {
+                table.remove("w" + writer + "-" + i);
+              }
+              for (int i = 1; i < idsPerWriter; i += 2) {
+                table.remove("w" + writer + "-" + i);
+              }
+            }
+            for (int i = 0; i < idsPerWriter; i++) {
+              table.put("w" + writer + "-" + i, i);
+            }
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get(1, TimeUnit.MINUTES);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    for (int w = 0; w < writers; w++) {
+      for (int i = 0; i < idsPerWriter; i++) {
+        Assert.assertEquals(i, tables[w % 2].get("w" + w + "-" + i));
+      }
+    }
+    Assert.assertEquals(64 - (writers * idsPerWriter), tables[0].emptySlots());
+  }
+
+  @Test public void testDeletedSlotsAreReusedWithoutLosingOtherIds() throws Exception {
+    MappedOverrideTable writer = new MappedOverrideTable(
+        file, OverrideCodec.JAVA_SERIALIZATION, 4, 256);
+    MappedOverrideTable reader = new MappedOverrideTable(
+        file, OverrideCodec.JAVA_SERIALIZATION, 4, 256);
+    for (int i = 0; i < 4; i++) {
+      writer.put("id" + i, i);
+    }
+    try {
+      writer.put("id4", 4);
+      Assert.fail();
+    } catch (IllegalStateException expected) {}
+    
+    writer.remove("id1");
+    writer.remove("id1");
+    Assert.assertNull(reader.get("id1"));
+    for (int i : new int[] {0, 2, 3}) {
+      Assert.assertEquals(i, reader.get("id" + i));
+    }
+    
+    writer.put("id4", 4);
+    Assert.assertEquals(4, reader.get("id4"));
+    writer.put("id0", 10);
+    Assert.assertEquals(10, reader.get("id0"));
+  }
+
+  @Test public void testRemovedSlotsLeaveNoTombstones() throws Exception {
+    MappedOverrideTable writer = new MappedOverrideTable(
+        file, OverrideCodec.JAVA_SERIALIZATION, 16, 256);
+    MappedOverrideTable reader = new MappedOverrideTable(
+        file, OverrideCodec.JAVA_SERIALIZATION, 16, 256);
+    for (int i = 0; i < 3; i++) {
+      writer.put("live" + i, i);
+    }
+    // Ids are unique per test, so a table sees many more of them than slots
+    for (int i = 0; i < 10 * 16; i++) {
+      writer.put("test" + i + "|key", i);
+      Assert.assertEquals(i, reader.get("test" + i, "|key"));
+      writer.remove("test" + i, "|key");
+      Assert.assertNull(reader.get("test" + i + "|key"));
+    }
+    // i.e. a miss stops at the end of its (short) cluster
+    Assert.assertEquals(16 - 3, reader.emptySlots());
+    for (int i = 0; i < 3; i++) {
+      Assert.assertEquals(i, reader.get("live" + i));
+    }
+  }
+
+  @Test public void testRemovingShiftsBackTheRestOfTheCluster() throws Exception {
+    MappedOverrideTable writer = new MappedOverrideTable(
+        file, OverrideCodec.JAVA_SERIALIZATION, 8, 256);
+    MappedOverrideTable reader = new MappedOverrideTable(
+        file, OverrideCodec.JAVA_SERIALIZATION, 8, 256);
+    for (int i = 0; i < 8; i++) {
+      writer.put("id" + i, i);
+    }
+    Set<Integer> live = Sets.newHashSet(0, 1, 2, 3, 4, 5, 6, 7);
+    for (int removed : new int[] {5, 0, 7, 2, 6, 1, 4, 3}) {
+      writer.remove("id" + removed);
+      live.remove(removed);
+      for (int i = 0; i < 8; i++) {
+        Assert.assertEquals(live.contains(i) ? i : null, reader.get("id" + i));
+      }
+    }
+    Assert.assertEquals(8, reader.emptySlots());
+  }
+
+  @Test public void testLookupFailsIfTheWriterDiedHalfWayThrough() throws Exception {
+    MappedOverrideTable reader = new MappedOverrideTable(
+        file, OverrideCodec.JAVA_SERIALIZATION, 4, 256);
+    // An odd sequence number for the table, as left by a writer that died
+    // while removing an override
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+    try {
+      randomAccessFile.seek(12);
+      randomAccessFile.writeInt(1);
+    } finally {
+      randomAccessFile.close();
+    }
+    try {
+      reader.get("id");
+      Assert.fail();
+    } catch (IllegalStateException expected) {}
+    
+    // The next writer recovers
+    MappedOverrideTable writer = new MappedOverrideTable(
+        file, OverrideCodec.JAVA_SERIALIZATION, 4, 256);
+    writer.put("id", 1);
+    writer.remove("id");
+    Assert.assertNull(reader.get("id"));
+  }
+
+  @Test public void testOverrideTooLarge() throws Exception {
+    MappedOverrideTable table = new MappedOverrideTable(
+        file, OverrideCodec.JAVA_SERIALIZATION, 4, 64);
+    try {
+      table.put("id", new byte[100]);
+      Assert.fail();
+    } catch (IllegalArgumentException expected) {}
+  }
+
+  @Test public void testMismatchedTableSize() throws Exception {
+    new MappedOverrideTable(file, OverrideCodec.JAVA_SERIALIZATION, 4, 64);
+    try {
+      new MappedOverrideTable(file, OverrideCodec.JAVA_SERIALIZATION, 8, 64);
+      Assert.fail();
+    } catch (IllegalStateException expected) {}
+  }
+
+  private static Module testModule(final IcMaster icMaster, final TearDownAccepter tearDownAccepter) {
+    return new AbstractModule() {
+      @Override
+      protected void configure() {
+        install(icMaster.buildClientModule());
+        bind(TestId.class).toInstance(TEST_ID);
+        bind(TearDownAccepter.class).toInstance(tearDownAccepter);
+      }
+    };
+  }
+}
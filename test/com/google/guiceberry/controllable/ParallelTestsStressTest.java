@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.guiceberry.controllable;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.testing.TearDown;
+import com.google.common.testing.TearDownAccepter;
+import com.google.guiceberry.DefaultEnvSelector;
+import com.google.guiceberry.GuiceBerry;
+import com.google.guiceberry.GuiceBerry.GuiceBerryWrapper;
+import com.google.guiceberry.GuiceBerryEnvSelector;
+import com.google.guiceberry.GuiceBerryModule;
+import com.google.guiceberry.TestDescription;
+import com.google.guiceberry.TestId;
+import com.google.guiceberry.TestScoped;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Inject;
+import com.google.inject.Key;
+import com.google.inject.Provider;
+import com.google.inject.Provides;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs thousands of tests on many threads at once, against a single
+ * GuiceBerry Env, and checks that none of them sees the {@link TestScoped}
+ * instances, the overrides or the tear downs of any other.
+ *
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public class ParallelTestsStressTest {
+
+  private static final int THREADS = 16;
+  private static final int TESTS = 4000;
+  
+  private static final Color DEFAULT_COLOR = new Color("default");
+
+  private static final class Color {
+    private final String name;
+
+    Color(String name) {
+      this.name = name;
+    }
+  }
+
+  private static final class PerTest {}
+
+  public static final class ParallelTestsEnv extends AbstractModule {
+    @Override
+    protected void configure() {
+      install(new GuiceBerryModule());
+      IcMaster icMaster = new IcMaster()
+        .thatControls(StaticMapInjectionController.strategy(), Color.class);
+      install(icMaster.buildClientModule());
+      install(icMaster.buildServerModule(new AbstractModule() {
+        @Override
+        protected void configure() {
+          bind(Color.class).toInstance(DEFAULT_COLOR);
+        }
+      }));
+    }
+
+    @Provides
+    @TestScoped
+    PerTest getPerTest() {
+      return new PerTest();
+    }
+  }
+
+  private static final class StressTest {
+    @Inject TestId testId;
+    @Inject Provider<PerTest> perTest;
+    @Inject InjectionController<Color> colorController;
+    @Inject Provider<Color> color;
+    @Inject TearDownAccepter tearDownAccepter;
+
+    boolean tornDown;
+    PerTest perTestInstance;
+
+    void run() {
+      perTestInstance = perTest.get();
+      Assert.assertSame(DEFAULT_COLOR, color.get());
+      tearDownAccepter.addTearDown(new TearDown() {
+        public void tearDown() {
+          Assert.assertFalse(tornDown);
+          tornDown = true;
+        }
+      });
+      
+      Color override = new Color(testId.toString());
+      colorController.setOverride(override);
+      for (int i = 0; i < 10; i++) {
+        Thread.yield();
+        Assert.assertSame(override, color.get());
+        Assert.assertSame(perTestInstance, perTest.get());
+      }
+    }
+  }
+
+  @Test public void testParallelTestsAreIsolated() throws Exception {
+    final GuiceBerryEnvSelector selector = DefaultEnvSelector.of(ParallelTestsEnv.class);
+    ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+    List<Future<StressTest>> futures = Lists.newArrayList();
+    try {
+      for (int i = 0; i < TESTS; i++) {
+        final String name = ParallelTestsStressTest.class.getName() + ".test" + (i % 10);
+        futures.add(pool.submit(new Callable<StressTest>() {
+          public StressTest call() {
+            StressTest test = new StressTest();
+            GuiceBerryWrapper wrapper = GuiceBerry.INSTANCE.buildWrapper(
+                new TestDescription(test, name), selector);
+            wrapper.runBeforeTest();
+            try {
+              test.run();
+            } finally {
+              wrapper.runAfterTest();
+            }
+            return test;
+          }
+        }));
+      }
+      
+      Set<TestId> testIds = Sets.newHashSet();
+      Set<PerTest> perTestInstances = Sets.newHashSet();
+      for (Future<StressTest> future : futures) {
+        StressTest test = future.get();
+        Assert.assertTrue(test.tornDown);
+        testIds.add(test.testId);
+        perTestInstances.add(test.perTestInstance);
+      }
+      Assert.assertEquals(TESTS, testIds.size());
+      Assert.assertEquals(TESTS, perTestInstances.size());
+      
+      IcStrategy.ServerSupport serverSupport = Guice.createInjector().getInstance(
+          StaticMapInjectionController.strategy().serverSupportClass());
+      for (TestId testId : testIds) {
+        Assert.assertFalse(serverSupport.isControlled(
+            new ControllableId<Color>(testId, Key.get(Color.class))));
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.guiceberry.controllable;
+
+import com.google.common.base.Charsets;
+import com.google.common.testing.TearDownAccepter;
+import com.google.common.testing.TearDownStack;
+import com.google.guiceberry.TestId;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.Module;
+import com.google.inject.TypeLiteral;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.Serializable;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+import javax.servlet.http.Cookie;
+
+/**
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public class SocketInjectionControllerTest {
+
+  private static final TestId TEST_ID = new TestId(new Cookie(TestId.COOKIE_NAME, "foo:1"));
+  private static final String SECRET = "secret";
+
+  private final IcMaster icMaster = new IcMaster()
+    .thatControls(SocketInjectionController.strategy(), Color.class, Shape.class);
+  private final TearDownStack tearDownStack = new TearDownStack();
+  
+  private SocketOverrideAgent agent;
+  private Injector serverInjector;
+  private InjectionController<Color> colorController;
+  private InjectionController<Shape> shapeController;
+
+  static final class Color implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    final String name;
+
+    Color(String name) {
+      this.name = name;
+    }
+  }
+
+  static final class Shape implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    final String name;
+
+    Shape(String name) {
+      this.name = name;
+    }
+  }
+
+  @Before public void setUp() throws Exception {
+    serverInjector = Guice.createInjector(
+        SocketInjectionController.serverModule(0, SECRET),
+        icMaster.buildServerModule(new AbstractModule() {
+          @Override
+          protected void configure() {
+            bind(Color.class).toInstance(new Color("default"));
+            bind(Shape.class).toInstance(new Shape("default"));
+            bind(TestId.class).toInstance(TEST_ID);
+          }
+        }));
+    agent = serverInjector.getInstance(SocketOverrideAgent.class);
+    
+    Injector testInjector = Guice.createInjector(
+        SocketInjectionController.clientModule(
+            new InetSocketAddress(InetAddress.getByName(null), agent.getPort()), SECRET),
+        testModule(icMaster, tearDownStack));
+    colorController = testInjector.getInstance(
+        Key.get(new TypeLiteral<InjectionController<Color>>() {}));
+    shapeController = testInjector.getInstance(
+        Key.get(new TypeLiteral<InjectionController<Shape>>() {}));
+  }
+
+  @After public void tearDown() throws Exception {
+    agent.close();
+  }
+
+  @Test public void testServerSeesTheOverridesOfTheTest() throws Exception {
+    Assert.assertEquals("default", serverInjector.getInstance(Color.class).name);
+    colorController.setOverride(new Color("red"));
+    Assert.assertEquals("red", serverInjector.getInstance(Color.class).name);
+    colorController.resetOverride();
+    Assert.assertEquals("default", serverInjector.getInstance(Color.class).name);
+  }
+
+  @Test public void testBatch() throws Exception {
+    SocketInjectionController.batch(new Runnable() {
+      public void run() {
+        colorController.setOverride(new Color("red"));
+        shapeController.setOverride(new Shape("square"));
+        // Not sent yet
+        Assert.assertEquals("default", serverInjector.getInstance(Color.class).name);
+      }
+    });
+    Assert.assertEquals("red", serverInjector.getInstance(Color.class).name);
+    Assert.assertEquals("square", serverInjector.getInstance(Shape.class).name);
+  }
+
+  @Test public void testTearDownResetsAllOverridesOfTheTest() throws Exception {
+    colorController.setOverride(new Color("red"));
+    shapeController.setOverride(new Shape("square"));
+    tearDownStack.runTearDown();
+    
+    // The tear down does not wait for the agent, but this does, and the
+    // agent applies operations in order
+    colorController.resetOverride();
+    Assert.assertEquals("default", serverInjector.getInstance(Color.class).name);
+    Assert.assertEquals("default", serverInjector.getInstance(Shape.class).name);
+  }
+
+  @Test public void testAgentFailuresAreReportedOnTheNextSync() throws Exception {
+    SocketOverrideAgent failingAgent = new SocketOverrideAgent(0, SECRET, new OverrideCodec() {
+      public byte[] encode(Object override) {
+        throw new UnsupportedOperationException();
+      }
+
+      public Object decode(byte[] bytes) {
+        throw new IllegalStateException("Can't decode");
+      }
+    });
+    try {
+      SocketOverrideClient client = new SocketOverrideClient(
+          new InetSocketAddress(InetAddress.getByName(null), failingAgent.getPort()),
+          SECRET, OverrideCodec.JAVA_SERIALIZATION);
+      client.send(client.setOperation("foo:1", "key", "value"), false);
+      try {
+        client.send(client.resetTestOperation("foo:1"), true);
+        Assert.fail();
+      } catch (IllegalStateException expected) {
+        Assert.assertTrue(expected.getMessage().contains("Can't decode"));
+      }
+      // The failure is only reported once
+      client.send(client.resetTestOperation("foo:1"), true);
+    } finally {
+      failingAgent.close();
+    }
+  }
+
+  @Test public void testClientsWithTheWrongSecretAreDropped() throws Exception {
+    SocketOverrideClient client = new SocketOverrideClient(
+        new InetSocketAddress(InetAddress.getByName(null), agent.getPort()),
+        "not the secret", OverrideCodec.JAVA_SERIALIZATION);
+    try {
+      client.send(client.setOperation(TEST_ID.toString(), Key.get(Color.class).toString(),
+          new Color("red")), true);
+      Assert.fail();
+    } catch (RuntimeException expected) {}
+    Assert.assertEquals("default", serverInjector.getInstance(Color.class).name);
+  }
+
+  @Test public void testClientsSendingABadLengthAreDropped() throws Exception {
+    Socket socket = new Socket(InetAddress.getByName(null), agent.getPort());
+    try {
+      DataInputStream in = new DataInputStream(socket.getInputStream());
+      DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+      byte[] challenge = new byte[SocketOverrideAgent.CHALLENGE_LENGTH];
+      in.readFully(challenge);
+      out.write(SocketOverrideAgent.answer(SECRET.getBytes(Charsets.UTF_8), challenge));
+      Assert.assertTrue(in.readBoolean());
+      
+      out.writeByte(SocketOverrideAgent.SET);
+      out.writeUTF(TEST_ID.toString());
+      out.writeUTF(Key.get(Color.class).toString());
+      out.writeInt(Integer.MAX_VALUE);
+      out.writeByte(SocketOverrideAgent.SYNC);
+      out.flush();
+      // Dropped, rather than answering the sync
+      Assert.assertEquals(-1, in.read());
+    } finally {
+      socket.close();
+    }
+  }
+
+  private static Module testModule(final IcMaster icMaster,
+      final TearDownAccepter tearDownAccepter) {
+    return new AbstractModule() {
+      @Override
+      protected void configure() {
+        install(icMaster.buildClientModule());
+        bind(TestId.class).toInstance(TEST_ID);
+        bind(TearDownAccepter.class).toInstance(tearDownAccepter);
+      }
+    };
+  }
+}
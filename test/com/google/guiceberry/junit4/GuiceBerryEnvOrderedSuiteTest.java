@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.guiceberry.junit4;
+
+import com.google.common.collect.Lists;
+import com.google.guiceberry.GuiceBerryModule;
+import com.google.guiceberry.util.AnnotatedGuiceBerryEnv;
+import com.google.inject.AbstractModule;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.internal.builders.AllDefaultPossibilitiesBuilder;
+import org.junit.runner.Description;
+import org.junit.runners.Suite.SuiteClasses;
+import org.junit.runners.model.InitializationError;
+
+import java.util.List;
+
+/**
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public class GuiceBerryEnvOrderedSuiteTest {
+
+  @Test
+  public void testTestClassesAreGroupedByEnv() throws InitializationError {
+    GuiceBerryEnvOrderedSuite suite =
+      new GuiceBerryEnvOrderedSuite(MySuite.class, new AllDefaultPossibilitiesBuilder(true));
+    List<Class<?>> testClasses = Lists.newArrayList();
+    for (Description child : suite.getDescription().getChildren()) {
+      testClasses.add(child.getTestClass());
+    }
+    Assert.assertEquals(
+        Lists.<Class<?>>newArrayList(FirstOneTestCase.class, SecondOneTestCase.class,
+            TwoTestCase.class),
+        testClasses);
+  }
+
+  @Test(expected = InitializationError.class)
+  public void testSuiteClassesAreRequired() throws InitializationError {
+    new GuiceBerryEnvOrderedSuite(
+        GuiceBerryEnvOrderedSuiteTest.class, new AllDefaultPossibilitiesBuilder(true));
+  }
+
+  @SuiteClasses({FirstOneTestCase.class, TwoTestCase.class, SecondOneTestCase.class})
+  public static final class MySuite {}
+
+  @AnnotatedGuiceBerryEnv("com.google.guiceberry.junit4.GuiceBerryEnvOrderedSuiteTest$EnvOne")
+  public static final class FirstOneTestCase {
+    @Test public void test() {}
+  }
+
+  @AnnotatedGuiceBerryEnv("com.google.guiceberry.junit4.GuiceBerryEnvOrderedSuiteTest$EnvOne")
+  public static final class SecondOneTestCase {
+    @Test public void test() {}
+  }
+
+  @AnnotatedGuiceBerryEnv("com.google.guiceberry.junit4.GuiceBerryEnvOrderedSuiteTest$EnvTwo")
+  public static final class TwoTestCase {
+    @Test public void test() {}
+  }
+
+  public static final class EnvOne extends AbstractModule {
+    @Override
+    protected void configure() {
+      install(new GuiceBerryModule());
+    }
+  }
+
+  public static final class EnvTwo extends AbstractModule {
+    @Override
+    protected void configure() {
+      install(new GuiceBerryModule());
+    }
+  }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.guiceberry.util;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Files;
+import com.google.guiceberry.GuiceBerryModule;
+import com.google.inject.AbstractModule;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public class EnvAffinitySchedulerTest {
+
+  @Rule public final TemporaryFolder tempDir = new TemporaryFolder();
+
+  private static final List<Class<?>> TEST_CLASSES = ImmutableList.<Class<?>>of(
+      A1.class, B1.class, C1.class, A2.class, Unknown.class, C2.class);
+
+  @Test
+  public void testEnvToTestClassesMapLeavesOutUnknownEnvs() {
+    Assert.assertEquals(
+        ImmutableMap.of(
+            EnvA.class, ImmutableList.of(A1.class, A2.class),
+            EnvB.class, ImmutableList.of(B1.class),
+            EnvC.class, ImmutableList.of(C1.class, C2.class)),
+        EnvAffinityScheduler.envToTestClassesMap(TEST_CLASSES));
+  }
+
+  @Test
+  public void testEnvsAreSplitOnlyWhenLongerThanAWorkersShare() {
+    // 1100 ms in total, so each of 2 workers should get about 550 ms. Only
+    // EnvC, at 600 ms, needs to boot in both.
+    List<List<Class<?>>> partition = EnvAffinityScheduler.partition(TEST_CLASSES,
+        ImmutableMap.<String, Long>builder()
+            .put(A1.class.getName(), 100L)
+            .put(A2.class.getName(), 100L)
+            .put(B1.class.getName(), 200L)
+            .put(C1.class.getName(), 300L)
+            .put(C2.class.getName(), 300L)
+            .put(Unknown.class.getName(), 100L)
+            .build(),
+        2);
+    Assert.assertEquals(
+        ImmutableList.of(
+            ImmutableList.of(C1.class, A1.class, A2.class, Unknown.class),
+            ImmutableList.of(C2.class, B1.class)),
+        partition);
+  }
+
+  @Test
+  public void testTestClassesWithoutPastDurationsTakeTheAverage() {
+    List<List<Class<?>>> partition = EnvAffinityScheduler.partition(
+        ImmutableList.<Class<?>>of(A1.class, B1.class, C1.class),
+        ImmutableMap.of(A1.class.getName(), 500L),
+        3);
+    Assert.assertEquals(
+        ImmutableList.of(
+            ImmutableList.of(A1.class), ImmutableList.of(B1.class), ImmutableList.of(C1.class)),
+        partition);
+  }
+
+  @Test
+  public void testNestedTestClassesMapToTheirTopLevelSourceFile() {
+    String source = "com/google/guiceberry/util/EnvAffinitySchedulerTest.java";
+    Assert.assertEquals(
+        ImmutableList.of(
+            ImmutableList.of(source, "java/lang/String.java"),
+            ImmutableList.of("java/lang/Integer.java")),
+        EnvAffinityScheduler.sourceFiles(ImmutableList.<List<Class<?>>>of(
+            ImmutableList.<Class<?>>of(A1.class, A2.class, String.class),
+            ImmutableList.<Class<?>>of(B1.class, Integer.class))));
+  }
+
+  @Test
+  public void testReadJunitReports() throws IOException {
+    File reportDir = tempDir.newFolder("reports");
+    Files.asCharSink(new File(reportDir, "TEST-com.example.FooTest.txt"), Charsets.UTF_8)
+        .writeLines(ImmutableList.of(
+            "Testsuite: com.example.FooTest",
+            "Tests run: 2, Failures: 0, Errors: 0, Skipped: 0, Time elapsed: 1.234 sec",
+            "",
+            "Testcase: testFoo took 1.2 sec"));
+    Files.asCharSink(new File(reportDir, "not-a-report.xml"), Charsets.UTF_8)
+        .write("Testsuite: com.example.BarTest");
+    Assert.assertEquals(
+        ImmutableMap.of("com.example.FooTest", 1234L),
+        EnvAffinityScheduler.readJunitReports(reportDir));
+  }
+
+  @AnnotatedGuiceBerryEnv("com.google.guiceberry.util.EnvAffinitySchedulerTest$EnvA")
+  private static final class A1 {}
+
+  @AnnotatedGuiceBerryEnv("com.google.guiceberry.util.EnvAffinitySchedulerTest$EnvA")
+  private static final class A2 {}
+
+  @AnnotatedGuiceBerryEnv("com.google.guiceberry.util.EnvAffinitySchedulerTest$EnvB")
+  private static final class B1 {}
+
+  @AnnotatedGuiceBerryEnv("com.google.guiceberry.util.EnvAffinitySchedulerTest$EnvC")
+  private static final class C1 {}
+
+  @AnnotatedGuiceBerryEnv("com.google.guiceberry.util.EnvAffinitySchedulerTest$EnvC")
+  private static final class C2 {}
+
+  private static final class Unknown {}
+
+  public static final class EnvA extends AbstractModule {
+    @Override
+    protected void configure() {
+      install(new GuiceBerryModule());
+    }
+  }
+
+  public static final class EnvB extends AbstractModule {
+    @Override
+    protected void configure() {
+      install(new GuiceBerryModule());
+    }
+  }
+
+  public static final class EnvC extends AbstractModule {
+    @Override
+    protected void configure() {
+      install(new GuiceBerryModule());
+    }
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.guiceberry.util;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
+import com.google.guiceberry.GuiceBerryModule;
+import com.google.guiceberry.junit4.GuiceBerryRule;
+import com.google.inject.AbstractModule;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public class EnvOrderingTest {
+
+  private static final Function<Class<?>, Class<?>> IDENTITY =
+    new Function<Class<?>, Class<?>>() {
+      public Class<?> apply(Class<?> testClass) {
+        return testClass;
+      }
+    };
+
+  @Test
+  public void testTestsAreGroupedByEnvInOrderOfFirstAppearance() {
+    Assert.assertEquals(
+        ImmutableList.of(FirstOne.class, SecondOne.class, FirstTwo.class, NotGuiceBerry.class),
+        EnvOrdering.orderByEnv(ImmutableList.<Class<?>>of(
+            FirstOne.class, FirstTwo.class, SecondOne.class, NotGuiceBerry.class),
+            IDENTITY));
+  }
+
+  @Test
+  public void testTestClassesThatCanNotBeResolvedAreKeptTogether() {
+    Assert.assertEquals(
+        ImmutableList.of(NotGuiceBerry.class, NoZeroArgumentsConstructor.class, FirstOne.class),
+        EnvOrdering.orderByEnv(ImmutableList.<Class<?>>of(
+            NotGuiceBerry.class, FirstOne.class, NoZeroArgumentsConstructor.class),
+            IDENTITY));
+  }
+
+  @AnnotatedGuiceBerryEnv("com.google.guiceberry.util.EnvOrderingTest$EnvOne")
+  private static final class FirstOne {}
+
+  @AnnotatedGuiceBerryEnv("com.google.guiceberry.util.EnvOrderingTest$EnvOne")
+  private static final class SecondOne {}
+
+  @AnnotatedGuiceBerryEnv("com.google.guiceberry.util.EnvOrderingTest$EnvTwo")
+  private static final class FirstTwo {}
+
+  private static final class NotGuiceBerry {}
+
+  private static final class NoZeroArgumentsConstructor {
+    @Rule public final GuiceBerryRule guiceBerry = new GuiceBerryRule(EnvOne.class);
+
+    @SuppressWarnings("unused")
+    NoZeroArgumentsConstructor(String unused) {}
+  }
+
+  public static final class EnvOne extends AbstractModule {
+    @Override
+    protected void configure() {
+      install(new GuiceBerryModule());
+    }
+  }
+
+  public static final class EnvTwo extends AbstractModule {
+    @Override
+    protected void configure() {
+      install(new GuiceBerryModule());
+    }
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.guiceberry.util;
+
+import com.google.guiceberry.TestDescription;
+import com.google.guiceberry.TestTimingListener.Phase;
+import com.google.inject.AbstractModule;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+/**
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public class HistogramTestTimingListenerTest {
+
+  private final HistogramTestTimingListener listener = new HistogramTestTimingListener();
+
+  @Test
+  public void testNothingIsDumpedBeforeAnyTiming() {
+    Assert.assertEquals("", dump());
+  }
+
+  @Test
+  public void testTimingsAreBucketedByPowersOfTwo() {
+    listener.phaseFinished(EnvOne.class, test(new TestOne()), Phase.TEAR_DOWN, 1000);
+    listener.phaseFinished(EnvOne.class, test(new TestOne()), Phase.TEAR_DOWN, 1000000);
+    // 1000ns falls in the bucket up to 1023ns, the p90 one is capped at the max
+    Assert.assertTrue(dump().contains(
+        "count=2 total=1ms mean=500us p50<=1us p90<=1000us p99<=1000us max=1000us"));
+  }
+
+  @Test
+  public void testTimingsAreAggregatedPerEnvAndPerTestClass() {
+    listener.phaseFinished(EnvOne.class, test(new TestOne()), Phase.INJECT_MEMBERS, 2000);
+    listener.phaseFinished(EnvOne.class, test(new TestTwo()), Phase.INJECT_MEMBERS, 2000);
+    String[] lines = dump().split("\n");
+    int i = 0;
+    Assert.assertEquals("GuiceBerry per-test timings, per Env:", lines[i++].trim());
+    Assert.assertEquals(EnvOne.class.getName(), lines[i++].trim());
+    Assert.assertTrue(lines[i], lines[i++].trim().startsWith("INJECT_MEMBERS   count=2 "));
+    Assert.assertEquals("GuiceBerry per-test timings, per test class:", lines[i++].trim());
+    Assert.assertEquals(TestOne.class.getName(), lines[i++].trim());
+    Assert.assertTrue(lines[i], lines[i++].trim().startsWith("INJECT_MEMBERS   count=1 "));
+    Assert.assertEquals(TestTwo.class.getName(), lines[i++].trim());
+    Assert.assertTrue(lines[i], lines[i++].trim().startsWith("INJECT_MEMBERS   count=1 "));
+    Assert.assertEquals(i, lines.length);
+  }
+
+  @Test
+  public void testInstallReturnsTheSharedInstance() {
+    Assert.assertSame(HistogramTestTimingListener.install(), HistogramTestTimingListener.install());
+    Assert.assertNotSame(listener, HistogramTestTimingListener.install());
+  }
+
+  private static TestDescription test(Object testCase) {
+    return new TestDescription(testCase, "test");
+  }
+
+  private String dump() {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    PrintStream out = new PrintStream(bytes, true);
+    listener.dump(out);
+    return bytes.toString().replace("\r\n", "\n");
+  }
+
+  private static final class TestOne {}
+
+  private static final class TestTwo {}
+
+  private static final class EnvOne extends AbstractModule {
+    @Override
+    protected void configure() {}
+  }
+}
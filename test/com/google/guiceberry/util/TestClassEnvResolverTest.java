@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.guiceberry.util;
+
+import com.google.guiceberry.GuiceBerryModule;
+import com.google.guiceberry.junit4.GuiceBerryRule;
+import com.google.inject.AbstractModule;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public class TestClassEnvResolverTest {
+
+  @Test
+  public void testAnnotatedTestClass() {
+    Assert.assertEquals(Env.class, TestClassEnvResolver.resolve(AnnotatedTestCase.class));
+  }
+
+  @Test
+  public void testAnnotatedTestClassIsNotInstantiated() {
+    Assert.assertEquals(Env.class, TestClassEnvResolver.resolve(AnnotatedTestCaseThatThrows.class));
+  }
+
+  @Test
+  public void testTestClassWithRule() {
+    Assert.assertEquals(Env.class, TestClassEnvResolver.resolve(RuleTestCase.class));
+  }
+
+  @Test
+  public void testTestClassWithInheritedRule() {
+    Assert.assertEquals(Env.class, TestClassEnvResolver.resolve(RuleTestCaseSubclass.class));
+  }
+
+  @Test
+  public void testNonGuiceBerryTestClass() {
+    Assert.assertNull(TestClassEnvResolver.resolve(TestClassEnvResolverTest.class));
+  }
+
+  @Test
+  public void testTestClassThatFailsToInitializeHasAnUnknownEnv() {
+    // The first attempt fails initializing the class, the second linking it
+    Assert.assertFalse(
+        TestClassEnvResolver.resolveQuietly(RuleTestCaseThatFailsToInitialize.class).isPresent());
+    Assert.assertFalse(
+        TestClassEnvResolver.resolveQuietly(RuleTestCaseThatFailsToInitialize.class).isPresent());
+  }
+
+  @AnnotatedGuiceBerryEnv("com.google.guiceberry.util.TestClassEnvResolverTest$Env")
+  private static final class AnnotatedTestCase {}
+
+  @AnnotatedGuiceBerryEnv("com.google.guiceberry.util.TestClassEnvResolverTest$Env")
+  private static final class AnnotatedTestCaseThatThrows {
+    @SuppressWarnings("unused")
+    AnnotatedTestCaseThatThrows() {
+      throw new AssertionError("Test code should not run to resolve the Env");
+    }
+  }
+
+  private static class RuleTestCase {
+    @Rule public final GuiceBerryRule guiceBerry = new GuiceBerryRule(Env.class);
+  }
+
+  private static final class RuleTestCaseSubclass extends RuleTestCase {}
+
+  private static final class RuleTestCaseThatFailsToInitialize {
+    static {
+      if (true) {
+        throw new IllegalStateException("Static initializer failure");
+      }
+    }
+
+    @Rule public final GuiceBerryRule guiceBerry = new GuiceBerryRule(Env.class);
+  }
+
+  public static final class Env extends AbstractModule {
+    @Override
+    protected void configure() {
+      install(new GuiceBerryModule());
+    }
+  }
+}